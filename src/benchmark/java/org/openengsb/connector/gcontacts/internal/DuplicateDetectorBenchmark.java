@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openengsb.connector.gcontacts.internal.misc.BenchmarkContacts;
+import org.openengsb.domain.contact.Contact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * time to find the duplicates of address books of growing size, a tenth of which are imported a second time. The
+ * time per run should grow linearly with the size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DuplicateDetectorBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    private int size;
+
+    private List<Contact> contacts;
+
+    @Setup
+    public void setUp() {
+        contacts = new ArrayList<Contact>(size);
+        int originals = size - size / 10;
+        for (int i = 0; i < size; i++) {
+            Contact contact = BenchmarkContacts.createContact(i % originals);
+            contact.setId(String.valueOf(i));
+            contacts.add(contact);
+        }
+    }
+
+    @Benchmark
+    public List<DuplicateGroup> findDuplicates() {
+        return new DuplicateDetector().findDuplicates(contacts.iterator());
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * in-process stand-in for the google contacts feed. It answers ClientLogin, inserts, single entry reads and paged
+ * feed queries with canned Atom documents, so the benchmarks measure the connector and the GData client instead of
+ * the network.
+ */
+public class FakeGDataServer {
+
+    private static final String FEED_PATH = "/m8/feeds/contacts/default/full";
+    private static final String NAMESPACES = "xmlns='http://www.w3.org/2005/Atom'"
+            + " xmlns:openSearch='http://a9.com/-/spec/opensearch/1.1/'"
+            + " xmlns:gContact='http://schemas.google.com/contact/2008'"
+            + " xmlns:gd='http://schemas.google.com/g/2005'";
+
+    private final HttpServer server;
+    private final int feedSize;
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    /**
+     * @param feedSize number of contacts the feed query returns in total
+     */
+    public FakeGDataServer(int feedSize) throws IOException {
+        this.feedSize = feedSize;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/accounts/ClientLogin", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                drain(exchange);
+                respond(exchange, 200, "text/plain", "SID=sid\nLSID=lsid\nAuth=token\n");
+            }
+        });
+        server.createContext(FEED_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                drain(exchange);
+                String path = exchange.getRequestURI().getPath();
+                if ("POST".equals(exchange.getRequestMethod())) {
+                    respond(exchange, 201, "application/atom+xml", entry(String.valueOf(nextId.incrementAndGet()),
+                        true));
+                } else if (path.length() > FEED_PATH.length() + 1) {
+                    respond(exchange, 200, "application/atom+xml",
+                        entry(path.substring(FEED_PATH.length() + 1), true));
+                } else {
+                    respond(exchange, 200, "application/atom+xml", feed(exchange.getRequestURI()));
+                }
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public String getHost() {
+        return "localhost:" + server.getAddress().getPort();
+    }
+
+    public String getFeedUrl() {
+        return "http://" + getHost() + FEED_PATH;
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    private String feed(URI uri) {
+        Map<String, String> parameters = parseQuery(uri.getRawQuery());
+        int start = parameters.containsKey("start-index") ? Integer.parseInt(parameters.get("start-index")) : 1;
+        int max = parameters.containsKey("max-results") ? Integer.parseInt(parameters.get("max-results")) : 25;
+        int end = Math.min(feedSize, start - 1 + max);
+
+        StringBuilder builder = new StringBuilder(2048 * (end - start + 2));
+        builder.append("<?xml version='1.0' encoding='UTF-8'?><feed ").append(NAMESPACES).append(">");
+        builder.append("<id>").append(getFeedUrl()).append("</id>");
+        builder.append("<updated>2012-01-01T00:00:00.000Z</updated>");
+        builder.append("<category scheme='http://schemas.google.com/g/2005#kind'"
+                + " term='http://schemas.google.com/contact/2008#contact'/>");
+        builder.append("<title>Contacts</title>");
+        builder.append("<openSearch:totalResults>").append(feedSize).append("</openSearch:totalResults>");
+        builder.append("<openSearch:startIndex>").append(start).append("</openSearch:startIndex>");
+        builder.append("<openSearch:itemsPerPage>").append(max).append("</openSearch:itemsPerPage>");
+        if (end < feedSize) {
+            builder.append("<link rel='next' type='application/atom+xml' href='").append(getFeedUrl())
+                .append("?start-index=").append(end + 1).append("&amp;max-results=").append(max).append("'/>");
+        }
+        for (int i = start; i <= end; i++) {
+            builder.append(entry(String.valueOf(i), false));
+        }
+        builder.append("</feed>");
+        return builder.toString();
+    }
+
+    private String entry(String id, boolean document) {
+        String url = getFeedUrl() + "/" + id;
+        StringBuilder builder = new StringBuilder(2048);
+        if (document) {
+            builder.append("<?xml version='1.0' encoding='UTF-8'?><entry ").append(NAMESPACES);
+        } else {
+            builder.append("<entry");
+        }
+        builder.append(" gd:etag='\"etag").append(id).append("\"'>");
+        builder.append("<id>").append(url).append("</id>");
+        builder.append("<updated>2012-01-01T00:00:00.000Z</updated>");
+        builder.append("<category scheme='http://schemas.google.com/g/2005#kind'"
+                + " term='http://schemas.google.com/contact/2008#contact'/>");
+        builder.append("<title>Benchmark Contact ").append(id).append("</title>");
+        builder.append("<content type='text'>met at the conference</content>");
+        builder.append("<link rel='self' type='application/atom+xml' href='").append(url).append("'/>");
+        builder.append("<link rel='edit' type='application/atom+xml' href='").append(url).append("'/>");
+        builder.append("<gd:name><gd:fullName>Benchmark Contact ").append(id).append("</gd:fullName></gd:name>");
+        for (int i = 0; i < 6; i++) {
+            builder.append("<gd:email label='mail").append(i).append("' address='contact").append(id).append('.')
+                .append(i).append("@example.org'/>");
+        }
+        for (int i = 0; i < 4; i++) {
+            builder.append("<gd:phoneNumber label='phone").append(i).append("'>+43 1 5880").append(id).append(i)
+                .append("</gd:phoneNumber>");
+        }
+        builder.append("<gContact:website label='homepage' href='http://www.example.org/~contact").append(id)
+            .append("'/>");
+        builder.append("<gContact:birthday when='1980-01-01'/>");
+        for (int i = 0; i < 3; i++) {
+            builder.append("<gContact:event label='anniversary").append(i).append("'><gd:when startTime='2012-01-0")
+                .append(i + 1).append("'/></gContact:event>");
+        }
+        for (int i = 0; i < 3; i++) {
+            builder.append("<gd:structuredPostalAddress label='address").append(i).append("'>")
+                .append("<gd:street>Favoritenstrasse ").append(i).append("</gd:street>")
+                .append("<gd:city>Vienna</gd:city><gd:region>Vienna</gd:region>")
+                .append("<gd:postcode>104").append(i).append("</gd:postcode>")
+                .append("<gd:country>Austria</gd:country></gd:structuredPostalAddress>");
+        }
+        builder.append("</entry>");
+        return builder.toString();
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                parameters.put(pair.substring(0, separator), pair.substring(separator + 1));
+            }
+        }
+        return parameters;
+    }
+
+    private static void drain(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        byte[] buffer = new byte[4096];
+        while (in.read(buffer) >= 0) {
+            continue;
+        }
+        in.close();
+    }
+
+    private void respond(HttpExchange exchange, int code, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+        bytesSent.addAndGet(bytes.length);
+    }
+}
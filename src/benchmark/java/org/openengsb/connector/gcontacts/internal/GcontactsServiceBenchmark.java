@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openengsb.connector.gcontacts.internal.misc.BenchmarkContacts;
+import org.openengsb.core.api.ekb.PersistInterface;
+import org.openengsb.domain.contact.Contact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * end-to-end throughput of the connector hot paths against {@link FakeGDataServer}, including the GData client, the
+ * HTTP round trip over loopback and the conversion. The entry cache is disabled so every load reaches the server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GcontactsServiceBenchmark {
+
+    @Param({ "1000" })
+    public int feedSize;
+
+    private FakeGDataServer server;
+    private GcontactsServiceImpl service;
+    private Contact contact;
+    private String loadId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new FakeGDataServer(feedSize);
+        server.start();
+        service = new GcontactsServiceImpl("benchmark", new GcontactsSession("http", server.getHost()),
+            server.getFeedUrl());
+        service.setGoogleUser("user");
+        service.setGooglePassword("pwd");
+        service.setPersistInterface(mock(PersistInterface.class));
+        service.setCacheSize(0);
+        service.setCommitPipeline(0, 1, 1);
+        contact = BenchmarkContacts.createContact(42);
+        loadId = server.getFeedUrl() + "/42";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.shutdown();
+        server.stop();
+    }
+
+    @Benchmark
+    public String createContact() {
+        return service.createContact(contact);
+    }
+
+    @Benchmark
+    public Contact loadContact() {
+        return service.loadContact(loadId);
+    }
+
+    @Benchmark
+    public ArrayList<Contact> retrieveContacts() {
+        return service.retrieveContacts(null, "Benchmark", null, null, null, null);
+    }
+
+    @Benchmark
+    public int iterateAllContacts() {
+        int count = 0;
+        Iterator<Contact> contacts = service.iterateAllContacts();
+        while (contacts.hasNext()) {
+            contacts.next();
+            count++;
+        }
+        return count;
+    }
+}
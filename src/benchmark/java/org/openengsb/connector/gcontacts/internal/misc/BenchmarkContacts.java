@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal.misc;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+import org.openengsb.domain.contact.Contact;
+import org.openengsb.domain.contact.InformationTypeWithValue;
+import org.openengsb.domain.contact.Location;
+
+/**
+ * builds contacts of the size seen in real address books for the benchmarks
+ */
+public final class BenchmarkContacts {
+
+    private BenchmarkContacts() {
+    }
+
+    public static Contact createContact(int number) {
+        Contact contact = new Contact();
+        contact.setName("Benchmark Contact " + number);
+        contact.setComment("met at the conference in " + (2000 + number % 12) + ", interested in tool integration");
+
+        ArrayList<InformationTypeWithValue<String>> mails = new ArrayList<InformationTypeWithValue<String>>();
+        for (int i = 0; i < 6; i++) {
+            mails.add(new InformationTypeWithValue<String>("mail" + i, "contact" + number + "." + i + "@example.org"));
+        }
+        contact.setMails(mails);
+
+        ArrayList<InformationTypeWithValue<String>> phones = new ArrayList<InformationTypeWithValue<String>>();
+        for (int i = 0; i < 4; i++) {
+            phones.add(new InformationTypeWithValue<String>("phone" + i, "+43 1 5880" + number + i));
+        }
+        contact.setTelephones(phones);
+
+        ArrayList<InformationTypeWithValue<String>> sites = new ArrayList<InformationTypeWithValue<String>>();
+        sites.add(new InformationTypeWithValue<String>("homepage", "http://www.example.org/~contact" + number));
+        sites.add(new InformationTypeWithValue<String>("blog", "http://blog.example.org/contact" + number));
+        contact.setHomepages(sites);
+
+        ArrayList<InformationTypeWithValue<Date>> dates = new ArrayList<InformationTypeWithValue<Date>>();
+        dates.add(new InformationTypeWithValue<Date>("birthday", new Date(315532800000L + number * 86400000L)));
+        for (int i = 0; i < 3; i++) {
+            dates.add(new InformationTypeWithValue<Date>("anniversary" + i, new Date(1325376000000L + i * 86400000L)));
+        }
+        contact.setDates(dates);
+
+        ArrayList<InformationTypeWithValue<Location>> locations = new ArrayList<InformationTypeWithValue<Location>>();
+        for (int i = 0; i < 3; i++) {
+            Location location = new Location();
+            location.setCountry("Austria");
+            location.setState("Vienna");
+            location.setCity("Vienna");
+            location.setZip("10" + (40 + i));
+            location.setAddress("Favoritenstrasse " + (number % 100 + i));
+            locations.add(new InformationTypeWithValue<Location>("address" + i, location));
+        }
+        contact.setLocations(locations);
+
+        return contact;
+    }
+}
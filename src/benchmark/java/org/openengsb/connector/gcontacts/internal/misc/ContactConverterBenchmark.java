@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal.misc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openengsb.domain.contact.Contact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gdata.data.contacts.ContactEntry;
+
+/**
+ * throughput of the conversions between domain contacts and google entries. Run with -prof gc to see the allocation
+ * rate per conversion.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContactConverterBenchmark {
+
+    private Contact contact;
+    private ContactEntry entry;
+    private ContactEntry target;
+
+    @Setup
+    public void setUp() {
+        contact = BenchmarkContacts.createContact(42);
+        entry = ContactConverter.convertContactToContactEntry(contact);
+        target = ContactConverter.convertContactToContactEntry(BenchmarkContacts.createContact(43));
+    }
+
+    @Benchmark
+    public ContactEntry convertContactToContactEntry() {
+        return ContactConverter.convertContactToContactEntry(contact);
+    }
+
+    @Benchmark
+    public ContactEntry extendContactEntryWithContact() {
+        return ContactConverter.extendContactEntryWithContact(target, contact);
+    }
+
+    @Benchmark
+    public Contact convertContactEntryToContact() {
+        return ContactConverter.convertContactEntryToContact(entry);
+    }
+}
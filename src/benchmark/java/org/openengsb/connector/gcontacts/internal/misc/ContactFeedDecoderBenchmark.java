@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal.misc;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openengsb.connector.gcontacts.internal.GcontactsSession;
+import org.openengsb.domain.contact.Contact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gdata.client.contacts.ContactsService;
+import com.google.gdata.data.ExtensionProfile;
+import com.google.gdata.data.Link;
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.contacts.ContactFeed;
+import com.google.gdata.util.common.xml.XmlWriter;
+
+/**
+ * decoding one page of the contacts feed into contacts, with the GData parser and the converter compared to the
+ * streaming decoder. Run with -prof gc to see the allocation per page.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContactFeedDecoderBenchmark {
+
+    @Param({ "25", "250" })
+    private int pageSize;
+
+    private ExtensionProfile profile;
+    private byte[] page;
+
+    @Setup
+    public void setUp() throws Exception {
+        profile = new ContactsService(GcontactsSession.APPLICATION_NAME).getExtensionProfile();
+        ContactFeed feed = new ContactFeed();
+        feed.setId("http://www.google.com/m8/feeds/contacts/default/full");
+        feed.getLinks().add(new Link(Link.Rel.NEXT, Link.Type.ATOM,
+            "http://www.google.com/m8/feeds/contacts/default/full?start-index=" + (pageSize + 1)));
+        for (int i = 0; i < pageSize; i++) {
+            ContactEntry entry = ContactConverter.convertContactToContactEntry(BenchmarkContacts.createContact(i));
+            entry.setId("http://www.google.com/m8/feeds/contacts/default/base/" + i);
+            feed.getEntries().add(entry);
+        }
+        StringWriter writer = new StringWriter();
+        XmlWriter xml = new XmlWriter(writer);
+        feed.generateAtom(xml, profile);
+        xml.flush();
+        page = writer.toString().getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public List<Contact> parseAndConvert() throws Exception {
+        ContactFeed feed = new ContactFeed();
+        feed.parseAtom(profile, new ByteArrayInputStream(page));
+        List<Contact> contacts = new ArrayList<Contact>(feed.getEntries().size());
+        for (ContactEntry entry : feed.getEntries()) {
+            contacts.add(ContactConverter.convertContactEntryToContact(entry));
+        }
+        return contacts;
+    }
+
+    @Benchmark
+    public ContactFeedPage decode() throws Exception {
+        return ContactFeedDecoder.decodeFeed(new ByteArrayInputStream(page), ContactProjection.ALL);
+    }
+}
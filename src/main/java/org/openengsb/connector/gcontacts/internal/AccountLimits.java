@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * limits the asynchronous calls of one google account: how many run at the same time and how many may be accepted
+ * at all, running or waiting. All connector instances using the same account share one, like they share the
+ * {@link TokenBucket}, since google throttles the account and not the connector instance. The sizes are fixed by the
+ * first instance asking for the account; instances configured differently are logged and use them anyway.
+ */
+final class AccountLimits {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccountLimits.class);
+
+    private static final ConcurrentMap<String, AccountLimits> ACCOUNTS = new ConcurrentHashMap<String, AccountLimits>();
+
+    private final int maxConcurrent;
+    private final int queueCapacity;
+    private final Semaphore running;
+    private final Semaphore accepted;
+    /** the conflicting sizes already logged, so they are only reported once */
+    private final Set<String> conflicts = new HashSet<String>();
+
+    private AccountLimits(int maxConcurrent, int queueCapacity) {
+        this.maxConcurrent = maxConcurrent;
+        this.queueCapacity = queueCapacity;
+        running = new Semaphore(maxConcurrent);
+        accepted = new Semaphore(maxConcurrent + queueCapacity);
+    }
+
+    /**
+     * returns the shared limits of the account, creating them with the given sizes if necessary
+     */
+    static AccountLimits forAccount(String account, int maxConcurrent, int queueCapacity) {
+        String key = account == null ? "" : account;
+        AccountLimits limits = ACCOUNTS.get(key);
+        if (limits == null) {
+            AccountLimits created = new AccountLimits(maxConcurrent, queueCapacity);
+            limits = ACCOUNTS.putIfAbsent(key, created);
+            if (limits == null) {
+                limits = created;
+            }
+        }
+        if (limits.maxConcurrent != maxConcurrent || limits.queueCapacity != queueCapacity) {
+            limits.conflict(key, maxConcurrent, queueCapacity);
+        }
+        return limits;
+    }
+
+    private synchronized void conflict(String account, int otherConcurrent, int otherCapacity) {
+        if (conflicts.add(otherConcurrent + "/" + otherCapacity)) {
+            LOGGER.warn("google account {} is limited to {} concurrent and {} waiting calls, ignoring {} and {} "
+                    + "configured by another connector instance", new Object[]{
+                account, maxConcurrent, queueCapacity, otherConcurrent, otherCapacity });
+        }
+    }
+
+    int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * permits for the calls running against google
+     */
+    Semaphore getRunning() {
+        return running;
+    }
+
+    /**
+     * permits for the calls that are running or waiting to run
+     */
+    Semaphore getAccepted() {
+        return accepted;
+    }
+}
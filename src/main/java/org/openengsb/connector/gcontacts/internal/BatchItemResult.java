@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+/**
+ * outcome of one item of a batch operation. The index refers to the position of the item in the list passed to the
+ * batch method.
+ */
+public final class BatchItemResult {
+
+    private final int index;
+    private final String contactId;
+    private final boolean success;
+    private final int code;
+    private final String reason;
+
+    private BatchItemResult(int index, String contactId, boolean success, int code, String reason) {
+        this.index = index;
+        this.contactId = contactId;
+        this.success = success;
+        this.code = code;
+        this.reason = reason;
+    }
+
+    public static BatchItemResult success(int index, String contactId, int code) {
+        return new BatchItemResult(index, contactId, true, code, null);
+    }
+
+    public static BatchItemResult failure(int index, String contactId, int code, String reason) {
+        return new BatchItemResult(index, contactId, false, code, reason);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getContactId() {
+        return contactId;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * the http status code google reported for this item, -1 if the item never reached google
+     */
+    public int getCode() {
+        return code;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchItemResult [index=" + index + ", contactId=" + contactId + ", success=" + success + ", code="
+                + code + ", reason=" + reason + "]";
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gdata.util.AuthenticationException;
+import com.google.gdata.util.ServiceException;
+
+/**
+ * circuit breaker for the requests of one connector instance. After the configured number of consecutive outage
+ * failures (connection problems, server errors, rejected logins) the circuit opens and requests are rejected right
+ * away for the open duration. Afterwards the circuit is half open and lets a limited number of trial requests
+ * through: if one succeeds the circuit closes again, if one fails it opens for another period.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_DURATION = 30 * 1000;
+    public static final int DEFAULT_TRIAL_REQUESTS = 1;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDuration;
+    private final int trialRequests;
+
+    private volatile State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private int trialsLeft;
+
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION, DEFAULT_TRIAL_REQUESTS);
+    }
+
+    /**
+     * @param failureThreshold consecutive failures opening the circuit, 0 disables the breaker
+     * @param openDuration milliseconds the circuit stays open before trial requests are let through
+     * @param trialRequests number of concurrent trial requests while the circuit is half open
+     */
+    public CircuitBreaker(int failureThreshold, long openDuration, int trialRequests) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.trialRequests = Math.max(trialRequests, 1);
+    }
+
+    /**
+     * returns true if a request may be sent. Every permitted request has to be followed by exactly one call of
+     * {@link #onSuccess()} or {@link #onFailure()}.
+     */
+    public synchronized boolean allowRequest() {
+        if (failureThreshold <= 0 || state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openDuration) {
+                return false;
+            }
+            transition(State.HALF_OPEN);
+            trialsLeft = trialRequests;
+        }
+        if (trialsLeft > 0) {
+            trialsLeft--;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void onSuccess() {
+        failures = 0;
+        if (state != State.CLOSED) {
+            transition(State.CLOSED);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (failureThreshold <= 0) {
+            return;
+        }
+        failures++;
+        if (state == State.HALF_OPEN || state == State.CLOSED && failures >= failureThreshold) {
+            openedAt = System.currentTimeMillis();
+            transition(State.OPEN);
+        }
+    }
+
+    /**
+     * records the outcome of a failed request, errors that prove google is reachable count as success
+     */
+    public void onError(Throwable error) {
+        if (isOutage(error)) {
+            onFailure();
+        } else {
+            onSuccess();
+        }
+    }
+
+    /**
+     * true if the error means google cannot be used at the moment, as opposed to an error about the request itself
+     */
+    public static boolean isOutage(Throwable error) {
+        if (error instanceof AuthenticationException || error.getCause() instanceof AuthenticationException) {
+            return true;
+        }
+        if (error instanceof IOException) {
+            return true;
+        }
+        if (error instanceof ServiceException) {
+            ServiceException e = (ServiceException) error;
+            return e.getHttpErrorCodeOverride() >= 500 && !RetryPolicy.isThrottled(e);
+        }
+        return false;
+    }
+
+    private void transition(State next) {
+        LOGGER.info("circuit breaker changes from {} to {}", state, next);
+        state = next;
+    }
+
+    /**
+     * the current state, without any side effect
+     */
+    public State getState() {
+        return state;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public long getOpenDuration() {
+        return openDuration;
+    }
+
+    public int getTrialRequests() {
+        return trialRequests;
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gdata.data.contacts.ContactEntry;
+
+/**
+ * bounded LRU cache of contact entries by id. Entries younger than the time to live are served directly, older ones
+ * are handed out as stale so the caller can revalidate them with their ETag.
+ */
+public class ContactEntryCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    public static final long DEFAULT_TIME_TO_LIVE = 60 * 1000;
+
+    private final Map<String, CachedEntry> entries = new LinkedHashMap<String, CachedEntry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedEntry> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+
+    /**
+     * returns the cached entry if it is younger than the time to live, otherwise null
+     */
+    public ContactEntry getIfFresh(String id) {
+        CachedEntry cached = lookup(id);
+        if (cached != null && System.currentTimeMillis() - cached.loadedAt < timeToLive) {
+            hits.incrementAndGet();
+            return cached.entry;
+        }
+        return null;
+    }
+
+    /**
+     * returns the cached entry regardless of its age, or null if there is none or it has no ETag to revalidate with.
+     * Every call counts as one revalidation, every null result as a miss.
+     */
+    public ContactEntry getForRevalidation(String id) {
+        CachedEntry cached = lookup(id);
+        if (cached == null || cached.entry.getEtag() == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        revalidations.incrementAndGet();
+        return cached.entry;
+    }
+
+    /**
+     * returns the cached entry regardless of its age without counting it as a hit, or null if there is none or it has
+     * no ETag. Used for conditional writes, where google checks the ETag anyway.
+     */
+    public ContactEntry peek(String id) {
+        CachedEntry cached = lookup(id);
+        if (cached == null || cached.entry.getEtag() == null) {
+            return null;
+        }
+        return cached.entry;
+    }
+
+    /**
+     * counts a revalidation of an entry the caller obtained through {@link #peek(String)}
+     */
+    public void countRevalidation() {
+        revalidations.incrementAndGet();
+    }
+
+    /**
+     * marks the entry as confirmed unchanged by google and restarts its time to live
+     */
+    public void markNotModified(String id, ContactEntry entry) {
+        notModified.incrementAndGet();
+        put(id, entry);
+    }
+
+    public void put(String id, ContactEntry entry) {
+        if (maxSize <= 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(id, new CachedEntry(entry, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * caches an entry that has to be revalidated before it is served, e.g. one restored from disk
+     */
+    public void putStale(String id, ContactEntry entry) {
+        if (maxSize <= 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(id, new CachedEntry(entry, 0));
+        }
+    }
+
+    /**
+     * replaces the entry only if the id is already cached, so bulk reads do not evict the working set
+     */
+    public void replaceIfPresent(String id, ContactEntry entry) {
+        synchronized (entries) {
+            if (entries.containsKey(id)) {
+                entries.put(id, new CachedEntry(entry, System.currentTimeMillis()));
+            }
+        }
+    }
+
+    public void remove(String id) {
+        synchronized (entries) {
+            entries.remove(id);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private CachedEntry lookup(String id) {
+        synchronized (entries) {
+            return entries.get(id);
+        }
+    }
+
+    /**
+     * sets the maximum number of cached entries, 0 disables the cache
+     */
+    public void setMaxSize(int maxSize) {
+        synchronized (entries) {
+            this.maxSize = maxSize;
+            if (maxSize <= 0) {
+                entries.clear();
+            }
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    /**
+     * number of revalidations google answered with 304 not modified
+     */
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    /**
+     * sets the hit, miss, revalidation and not modified counters to 0, the cached entries are kept
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        revalidations.set(0);
+        notModified.set(0);
+    }
+
+    private static final class CachedEntry {
+        private final ContactEntry entry;
+        private final long loadedAt;
+
+        private CachedEntry(ContactEntry entry, long loadedAt) {
+            this.entry = entry;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import com.google.gdata.client.contacts.ContactsService;
+import com.google.gdata.data.ExtensionProfile;
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.util.ParseException;
+import com.google.gdata.util.common.xml.XmlWriter;
+
+/**
+ * converts contact entries to their atom representation and back, to store them on disk or to copy them
+ */
+final class ContactEntryXml {
+
+    private static final ExtensionProfile PROFILE =
+        new ContactsService(GcontactsSession.APPLICATION_NAME).getExtensionProfile();
+
+    private ContactEntryXml() {
+    }
+
+    static String generate(ContactEntry entry) throws IOException {
+        StringWriter writer = new StringWriter();
+        XmlWriter xml = new XmlWriter(writer);
+        entry.generateAtom(xml, PROFILE);
+        xml.flush();
+        return writer.toString();
+    }
+
+    static ContactEntry parse(String xml, String etag) throws IOException {
+        ContactEntry entry = new ContactEntry();
+        try {
+            entry.parseAtom(PROFILE, new StringReader(xml));
+        } catch (ParseException e) {
+            throw new IllegalStateException("unable to parse the contact entry", e);
+        }
+        // the ETag is kept next to the entry since it is not always part of the generated atom
+        entry.setEtag(etag == null || etag.length() == 0 ? null : etag);
+        return entry;
+    }
+
+    /**
+     * returns a deep copy of the entry. Cached entries are shared between threads, so they are copied before they are
+     * modified.
+     */
+    static ContactEntry copy(ContactEntry entry) throws IOException {
+        return parse(generate(entry), entry.getEtag());
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.openengsb.core.api.DomainMethodExecutionException;
+
+import com.google.gdata.client.Query;
+import com.google.gdata.client.contacts.ContactsService;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.Link;
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.contacts.ContactFeed;
+import com.google.gdata.util.ServiceException;
+
+/**
+ * iterates over all entries of a contact feed query page by page. The next page is only requested when the previous
+ * one is exhausted, following the next link of the feed, so at most one page is held in memory at any time.
+ */
+public class ContactFeedIterator implements Iterator<ContactEntry> {
+
+    private final GcontactsSession session;
+
+    private Query firstPage;
+    private URL nextPage;
+    private List<ContactEntry> page;
+    private int position;
+    private DateTime feedUpdated;
+
+    public ContactFeedIterator(GcontactsSession session, Query query) {
+        this.session = session;
+        this.firstPage = query;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (page == null || position >= page.size()) {
+            if (firstPage == null && nextPage == null) {
+                page = null;
+                return false;
+            }
+            fetchNextPage();
+        }
+        return true;
+    }
+
+    @Override
+    public ContactEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ContactEntry entry = page.get(position);
+        // drop the reference so converted entries can be collected before the page is done
+        page.set(position++, null);
+        return entry;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("contacts cannot be removed while iterating the feed");
+    }
+
+    /**
+     * the time google reported for the feed when its first page was read, null before that
+     */
+    public DateTime getFeedUpdated() {
+        return feedUpdated;
+    }
+
+    private void fetchNextPage() {
+        ContactFeed feed;
+        try {
+            if (firstPage != null) {
+                final Query query = firstPage;
+                firstPage = null;
+                feed = session.execute(new ServiceCall<ContactFeed>() {
+                    @Override
+                    public ContactFeed call(ContactsService service) throws IOException, ServiceException {
+                        return service.query(query, ContactFeed.class);
+                    }
+                });
+            } else {
+                final URL url = nextPage;
+                feed = session.execute(new ServiceCall<ContactFeed>() {
+                    @Override
+                    public ContactFeed call(ContactsService service) throws IOException, ServiceException {
+                        return service.getFeed(url, ContactFeed.class);
+                    }
+                });
+            }
+            if (feedUpdated == null) {
+                feedUpdated = feed.getUpdated();
+            }
+            Link next = feed.getNextLink();
+            nextPage = next == null ? null : new URL(next.getHref());
+        } catch (MalformedURLException e) {
+            // should never be thrown since the next link is provided by google
+            throw new DomainMethodExecutionException("invalid URL", e);
+        } catch (IOException e) {
+            throw new DomainMethodExecutionException("unable to connect to the google server", e);
+        } catch (ServiceException e) {
+            throw new DomainMethodExecutionException("unable to retrieve contacts", e);
+        }
+        page = feed.getEntries();
+        position = 0;
+    }
+}
@@ -0,0 +1,428 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.openengsb.connector.gcontacts.internal.misc.ContactConverter;
+import org.openengsb.domain.contact.Contact;
+import org.openengsb.domain.contact.InformationTypeWithValue;
+import org.openengsb.domain.contact.Location;
+
+/**
+ * in-memory copy of the address book with one inverted index per searchable field, so searches over several
+ * criteria are answered locally without asking google. Name tokens, mail addresses, phone numbers, homepages,
+ * cities, zip codes and days are indexed; the remaining criteria are checked on the candidates found by the indexes.
+ * Contacts are copied when they are stored and when they are returned, so callers cannot modify the index.
+ */
+public class ContactIndex {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Contact> contacts = new HashMap<String, Contact>();
+    private final Map<String, Set<String>> names = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>> mails = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>> phones = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>> homepages = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>> cities = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>> zips = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>> dates = new HashMap<String, Set<String>>();
+
+    private volatile boolean complete;
+
+    /**
+     * adds the contact or replaces the indexed version with the same id
+     */
+    public void put(Contact contact) {
+        Contact copy = copy(contact);
+        lock.writeLock().lock();
+        try {
+            Contact previous = contacts.put(copy.getId(), copy);
+            if (previous != null) {
+                unindex(previous);
+            }
+            index(copy);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            Contact previous = contacts.remove(id);
+            if (previous != null) {
+                unindex(previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            complete = false;
+            contacts.clear();
+            names.clear();
+            mails.clear();
+            phones.clear();
+            homepages.clear();
+            cities.clear();
+            zips.clear();
+            dates.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * true once the whole address book was loaded into the index
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return contacts.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Contact get(String id) {
+        lock.readLock().lock();
+        try {
+            Contact contact = contacts.get(id);
+            return contact == null ? null : copy(contact);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Contact> findByMail(String mail) {
+        return find(mails, normalizeMail(mail));
+    }
+
+    public List<Contact> findByTelephone(String telephone) {
+        return find(phones, normalizePhone(telephone));
+    }
+
+    /**
+     * returns all contacts matching every given criterion, null criteria are ignored. Every token of the name has to
+     * be a token of the contact name; homepage, city, zip and date have to match one value of the contact exactly
+     * (ignoring case, for the date the day); state, country, address and comment have to be contained in a value of
+     * the contact. Without any criterion the result is empty.
+     */
+    public List<Contact> query(String name, String homepage, Location location, Date date, String comment) {
+        List<String> nameTokens = name == null ? Collections.<String>emptyList() : tokenize(name);
+        lock.readLock().lock();
+        try {
+            List<Set<String>> postings = new ArrayList<Set<String>>();
+            for (String token : nameTokens) {
+                postings.add(postings(names, token));
+            }
+            if (homepage != null) {
+                postings.add(postings(homepages, normalize(homepage)));
+            }
+            if (location != null && location.getCity() != null) {
+                postings.add(postings(cities, normalize(location.getCity())));
+            }
+            if (location != null && location.getZip() != null) {
+                postings.add(postings(zips, normalize(location.getZip())));
+            }
+            if (date != null) {
+                postings.add(postings(dates, ContactConverter.formatBirthday(date)));
+            }
+            boolean filtered = comment != null || location != null
+                    && (location.getState() != null || location.getCountry() != null || location.getAddress() != null);
+            if (postings.isEmpty() && !filtered) {
+                return new ArrayList<Contact>();
+            }
+
+            Collection<String> candidates = postings.isEmpty() ? contacts.keySet() : intersect(postings);
+            List<Contact> result = new ArrayList<Contact>(Math.min(candidates.size(), 16));
+            for (String id : candidates) {
+                Contact contact = contacts.get(id);
+                if (matchesLocation(contact, location) && contains(contact.getComment(), comment)) {
+                    result.add(copy(contact));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Contact> find(Map<String, Set<String>> index, String key) {
+        lock.readLock().lock();
+        try {
+            Set<String> ids = postings(index, key);
+            List<Contact> result = new ArrayList<Contact>(ids.size());
+            for (String id : ids) {
+                result.add(copy(contacts.get(id)));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * intersects the posting sets starting with the smallest one, so the work depends on the most selective criterion
+     */
+    private static Set<String> intersect(List<Set<String>> postings) {
+        Set<String> smallest = postings.get(0);
+        for (Set<String> ids : postings) {
+            if (ids.size() < smallest.size()) {
+                smallest = ids;
+            }
+        }
+        Set<String> result = new LinkedHashSet<String>(smallest);
+        for (Set<String> ids : postings) {
+            if (ids != smallest) {
+                result.retainAll(ids);
+            }
+        }
+        return result;
+    }
+
+    private static Set<String> postings(Map<String, Set<String>> index, String key) {
+        Set<String> ids = index.get(key);
+        return ids == null ? Collections.<String>emptySet() : ids;
+    }
+
+    private static boolean matchesLocation(Contact contact, Location wanted) {
+        if (wanted == null || wanted.getState() == null && wanted.getCountry() == null && wanted.getAddress() == null) {
+            return true;
+        }
+        if (contact.getLocations() == null) {
+            return false;
+        }
+        for (InformationTypeWithValue<Location> location : contact.getLocations()) {
+            Location value = location.getValue();
+            if (contains(value.getState(), wanted.getState()) && contains(value.getCountry(), wanted.getCountry())
+                    && contains(value.getAddress(), wanted.getAddress())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(String value, String wanted) {
+        if (wanted == null) {
+            return true;
+        }
+        return value != null && normalize(value).contains(normalize(wanted));
+    }
+
+    private void index(Contact contact) {
+        String id = contact.getId();
+        if (contact.getName() != null) {
+            for (String token : tokenize(contact.getName())) {
+                add(names, token, id);
+            }
+        }
+        for (String mail : values(contact.getMails())) {
+            add(mails, normalizeMail(mail), id);
+        }
+        for (String phone : values(contact.getTelephones())) {
+            add(phones, normalizePhone(phone), id);
+        }
+        for (String homepage : values(contact.getHomepages())) {
+            add(homepages, normalize(homepage), id);
+        }
+        if (contact.getLocations() != null) {
+            for (InformationTypeWithValue<Location> location : contact.getLocations()) {
+                add(cities, normalize(location.getValue().getCity()), id);
+                add(zips, normalize(location.getValue().getZip()), id);
+            }
+        }
+        if (contact.getDates() != null) {
+            for (InformationTypeWithValue<Date> date : contact.getDates()) {
+                if (date.getValue() != null) {
+                    add(dates, ContactConverter.formatBirthday(date.getValue()), id);
+                }
+            }
+        }
+    }
+
+    private void unindex(Contact contact) {
+        String id = contact.getId();
+        if (contact.getName() != null) {
+            for (String token : tokenize(contact.getName())) {
+                remove(names, token, id);
+            }
+        }
+        for (String mail : values(contact.getMails())) {
+            remove(mails, normalizeMail(mail), id);
+        }
+        for (String phone : values(contact.getTelephones())) {
+            remove(phones, normalizePhone(phone), id);
+        }
+        for (String homepage : values(contact.getHomepages())) {
+            remove(homepages, normalize(homepage), id);
+        }
+        if (contact.getLocations() != null) {
+            for (InformationTypeWithValue<Location> location : contact.getLocations()) {
+                remove(cities, normalize(location.getValue().getCity()), id);
+                remove(zips, normalize(location.getValue().getZip()), id);
+            }
+        }
+        if (contact.getDates() != null) {
+            for (InformationTypeWithValue<Date> date : contact.getDates()) {
+                if (date.getValue() != null) {
+                    remove(dates, ContactConverter.formatBirthday(date.getValue()), id);
+                }
+            }
+        }
+    }
+
+    private static void add(Map<String, Set<String>> index, String key, String id) {
+        if (key == null || key.length() == 0) {
+            return;
+        }
+        Set<String> ids = index.get(key);
+        if (ids == null) {
+            ids = new LinkedHashSet<String>(4);
+            index.put(key, ids);
+        }
+        ids.add(id);
+    }
+
+    private static void remove(Map<String, Set<String>> index, String key, String id) {
+        Set<String> ids = index.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static List<String> values(List<InformationTypeWithValue<String>> list) {
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<String>(list.size());
+        for (InformationTypeWithValue<String> value : list) {
+            values.add(value.getValue());
+        }
+        return values;
+    }
+
+    /**
+     * splits a text into lower case words
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<String>();
+        for (String token : normalize(text).split("[^\\p{L}\\p{N}]+")) {
+            if (token.length() > 0) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    static String normalize(String value) {
+        return value == null ? null : value.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    static String normalizeMail(String mail) {
+        return normalize(mail);
+    }
+
+    /**
+     * keeps only the digits of a phone number, so different spellings of one number match
+     */
+    static String normalizePhone(String phone) {
+        if (phone == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            if (Character.isDigit(phone.charAt(i))) {
+                digits.append(phone.charAt(i));
+            }
+        }
+        return digits.toString();
+    }
+
+    static Contact copy(Contact contact) {
+        Contact copy = new Contact();
+        copy.setId(contact.getId());
+        copy.setName(contact.getName());
+        copy.setComment(contact.getComment());
+        copy.setMails(copyStrings(contact.getMails()));
+        copy.setTelephones(copyStrings(contact.getTelephones()));
+        copy.setHomepages(copyStrings(contact.getHomepages()));
+        if (contact.getDates() != null) {
+            ArrayList<InformationTypeWithValue<Date>> dates =
+                new ArrayList<InformationTypeWithValue<Date>>(contact.getDates().size());
+            for (InformationTypeWithValue<Date> date : contact.getDates()) {
+                Date value = date.getValue() == null ? null : new Date(date.getValue().getTime());
+                dates.add(new InformationTypeWithValue<Date>(date.getKey(), value));
+            }
+            copy.setDates(dates);
+        }
+        if (contact.getLocations() != null) {
+            ArrayList<InformationTypeWithValue<Location>> locations =
+                new ArrayList<InformationTypeWithValue<Location>>(contact.getLocations().size());
+            for (InformationTypeWithValue<Location> location : contact.getLocations()) {
+                Location value = new Location();
+                value.setCountry(location.getValue().getCountry());
+                value.setState(location.getValue().getState());
+                value.setCity(location.getValue().getCity());
+                value.setZip(location.getValue().getZip());
+                value.setAddress(location.getValue().getAddress());
+                locations.add(new InformationTypeWithValue<Location>(location.getKey(), value));
+            }
+            copy.setLocations(locations);
+        }
+        return copy;
+    }
+
+    private static ArrayList<InformationTypeWithValue<String>> copyStrings(
+            List<InformationTypeWithValue<String>> list) {
+        if (list == null) {
+            return null;
+        }
+        ArrayList<InformationTypeWithValue<String>> copy = new ArrayList<InformationTypeWithValue<String>>(list.size());
+        for (InformationTypeWithValue<String> value : list) {
+            copy.add(new InformationTypeWithValue<String>(value.getKey(), value.getValue()));
+        }
+        return copy;
+    }
+}
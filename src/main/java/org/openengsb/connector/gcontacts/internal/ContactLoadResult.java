@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.net.HttpURLConnection;
+
+import org.openengsb.domain.contact.Contact;
+
+/**
+ * outcome of loading one contact of a bulk load. The index refers to the position of the id in the list passed to
+ * the bulk load.
+ */
+public final class ContactLoadResult {
+
+    private final int index;
+    private final String contactId;
+    private final Contact contact;
+    private final int code;
+    private final String reason;
+
+    private ContactLoadResult(int index, String contactId, Contact contact, int code, String reason) {
+        this.index = index;
+        this.contactId = contactId;
+        this.contact = contact;
+        this.code = code;
+        this.reason = reason;
+    }
+
+    public static ContactLoadResult found(int index, String contactId, Contact contact) {
+        return new ContactLoadResult(index, contactId, contact, HttpURLConnection.HTTP_OK, null);
+    }
+
+    public static ContactLoadResult failure(int index, String contactId, int code, String reason) {
+        return new ContactLoadResult(index, contactId, null, code, reason);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getContactId() {
+        return contactId;
+    }
+
+    /**
+     * the loaded contact, null if it was not found or could not be loaded
+     */
+    public Contact getContact() {
+        return contact;
+    }
+
+    public boolean isFound() {
+        return contact != null;
+    }
+
+    /**
+     * true if google reported that there is no contact with this id
+     */
+    public boolean isNotFound() {
+        return code == HttpURLConnection.HTTP_NOT_FOUND;
+    }
+
+    /**
+     * true if the contact could not be loaded for another reason than not existing
+     */
+    public boolean isError() {
+        return contact == null && !isNotFound();
+    }
+
+    /**
+     * the http status code google reported for this id, -1 if the request never reached google
+     */
+    public int getCode() {
+        return code;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    @Override
+    public String toString() {
+        return "ContactLoadResult [index=" + index + ", contactId=" + contactId + ", found=" + isFound() + ", code="
+                + code + ", reason=" + reason + "]";
+    }
+}
@@ -0,0 +1,426 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.contacts.ContactEntry;
+
+/**
+ * append-only log of the contact entries mirrored from google, with their ETags and the sync watermark, so a
+ * restarted connector can warm its cache and index from disk and continue with an incremental sync. Every change is
+ * appended as one record; the log is read through a memory mapping and rewritten with only the live entries once it
+ * holds more than twice as many records as entries.
+ * <p>
+ * Every record starts with its length and a CRC32 checksum. A corrupt record is skipped up to the next record with a
+ * matching checksum, only a record cut off at the end of the log is removed.
+ * <p>
+ * The snapshot is complete if it holds the whole address book as of its watermark. Only then may the watermark be
+ * trusted by a sync resuming from it.
+ */
+public class ContactSnapshotStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContactSnapshotStore.class);
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte WATERMARK = 3;
+    /** length and checksum in front of every record */
+    private static final int HEADER_SIZE = 8;
+
+    /** records below this count are never compacted */
+    private static final int MIN_COMPACT_RECORDS = 1000;
+
+    private final File file;
+
+    private DataOutputStream out;
+    private final Set<String> liveIds = new HashSet<String>();
+    private int records;
+    private DateTime watermark;
+    private boolean complete;
+
+    public ContactSnapshotStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * reads all live entries of the log in the order they were last written. Corrupt records are skipped and leave
+     * the snapshot incomplete. A record cut off by a crash ends the log, it is removed so new records are appended
+     * after the last complete one.
+     */
+    public synchronized Map<String, ContactEntry> load() {
+        closeLog();
+        Map<String, ContactEntry> entries = new LinkedHashMap<String, ContactEntry>();
+        liveIds.clear();
+        records = 0;
+        watermark = null;
+        complete = false;
+        if (!file.exists()) {
+            return entries;
+        }
+        long validLength = 0;
+        boolean skipped = false;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.hasRemaining()) {
+                int start = buffer.position();
+                ByteBuffer record = nextRecord(buffer);
+                if (record == null) {
+                    int next = findRecord(buffer, start + 1);
+                    if (next < 0) {
+                        break;
+                    }
+                    LOGGER.warn("skipping {} corrupt bytes in contact snapshot {} at {}", new Object[]{
+                        next - start, file, start });
+                    skipped = true;
+                    buffer.position(next);
+                    continue;
+                }
+                try {
+                    readRecord(record, entries);
+                } catch (IOException e) {
+                    LOGGER.warn("skipping unreadable record in contact snapshot " + file + " at " + start, e);
+                    skipped = true;
+                } catch (RuntimeException e) {
+                    LOGGER.warn("skipping unreadable record in contact snapshot " + file + " at " + start, e);
+                    skipped = true;
+                }
+                records++;
+                validLength = buffer.position();
+            }
+            if (validLength < channel.size()) {
+                LOGGER.warn("discarding {} bytes at the end of contact snapshot {}", channel.size() - validLength,
+                    file);
+                channel.truncate(validLength);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("unable to read contact snapshot " + file + ", starting without it", e);
+            entries.clear();
+            records = 0;
+            watermark = null;
+        } finally {
+            closeQuietly(raf);
+        }
+        // a skipped record may have been a change the entries are missing now
+        complete = complete && !skipped;
+        liveIds.addAll(entries.keySet());
+        if (records > MIN_COMPACT_RECORDS && records > 2 * liveIds.size()) {
+            rewrite(entries);
+        }
+        return entries;
+    }
+
+    /**
+     * returns the record at the position of the buffer and moves behind it, or null if there is no complete record
+     * with a matching checksum there
+     */
+    private static ByteBuffer nextRecord(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        int length = buffer.getInt(start);
+        int checksum = buffer.getInt(start + 4);
+        if (length < 0 || length > buffer.remaining() - HEADER_SIZE) {
+            return null;
+        }
+        byte[] record = new byte[length];
+        buffer.position(start + HEADER_SIZE);
+        buffer.get(record);
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        if ((int) crc.getValue() != checksum) {
+            buffer.position(start);
+            return null;
+        }
+        return ByteBuffer.wrap(record);
+    }
+
+    /**
+     * the position of the next valid record from the given position on, or -1 if there is none
+     */
+    private static int findRecord(ByteBuffer buffer, int from) {
+        for (int position = from; position + HEADER_SIZE <= buffer.limit(); position++) {
+            buffer.position(position);
+            if (nextRecord(buffer) != null) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private void readRecord(ByteBuffer buffer, Map<String, ContactEntry> entries) throws IOException {
+        byte type = buffer.get();
+        if (type == WATERMARK) {
+            watermark = new DateTime(buffer.getLong());
+            complete = true;
+            return;
+        }
+        String id = readString(buffer);
+        if (type == DELETE) {
+            entries.remove(id);
+        } else if (type == PUT) {
+            String etag = readString(buffer);
+            String xml = readString(buffer);
+            entries.remove(id);
+            entries.put(id, ContactEntryXml.parse(xml, etag));
+        } else {
+            throw new IllegalStateException("unknown record type " + type);
+        }
+    }
+
+    /**
+     * appends the current version of an entry
+     */
+    public synchronized void put(ContactEntry entry) {
+        try {
+            byte[] record = putRecord(entry);
+            DataOutputStream log = openLog();
+            writeRecord(log, record);
+            log.flush();
+            records++;
+            liveIds.add(entry.getId());
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    public synchronized void delete(String id) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(bytes);
+            record.writeByte(DELETE);
+            writeString(record, id);
+            DataOutputStream log = openLog();
+            writeRecord(log, bytes.toByteArray());
+            log.flush();
+            records++;
+            liveIds.remove(id);
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * records that the snapshot holds the whole address book as of the given watermark
+     */
+    public synchronized void storeWatermark(DateTime next) {
+        try {
+            DataOutputStream log = openLog();
+            writeRecord(log, watermarkRecord(next));
+            log.flush();
+            records++;
+            watermark = next;
+            complete = true;
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * the watermark of the last complete state, or null
+     */
+    public synchronized DateTime getWatermark() {
+        return watermark;
+    }
+
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * marks the snapshot as incomplete, e.g. because it does not match the state the sync resumes from
+     */
+    public synchronized void setIncomplete() {
+        complete = false;
+    }
+
+    /**
+     * rewrites the log with only the live entries if it grew to more than twice their number
+     */
+    public synchronized void compactIfNeeded() {
+        if (records > MIN_COMPACT_RECORDS && records > 2 * liveIds.size()) {
+            boolean wasComplete = complete;
+            // loading compacts the log, the live entries are not kept in memory otherwise
+            load();
+            complete = complete && wasComplete;
+        }
+    }
+
+    /**
+     * deletes the log, e.g. before the whole address book is read again
+     */
+    public synchronized void clear() {
+        closeLog();
+        liveIds.clear();
+        records = 0;
+        watermark = null;
+        complete = false;
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("unable to delete contact snapshot {}", file);
+        }
+    }
+
+    public synchronized void close() {
+        closeLog();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized int size() {
+        return liveIds.size();
+    }
+
+    /**
+     * writes the entries and the watermark to a new file that replaces the log afterwards, so a crash never leaves a
+     * half written log behind
+     */
+    private void rewrite(Map<String, ContactEntry> entries) {
+        closeLog();
+        File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        DataOutputStream log = null;
+        int written = 0;
+        try {
+            log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            for (ContactEntry entry : entries.values()) {
+                writeRecord(log, putRecord(entry));
+                written++;
+            }
+            if (complete && watermark != null) {
+                writeRecord(log, watermarkRecord(watermark));
+                written++;
+            }
+        } catch (IOException e) {
+            closeQuietly(log);
+            temp.delete();
+            LOGGER.warn("unable to compact contact snapshot " + file, e);
+            return;
+        } finally {
+            closeQuietly(log);
+        }
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            LOGGER.warn("unable to replace contact snapshot {}", file);
+            return;
+        }
+        records = written;
+        LOGGER.debug("compacted contact snapshot {} to {} records", file, written);
+    }
+
+    private DataOutputStream openLog() throws IOException {
+        if (out == null) {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (!parent.exists() && !parent.mkdirs()) {
+                throw new IOException("unable to create directory " + parent);
+            }
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        }
+        return out;
+    }
+
+    private void closeLog() {
+        closeQuietly(out);
+        out = null;
+    }
+
+    /**
+     * a record that could not be written leaves the log without the latest state, so it cannot be trusted anymore
+     */
+    private void failed(IOException e) {
+        LOGGER.warn("unable to write contact snapshot " + file + ", it is ignored until the next full read", e);
+        closeLog();
+        complete = false;
+    }
+
+    private static byte[] putRecord(ContactEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(PUT);
+        writeString(record, entry.getId());
+        writeString(record, entry.getEtag() == null ? "" : entry.getEtag());
+        writeString(record, ContactEntryXml.generate(entry));
+        return bytes.toByteArray();
+    }
+
+    private static byte[] watermarkRecord(DateTime value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(WATERMARK);
+        record.writeLong(value.getValue());
+        return bytes.toByteArray();
+    }
+
+    private static void writeRecord(DataOutputStream log, byte[] record) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        log.writeInt(record.length);
+        log.writeInt((int) crc.getValue());
+        log.write(record);
+    }
+
+    private static void writeString(DataOutputStream log, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        log.writeInt(bytes.length);
+        log.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOGGER.debug("unable to close stream", e);
+        }
+    }
+}
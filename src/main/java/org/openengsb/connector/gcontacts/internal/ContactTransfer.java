@@ -0,0 +1,216 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.openengsb.connector.gcontacts.internal.misc.ContactFileFormat;
+import org.openengsb.core.api.DomainMethodExecutionException;
+import org.openengsb.domain.contact.Contact;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * exports the address book into a contact file and imports such files, one contact at a time, so memory usage does
+ * not depend on the size of the address book. The format is chosen by the file name, see
+ * {@link ContactFileFormat#forFileName}. An import creates the contacts in batches and records after every batch how
+ * far it got in a checkpoint file next to the imported file, so an interrupted import continues from there. At most
+ * the batch that was running when it was interrupted is created twice.
+ */
+public class ContactTransfer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContactTransfer.class);
+
+    static final String CHECKPOINT_SUFFIX = ".import";
+    private static final String CHARSET = "UTF-8";
+
+    private final GcontactsServiceImpl service;
+
+    public ContactTransfer(GcontactsServiceImpl service) {
+        this.service = service;
+    }
+
+    /**
+     * writes all contacts into the file, replacing it only once the export is complete
+     *
+     * @return the number of exported contacts
+     */
+    public int exportContacts(File file) {
+        ContactFileFormat format = ContactFileFormat.forFileName(file.getName());
+        File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        int exported = 0;
+        Writer out = null;
+        try {
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), CHARSET));
+            // all fields are exported, regardless of the projection configured for reads
+            Iterator<Contact> contacts = service.iterateAllContacts();
+            while (contacts.hasNext()) {
+                format.write(contacts.next(), out);
+                exported++;
+            }
+            out.close();
+            out = null;
+        } catch (IOException e) {
+            throw new DomainMethodExecutionException("unable to write contacts to " + temp, e);
+        } finally {
+            closeQuietly(out);
+        }
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            throw new DomainMethodExecutionException("unable to replace " + file);
+        }
+        LOGGER.info("exported {} contacts to {}", exported, file);
+        return exported;
+    }
+
+    /**
+     * creates all contacts of the file as new contacts, ids in the file are ignored. If a checkpoint of an earlier
+     * import of the file exists, the contacts it already processed are skipped. The checkpoint is deleted once the
+     * whole file is imported. Contacts google rejects are counted as failed. If a batch does not reach google at all,
+     * the import stops with an exception before the checkpoint is advanced, so it is sent again when the import is
+     * continued.
+     */
+    public ImportResult importContacts(File file) {
+        ContactFileFormat format = ContactFileFormat.forFileName(file.getName());
+        File checkpointFile = new File(file.getPath() + CHECKPOINT_SUFFIX);
+        Properties checkpoint = loadCheckpoint(checkpointFile);
+        int resumedAt = Integer.parseInt(checkpoint.getProperty("records", "0"));
+        int created = Integer.parseInt(checkpoint.getProperty("created", "0"));
+        int failed = Integer.parseInt(checkpoint.getProperty("failed", "0"));
+        if (resumedAt > 0) {
+            LOGGER.info("resuming import of {} after {} contacts", file, resumedAt);
+        }
+
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET));
+            for (int i = 0; i < resumedAt; i++) {
+                if (format.read(in) == null) {
+                    break;
+                }
+            }
+            int records = resumedAt;
+            int batchSize = Math.max(service.getBatchSize(), 1);
+            List<Contact> batch = new ArrayList<Contact>(batchSize);
+            Contact contact;
+            do {
+                contact = format.read(in);
+                if (contact != null) {
+                    // the contact gets a new id from google
+                    contact.setId(null);
+                    batch.add(contact);
+                }
+                if (batch.size() == batchSize || contact == null && !batch.isEmpty()) {
+                    List<BatchItemResult> results = service.createContacts(batch);
+                    for (BatchItemResult result : results) {
+                        if (result.getCode() == -1) {
+                            throw new DomainMethodExecutionException("unable to import contacts " + (records + 1)
+                                    + " to " + (records + batch.size()) + " of " + file + ": " + result.getReason());
+                        }
+                    }
+                    for (BatchItemResult result : results) {
+                        if (result.isSuccess()) {
+                            created++;
+                        } else {
+                            failed++;
+                            LOGGER.warn("unable to import contact {} of {}: {} {}", new Object[]{
+                                records + result.getIndex() + 1, file, result.getCode(), result.getReason() });
+                        }
+                    }
+                    records += batch.size();
+                    batch.clear();
+                    checkpoint.setProperty("records", String.valueOf(records));
+                    checkpoint.setProperty("created", String.valueOf(created));
+                    checkpoint.setProperty("failed", String.valueOf(failed));
+                    storeCheckpoint(checkpointFile, checkpoint);
+                }
+            } while (contact != null);
+        } catch (IOException e) {
+            throw new DomainMethodExecutionException("unable to read contacts from " + file, e);
+        } finally {
+            closeQuietly(in);
+        }
+        if (checkpointFile.exists() && !checkpointFile.delete()) {
+            LOGGER.warn("unable to delete import checkpoint {}", checkpointFile);
+        }
+        LOGGER.info("imported {} contacts from {}, {} failed", new Object[]{ created, file, failed });
+        return new ImportResult(resumedAt, created, failed);
+    }
+
+    private static Properties loadCheckpoint(File file) {
+        Properties properties = new Properties();
+        if (!file.exists()) {
+            return properties;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            properties.load(in);
+        } catch (IOException e) {
+            throw new DomainMethodExecutionException("unable to read import checkpoint " + file, e);
+        } finally {
+            closeQuietly(in);
+        }
+        return properties;
+    }
+
+    /**
+     * writes the checkpoint next to the old one and renames it afterwards, so a crash never leaves a half written
+     * checkpoint behind
+     */
+    private static void storeCheckpoint(File file, Properties checkpoint) {
+        File temp = new File(file.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            checkpoint.store(out, "gcontacts import checkpoint");
+        } catch (IOException e) {
+            throw new DomainMethodExecutionException("unable to write import checkpoint " + temp, e);
+        } finally {
+            closeQuietly(out);
+        }
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            throw new DomainMethodExecutionException("unable to replace import checkpoint " + file);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOGGER.debug("unable to close stream", e);
+        }
+    }
+}
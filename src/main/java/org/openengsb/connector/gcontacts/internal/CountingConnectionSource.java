@@ -0,0 +1,343 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.security.Permission;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gdata.client.http.HttpUrlConnectionSource;
+import com.google.gdata.client.http.JdkHttpUrlConnectionSource;
+
+/**
+ * opens the connections of the google client like it does by default, but counts the bytes written to and read from
+ * them. The counted bytes are the ones on the wire, i.e. compressed if the response is gzip encoded.
+ */
+public class CountingConnectionSource implements HttpUrlConnectionSource {
+
+    private final GcontactsMetrics metrics;
+
+    public CountingConnectionSource(GcontactsMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public HttpURLConnection openConnection(URL url) throws IOException {
+        return new CountingConnection(JdkHttpUrlConnectionSource.INSTANCE.openConnection(url), metrics);
+    }
+
+    /**
+     * delegates everything to the real connection and wraps its streams
+     */
+    private static final class CountingConnection extends HttpURLConnection {
+
+        private final HttpURLConnection delegate;
+        private final GcontactsMetrics metrics;
+
+        private CountingConnection(HttpURLConnection delegate, GcontactsMetrics metrics) {
+            super(delegate.getURL());
+            this.delegate = delegate;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return new FilterOutputStream(delegate.getOutputStream()) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    metrics.addBytesSent(1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    metrics.addBytesSent(len);
+                }
+            };
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return count(delegate.getInputStream());
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            InputStream in = delegate.getErrorStream();
+            return in == null ? null : count(in);
+        }
+
+        private InputStream count(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        metrics.addBytesReceived(1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = super.read(b, off, len);
+                    if (read > 0) {
+                        metrics.addBytesReceived(read);
+                    }
+                    return read;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    long skipped = super.skip(n);
+                    metrics.addBytesReceived(skipped);
+                    return skipped;
+                }
+            };
+        }
+
+        @Override
+        public void connect() throws IOException {
+            delegate.connect();
+        }
+
+        @Override
+        public void disconnect() {
+            delegate.disconnect();
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return delegate.usingProxy();
+        }
+
+        @Override
+        public URL getURL() {
+            return delegate.getURL();
+        }
+
+        @Override
+        public void setRequestMethod(String method) throws ProtocolException {
+            delegate.setRequestMethod(method);
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return delegate.getRequestMethod();
+        }
+
+        @Override
+        public int getResponseCode() throws IOException {
+            return delegate.getResponseCode();
+        }
+
+        @Override
+        public String getResponseMessage() throws IOException {
+            return delegate.getResponseMessage();
+        }
+
+        @Override
+        public void setRequestProperty(String key, String value) {
+            delegate.setRequestProperty(key, value);
+        }
+
+        @Override
+        public void addRequestProperty(String key, String value) {
+            delegate.addRequestProperty(key, value);
+        }
+
+        @Override
+        public String getRequestProperty(String key) {
+            return delegate.getRequestProperty(key);
+        }
+
+        @Override
+        public Map<String, List<String>> getRequestProperties() {
+            return delegate.getRequestProperties();
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            return delegate.getHeaderField(name);
+        }
+
+        @Override
+        public String getHeaderField(int n) {
+            return delegate.getHeaderField(n);
+        }
+
+        @Override
+        public String getHeaderFieldKey(int n) {
+            return delegate.getHeaderFieldKey(n);
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+            return delegate.getHeaderFields();
+        }
+
+        @Override
+        public long getHeaderFieldDate(String name, long defaultValue) {
+            return delegate.getHeaderFieldDate(name, defaultValue);
+        }
+
+        @Override
+        public int getHeaderFieldInt(String name, int defaultValue) {
+            return delegate.getHeaderFieldInt(name, defaultValue);
+        }
+
+        @Override
+        public String getContentType() {
+            return delegate.getContentType();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return delegate.getContentEncoding();
+        }
+
+        @Override
+        public int getContentLength() {
+            return delegate.getContentLength();
+        }
+
+        @Override
+        public long getDate() {
+            return delegate.getDate();
+        }
+
+        @Override
+        public long getExpiration() {
+            return delegate.getExpiration();
+        }
+
+        @Override
+        public long getLastModified() {
+            return delegate.getLastModified();
+        }
+
+        @Override
+        public void setDoInput(boolean doinput) {
+            delegate.setDoInput(doinput);
+        }
+
+        @Override
+        public boolean getDoInput() {
+            return delegate.getDoInput();
+        }
+
+        @Override
+        public void setDoOutput(boolean dooutput) {
+            delegate.setDoOutput(dooutput);
+        }
+
+        @Override
+        public boolean getDoOutput() {
+            return delegate.getDoOutput();
+        }
+
+        @Override
+        public void setUseCaches(boolean usecaches) {
+            delegate.setUseCaches(usecaches);
+        }
+
+        @Override
+        public boolean getUseCaches() {
+            return delegate.getUseCaches();
+        }
+
+        @Override
+        public void setIfModifiedSince(long ifmodifiedsince) {
+            delegate.setIfModifiedSince(ifmodifiedsince);
+        }
+
+        @Override
+        public long getIfModifiedSince() {
+            return delegate.getIfModifiedSince();
+        }
+
+        @Override
+        public void setAllowUserInteraction(boolean allowuserinteraction) {
+            delegate.setAllowUserInteraction(allowuserinteraction);
+        }
+
+        @Override
+        public boolean getAllowUserInteraction() {
+            return delegate.getAllowUserInteraction();
+        }
+
+        @Override
+        public void setConnectTimeout(int timeout) {
+            delegate.setConnectTimeout(timeout);
+        }
+
+        @Override
+        public int getConnectTimeout() {
+            return delegate.getConnectTimeout();
+        }
+
+        @Override
+        public void setReadTimeout(int timeout) {
+            delegate.setReadTimeout(timeout);
+        }
+
+        @Override
+        public int getReadTimeout() {
+            return delegate.getReadTimeout();
+        }
+
+        @Override
+        public void setInstanceFollowRedirects(boolean followRedirects) {
+            delegate.setInstanceFollowRedirects(followRedirects);
+        }
+
+        @Override
+        public boolean getInstanceFollowRedirects() {
+            return delegate.getInstanceFollowRedirects();
+        }
+
+        @Override
+        public void setChunkedStreamingMode(int chunklen) {
+            delegate.setChunkedStreamingMode(chunklen);
+        }
+
+        @Override
+        public void setFixedLengthStreamingMode(int contentLength) {
+            delegate.setFixedLengthStreamingMode(contentLength);
+        }
+
+        @Override
+        public Permission getPermission() throws IOException {
+            return delegate.getPermission();
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+}
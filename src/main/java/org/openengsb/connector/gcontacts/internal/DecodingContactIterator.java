@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openengsb.connector.gcontacts.internal.misc.ContactFeedDecoder;
+import org.openengsb.connector.gcontacts.internal.misc.ContactFeedPage;
+import org.openengsb.connector.gcontacts.internal.misc.ContactField;
+import org.openengsb.core.api.DomainMethodExecutionException;
+import org.openengsb.domain.contact.Contact;
+
+import com.google.gdata.client.Query;
+import com.google.gdata.client.Service.GDataRequest;
+import com.google.gdata.client.contacts.ContactsService;
+import com.google.gdata.util.ParseException;
+import com.google.gdata.util.ServiceException;
+
+/**
+ * iterates over all contacts of a contact feed query like {@link ContactFeedIterator}, but decodes every page with
+ * the {@link ContactFeedDecoder} straight from the response stream instead of building ContactEntry objects first.
+ */
+public class DecodingContactIterator implements Iterator<Contact> {
+
+    private final GcontactsSession session;
+    private final Set<ContactField> fields;
+
+    private Query firstPage;
+    private URL nextPage;
+    private List<Contact> page;
+    private int position;
+
+    public DecodingContactIterator(GcontactsSession session, Query query, Set<ContactField> fields) {
+        this.session = session;
+        this.firstPage = query;
+        this.fields = fields;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (page == null || position >= page.size()) {
+            if (firstPage == null && nextPage == null) {
+                page = null;
+                return false;
+            }
+            fetchNextPage();
+        }
+        return true;
+    }
+
+    @Override
+    public Contact next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Contact contact = page.get(position);
+        page.set(position++, null);
+        return contact;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("contacts cannot be removed while iterating the feed");
+    }
+
+    private void fetchNextPage() {
+        ContactFeedPage decoded;
+        try {
+            final Query query = firstPage;
+            final URL url = nextPage;
+            firstPage = null;
+            decoded = session.execute(new ServiceCall<ContactFeedPage>() {
+                @Override
+                public ContactFeedPage call(ContactsService service) throws IOException, ServiceException {
+                    GDataRequest request = query != null ? service.createFeedRequest(query)
+                            : service.createFeedRequest(url);
+                    try {
+                        request.execute();
+                        return ContactFeedDecoder.decodeFeed(request.getResponseStream(), fields);
+                    } catch (XMLStreamException e) {
+                        throw new ParseException(e);
+                    } finally {
+                        request.end();
+                    }
+                }
+            });
+            nextPage = decoded.getNextLink() == null ? null : new URL(decoded.getNextLink());
+        } catch (MalformedURLException e) {
+            // should never be thrown since the next link is provided by google
+            throw new DomainMethodExecutionException("invalid URL", e);
+        } catch (IOException e) {
+            throw new DomainMethodExecutionException("unable to connect to the google server", e);
+        } catch (ServiceException e) {
+            throw new DomainMethodExecutionException("unable to retrieve contacts", e);
+        }
+        page = decoded.getContacts();
+        position = 0;
+    }
+}
@@ -0,0 +1,412 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openengsb.domain.contact.Contact;
+import org.openengsb.domain.contact.InformationTypeWithValue;
+import org.openengsb.domain.contact.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * finds duplicate contacts without comparing every pair. Every contact is put into one block per normalized mail
+ * address, phone number and name, and only contacts sharing a block are scored against each other. A shared mail
+ * address counts {@value #MAIL_WEIGHT}, a shared phone number {@value #PHONE_WEIGHT}, a shared postal address
+ * {@value #ADDRESS_WEIGHT} and similar names up to {@value #NAME_WEIGHT}, depending on the share of common name
+ * tokens; pairs reaching the threshold are duplicates. With the default threshold a shared mail address is enough,
+ * while the same name alone never is: it takes a shared phone number or postal address as well. Duplicates of
+ * duplicates end up in the same group.
+ * <p>
+ * The number of comparisons grows linearly with the number of contacts as long as the blocks stay small. Within a
+ * block every pair is compared, but pairs already known to be in the same group are skipped, so a contact imported
+ * many times costs one comparison per copy. Blocks whose members are not duplicates of each other, like colleagues
+ * sharing an office number, are compared pair by pair and logged if they are large.
+ */
+public class DuplicateDetector {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DuplicateDetector.class);
+
+    public static final double DEFAULT_THRESHOLD = 0.7;
+    /** blocks with more contacts are logged, since comparing them grows with the square of their size */
+    static final int LARGE_BLOCK_SIZE = 1000;
+
+    static final double MAIL_WEIGHT = 0.7;
+    static final double PHONE_WEIGHT = 0.4;
+    static final double ADDRESS_WEIGHT = 0.25;
+    static final double NAME_WEIGHT = 0.5;
+    /** names sharing fewer of their tokens do not count at all */
+    static final double MIN_NAME_SIMILARITY = 0.5;
+
+    /** numbers are compared by their last digits, so national and international spellings match */
+    private static final int PHONE_DIGITS = 8;
+    private static final int MIN_PHONE_DIGITS = 6;
+
+    private final double threshold;
+
+    public DuplicateDetector() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public DuplicateDetector(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * reads all contacts once and returns the groups of duplicates, ordered by the position of their first member
+     */
+    public List<DuplicateGroup> findDuplicates(Iterator<Contact> contacts) {
+        List<Contact> all = new ArrayList<Contact>();
+        List<Keys> keys = new ArrayList<Keys>();
+        Map<String, List<Integer>> blocks = new HashMap<String, List<Integer>>();
+        while (contacts.hasNext()) {
+            Contact contact = contacts.next();
+            Keys contactKeys = new Keys(contact);
+            int position = all.size();
+            all.add(contact);
+            keys.add(contactKeys);
+            for (String mail : contactKeys.mails) {
+                addToBlock(blocks, "m:" + mail, position);
+            }
+            for (String phone : contactKeys.phones) {
+                addToBlock(blocks, "p:" + phone, position);
+            }
+            if (contactKeys.name != null) {
+                addToBlock(blocks, "n:" + contactKeys.name, position);
+            }
+        }
+
+        int[] parents = new int[all.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+        long comparisons = 0;
+        int largeBlocks = 0;
+        for (Map.Entry<String, List<Integer>> block : blocks.entrySet()) {
+            List<Integer> members = block.getValue();
+            if (members.size() < 2) {
+                continue;
+            }
+            if (members.size() > LARGE_BLOCK_SIZE) {
+                largeBlocks++;
+                LOGGER.info("comparing the {} contacts sharing {}", members.size(), block.getKey());
+            }
+            for (int i = 0; i < members.size(); i++) {
+                for (int j = i + 1; j < members.size(); j++) {
+                    int a = members.get(i);
+                    int b = members.get(j);
+                    if (find(parents, a) == find(parents, b)) {
+                        continue;
+                    }
+                    comparisons++;
+                    if (score(keys.get(a), keys.get(b)) >= threshold) {
+                        union(parents, a, b);
+                    }
+                }
+            }
+        }
+
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<Integer, List<Integer>>();
+        for (int i = 0; i < parents.length; i++) {
+            int root = find(parents, i);
+            List<Integer> members = groups.get(root);
+            if (members == null) {
+                members = new ArrayList<Integer>(1);
+                groups.put(root, members);
+            }
+            members.add(i);
+        }
+        List<DuplicateGroup> result = new ArrayList<DuplicateGroup>();
+        for (List<Integer> members : groups.values()) {
+            if (members.size() > 1) {
+                List<Contact> group = new ArrayList<Contact>(members.size());
+                for (int member : members) {
+                    group.add(all.get(member));
+                }
+                result.add(merge(group));
+            }
+        }
+        LOGGER.info("found {} duplicate groups among {} contacts with {} comparisons, {} large blocks",
+            new Object[]{ result.size(), all.size(), comparisons, largeBlocks });
+        return result;
+    }
+
+    private static void addToBlock(Map<String, List<Integer>> blocks, String key, int position) {
+        List<Integer> block = blocks.get(key);
+        if (block == null) {
+            block = new ArrayList<Integer>(2);
+            blocks.put(key, block);
+        }
+        block.add(position);
+    }
+
+    static double score(Keys a, Keys b) {
+        double score = 0;
+        if (intersects(a.mails, b.mails)) {
+            score += MAIL_WEIGHT;
+        }
+        if (intersects(a.phones, b.phones)) {
+            score += PHONE_WEIGHT;
+        }
+        if (intersects(a.addresses, b.addresses)) {
+            score += ADDRESS_WEIGHT;
+        }
+        if (!a.nameTokens.isEmpty() && !b.nameTokens.isEmpty()) {
+            int shared = 0;
+            for (String token : a.nameTokens) {
+                if (b.nameTokens.contains(token)) {
+                    shared++;
+                }
+            }
+            double similarity = (double) shared / (a.nameTokens.size() + b.nameTokens.size() - shared);
+            // family members share a surname, phone and address, but not enough of their names
+            if (similarity >= MIN_NAME_SIMILARITY) {
+                score += NAME_WEIGHT * similarity;
+            }
+        }
+        return Math.min(score, 1.0);
+    }
+
+    private static boolean intersects(Set<String> a, Set<String> b) {
+        for (String value : a) {
+            if (b.contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int find(int[] parents, int i) {
+        int root = i;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        while (parents[i] != root) {
+            int next = parents[i];
+            parents[i] = root;
+            i = next;
+        }
+        return root;
+    }
+
+    /**
+     * links the larger root under the smaller one, so the root of a group is always its first member
+     */
+    private static void union(int[] parents, int a, int b) {
+        int rootA = find(parents, a);
+        int rootB = find(parents, b);
+        parents[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+    }
+
+    /**
+     * keeps the contact with the most values and adds the values of the others it does not have yet
+     */
+    static DuplicateGroup merge(List<Contact> group) {
+        Contact survivor = group.get(0);
+        for (Contact contact : group) {
+            if (countValues(contact) > countValues(survivor)) {
+                survivor = contact;
+            }
+        }
+        Contact merged = ContactIndex.copy(survivor);
+        List<String> duplicateIds = new ArrayList<String>(group.size() - 1);
+        StringBuilder comment = new StringBuilder();
+        appendComment(comment, survivor.getComment());
+        for (Contact contact : group) {
+            if (contact == survivor) {
+                continue;
+            }
+            duplicateIds.add(contact.getId());
+            if (merged.getName() == null) {
+                merged.setName(contact.getName());
+            }
+            appendComment(comment, contact.getComment());
+            merged.setMails(mergeStrings(merged.getMails(), contact.getMails(), true));
+            merged.setTelephones(mergeStrings(merged.getTelephones(), contact.getTelephones(), false));
+            merged.setHomepages(mergeStrings(merged.getHomepages(), contact.getHomepages(), true));
+            merged.setDates(mergeDates(merged.getDates(), contact.getDates()));
+            merged.setLocations(mergeLocations(merged.getLocations(), contact.getLocations()));
+        }
+        merged.setComment(comment.length() == 0 ? null : comment.toString());
+        return new DuplicateGroup(merged, duplicateIds);
+    }
+
+    private static int countValues(Contact contact) {
+        return (contact.getName() == null ? 0 : 1) + (contact.getComment() == null ? 0 : 1)
+                + size(contact.getMails()) + size(contact.getTelephones()) + size(contact.getHomepages())
+                + size(contact.getDates()) + size(contact.getLocations());
+    }
+
+    private static int size(List<?> list) {
+        return list == null ? 0 : list.size();
+    }
+
+    private static void appendComment(StringBuilder comment, String value) {
+        if (value == null || value.trim().length() == 0 || comment.indexOf(value) >= 0) {
+            return;
+        }
+        if (comment.length() > 0) {
+            comment.append('\n');
+        }
+        comment.append(value);
+    }
+
+    private static ArrayList<InformationTypeWithValue<String>> mergeStrings(
+            List<InformationTypeWithValue<String>> target, List<InformationTypeWithValue<String>> source,
+            boolean caseInsensitive) {
+        ArrayList<InformationTypeWithValue<String>> merged = target == null
+            ? new ArrayList<InformationTypeWithValue<String>>()
+            : new ArrayList<InformationTypeWithValue<String>>(target);
+        if (source == null) {
+            return merged.isEmpty() ? null : merged;
+        }
+        Set<String> present = new HashSet<String>();
+        for (InformationTypeWithValue<String> value : merged) {
+            present.add(stringKey(value.getValue(), caseInsensitive));
+        }
+        for (InformationTypeWithValue<String> value : source) {
+            if (value.getValue() != null && present.add(stringKey(value.getValue(), caseInsensitive))) {
+                merged.add(new InformationTypeWithValue<String>(value.getKey(), value.getValue()));
+            }
+        }
+        return merged.isEmpty() ? null : merged;
+    }
+
+    private static String stringKey(String value, boolean caseInsensitive) {
+        return caseInsensitive ? ContactIndex.normalize(value) : ContactIndex.normalizePhone(value);
+    }
+
+    private static ArrayList<InformationTypeWithValue<Date>> mergeDates(List<InformationTypeWithValue<Date>> target,
+            List<InformationTypeWithValue<Date>> source) {
+        ArrayList<InformationTypeWithValue<Date>> merged = target == null
+            ? new ArrayList<InformationTypeWithValue<Date>>() : new ArrayList<InformationTypeWithValue<Date>>(target);
+        if (source == null) {
+            return merged.isEmpty() ? null : merged;
+        }
+        Set<String> present = new HashSet<String>();
+        for (InformationTypeWithValue<Date> date : merged) {
+            present.add(dateKey(date));
+        }
+        for (InformationTypeWithValue<Date> date : source) {
+            if (date.getValue() != null && present.add(dateKey(date))) {
+                merged.add(new InformationTypeWithValue<Date>(date.getKey(), new Date(date.getValue().getTime())));
+            }
+        }
+        return merged.isEmpty() ? null : merged;
+    }
+
+    private static String dateKey(InformationTypeWithValue<Date> date) {
+        return ContactIndex.normalize(date.getKey()) + "|" + (date.getValue() == null ? 0 : date.getValue().getTime());
+    }
+
+    private static ArrayList<InformationTypeWithValue<Location>> mergeLocations(
+            List<InformationTypeWithValue<Location>> target, List<InformationTypeWithValue<Location>> source) {
+        ArrayList<InformationTypeWithValue<Location>> merged = target == null
+            ? new ArrayList<InformationTypeWithValue<Location>>()
+            : new ArrayList<InformationTypeWithValue<Location>>(target);
+        if (source == null) {
+            return merged.isEmpty() ? null : merged;
+        }
+        Set<String> present = new HashSet<String>();
+        for (InformationTypeWithValue<Location> location : merged) {
+            present.add(locationKey(location.getValue()));
+        }
+        for (InformationTypeWithValue<Location> location : source) {
+            if (location.getValue() != null && present.add(locationKey(location.getValue()))) {
+                Location value = new Location();
+                value.setCountry(location.getValue().getCountry());
+                value.setState(location.getValue().getState());
+                value.setCity(location.getValue().getCity());
+                value.setZip(location.getValue().getZip());
+                value.setAddress(location.getValue().getAddress());
+                merged.add(new InformationTypeWithValue<Location>(location.getKey(), value));
+            }
+        }
+        return merged.isEmpty() ? null : merged;
+    }
+
+    private static String locationKey(Location location) {
+        if (location == null) {
+            return "";
+        }
+        return ContactIndex.normalize(location.getAddress()) + "|" + ContactIndex.normalize(location.getZip()) + "|"
+                + ContactIndex.normalize(location.getCity());
+    }
+
+    /**
+     * the normalized blocking and scoring keys of one contact
+     */
+    static final class Keys {
+        private final Set<String> mails = new HashSet<String>();
+        private final Set<String> phones = new HashSet<String>();
+        private final Set<String> addresses = new HashSet<String>();
+        private final Set<String> nameTokens;
+        private final String name;
+
+        Keys(Contact contact) {
+            if (contact.getMails() != null) {
+                for (InformationTypeWithValue<String> mail : contact.getMails()) {
+                    String normalized = ContactIndex.normalizeMail(mail.getValue());
+                    if (normalized != null && normalized.length() > 0) {
+                        mails.add(normalized);
+                    }
+                }
+            }
+            if (contact.getTelephones() != null) {
+                for (InformationTypeWithValue<String> phone : contact.getTelephones()) {
+                    String digits = ContactIndex.normalizePhone(phone.getValue());
+                    if (digits != null && digits.length() >= MIN_PHONE_DIGITS) {
+                        phones.add(digits.substring(Math.max(0, digits.length() - PHONE_DIGITS)));
+                    }
+                }
+            }
+            if (contact.getLocations() != null) {
+                for (InformationTypeWithValue<Location> location : contact.getLocations()) {
+                    if (location.getValue() != null && location.getValue().getAddress() != null) {
+                        addresses.add(locationKey(location.getValue()));
+                    }
+                }
+            }
+            List<String> tokens = contact.getName() == null
+                ? Collections.<String>emptyList() : ContactIndex.tokenize(contact.getName());
+            nameTokens = new HashSet<String>(tokens);
+            if (tokens.isEmpty()) {
+                name = null;
+            } else {
+                // sorted, so "Huber, Anna" and "Anna Huber" share a block
+                List<String> sorted = new ArrayList<String>(nameTokens);
+                Collections.sort(sorted);
+                StringBuilder joined = new StringBuilder();
+                for (String token : sorted) {
+                    joined.append(token).append(' ');
+                }
+                name = joined.toString().trim();
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.openengsb.domain.contact.Contact;
+
+/**
+ * contacts found to be duplicates of each other. The merged contact carries the id of the survivor and the values of
+ * all members; writing it with {@link GcontactsServiceImpl#updateContacts(List)} and deleting the duplicates with
+ * {@link GcontactsServiceImpl#deleteContacts(List)} merges the group.
+ */
+public final class DuplicateGroup {
+
+    private final Contact merged;
+    private final List<String> duplicateIds;
+
+    public DuplicateGroup(Contact merged, List<String> duplicateIds) {
+        this.merged = merged;
+        this.duplicateIds = Collections.unmodifiableList(duplicateIds);
+    }
+
+    public String getSurvivorId() {
+        return merged.getId();
+    }
+
+    public Contact getMerged() {
+        return merged;
+    }
+
+    /**
+     * ids of the contacts that are folded into the survivor
+     */
+    public List<String> getDuplicateIds() {
+        return duplicateIds;
+    }
+
+    @Override
+    public String toString() {
+        return "DuplicateGroup [survivor=" + getSurvivorId() + ", duplicates=" + duplicateIds + "]";
+    }
+}
@@ -0,0 +1,392 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openengsb.connector.gcontacts.internal.misc.DaemonThreadFactory;
+import org.openengsb.core.api.DomainMethodExecutionException;
+import org.openengsb.core.api.ekb.EKBCommit;
+import org.openengsb.domain.contact.Contact;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * write-behind queue for the EKB commits of one connector instance. Inserts, updates and deletes are collected for a
+ * short window or up to a maximum number of operations, repeated operations on the same contact are merged and the
+ * result is sent as one {@link EKBCommit} by a background thread. If the window is 0 every operation is committed
+ * right away in the calling thread.
+ * <p>
+ * A commit the EKB rejects is retried a few times. If it still fails, it is kept together with all later commits, so
+ * the EKB sees them in order, and they are retried with every following commit. The failure is reported to the next
+ * caller flushing or shutting down the pipeline and every failed attempt is counted in the EKB commit metrics.
+ * Contacts are copied when they are submitted, later changes of the caller do not affect the commit.
+ * <p>
+ * Commits from the background thread do not see the thread bound state of the calling thread, like the OpenEngSB
+ * context or the authenticated user, so the window is 0 by default.
+ */
+public class EKBCommitPipeline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EKBCommitPipeline.class);
+
+    public static final long DEFAULT_WINDOW = 0;
+    public static final int DEFAULT_MAX_OPERATIONS = 500;
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    /** attempts of one commit before it is kept for later */
+    static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF = 100;
+
+    private enum Type {
+        INSERT, UPDATE, DELETE, FLUSH, STOP
+    }
+
+    private static final class Operation {
+        private final Type type;
+        private final Contact contact;
+        private final CountDownLatch done;
+
+        private Operation(Type type, Contact contact, CountDownLatch done) {
+            this.type = type;
+            this.contact = contact;
+            this.done = done;
+        }
+    }
+
+    private final GcontactsServiceImpl service;
+    private final long window;
+    private final int maxOperations;
+    private final BlockingQueue<Operation> queue;
+
+    private final long retryBackoff;
+
+    private Thread worker;
+    private boolean stopped;
+    /** commits the EKB rejected, in the order they have to be delivered */
+    private final List<EKBCommit> undelivered = new ArrayList<EKBCommit>();
+    /** the last failure not reported to a caller yet */
+    private RuntimeException failure;
+
+    /**
+     * @param window milliseconds operations are collected before they are committed, 0 to commit synchronously
+     * @param maxOperations maximum number of operations in one commit
+     * @param queueCapacity maximum number of operations waiting; when it is reached callers wait
+     */
+    public EKBCommitPipeline(GcontactsServiceImpl service, long window, int maxOperations, int queueCapacity) {
+        this(service, window, maxOperations, queueCapacity, RETRY_BACKOFF);
+    }
+
+    EKBCommitPipeline(GcontactsServiceImpl service, long window, int maxOperations, int queueCapacity,
+            long retryBackoff) {
+        this.service = service;
+        this.window = window;
+        this.maxOperations = maxOperations;
+        this.retryBackoff = retryBackoff;
+        queue = new ArrayBlockingQueue<Operation>(queueCapacity);
+    }
+
+    public void insert(Contact contact) {
+        submit(new Operation(Type.INSERT, ContactIndex.copy(contact), null));
+    }
+
+    public void update(Contact contact) {
+        submit(new Operation(Type.UPDATE, ContactIndex.copy(contact), null));
+    }
+
+    public void delete(String id) {
+        Contact contact = new Contact();
+        contact.setId(id);
+        submit(new Operation(Type.DELETE, contact, null));
+    }
+
+    /**
+     * blocks until all operations submitted before are committed. Fails if some of them could not be committed; they
+     * stay queued and are retried with the next commit.
+     */
+    public void flush() {
+        if (window <= 0 || !isRunning()) {
+            return;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        enqueue(new Operation(Type.FLUSH, null, done));
+        await(done);
+        checkDelivered();
+    }
+
+    /**
+     * commits all pending operations and stops the background thread. Fails if some of them could not be committed,
+     * they are lost then.
+     */
+    public void shutdown() {
+        Thread running;
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            running = worker;
+        }
+        if (running == null) {
+            return;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        enqueue(new Operation(Type.STOP, null, done));
+        await(done);
+        checkDelivered();
+    }
+
+    /**
+     * number of operations waiting to be committed
+     */
+    public int getPendingOperations() {
+        return queue.size();
+    }
+
+    /**
+     * number of commits the EKB rejected that are waiting to be retried
+     */
+    public synchronized int getUndeliveredCommits() {
+        return undelivered.size();
+    }
+
+    private void submit(Operation operation) {
+        if (window <= 0) {
+            EKBCommit commit = service.createEKBCommit();
+            add(commit, operation.type, operation.contact);
+            service.commitToEKB(commit);
+            return;
+        }
+        startWorker();
+        enqueue(operation);
+    }
+
+    private void checkDelivered() {
+        RuntimeException reported;
+        int pending;
+        synchronized (this) {
+            reported = failure;
+            failure = null;
+            pending = undelivered.size();
+        }
+        if (pending > 0) {
+            throw new DomainMethodExecutionException("unable to commit contact operations to the EKB, " + pending
+                    + " commits are not delivered", reported);
+        }
+    }
+
+    private synchronized boolean isRunning() {
+        return worker != null && !stopped;
+    }
+
+    private synchronized void startWorker() {
+        if (stopped) {
+            throw new DomainMethodExecutionException("commit pipeline of " + service.getInstanceId() + " is stopped");
+        }
+        if (worker == null) {
+            worker = new DaemonThreadFactory("gcontacts-ekb-" + service.getInstanceId()).newThread(new Runnable() {
+                @Override
+                public void run() {
+                    process();
+                }
+            });
+            worker.start();
+        }
+    }
+
+    private void enqueue(Operation operation) {
+        try {
+            queue.put(operation);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DomainMethodExecutionException("interrupted while waiting for the EKB commit queue", e);
+        }
+    }
+
+    private static void await(CountDownLatch done) {
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DomainMethodExecutionException("interrupted while waiting for the EKB commit", e);
+        }
+    }
+
+    private void process() {
+        boolean running = true;
+        while (running) {
+            List<Operation> batch = new ArrayList<Operation>();
+            try {
+                batch.add(queue.take());
+                long deadline = System.currentTimeMillis() + window;
+                while (batch.size() < maxOperations && !isControl(batch.get(batch.size() - 1))) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    Operation next = remaining > 0 ? queue.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // callers wait for the worker until it is stopped, so it keeps running
+                LOGGER.warn("EKB commit pipeline of {} interrupted, ignoring it", service.getInstanceId());
+            }
+            commit(batch);
+            for (Operation operation : batch) {
+                if (operation.done != null) {
+                    operation.done.countDown();
+                }
+                if (operation.type == Type.STOP) {
+                    running = false;
+                }
+            }
+        }
+        // operations that raced with the shutdown are still delivered
+        List<Operation> rest = new ArrayList<Operation>();
+        queue.drainTo(rest);
+        commit(rest);
+        for (Operation operation : rest) {
+            if (operation.done != null) {
+                operation.done.countDown();
+            }
+        }
+    }
+
+    private static boolean isControl(Operation operation) {
+        return operation.type == Type.FLUSH || operation.type == Type.STOP;
+    }
+
+    /**
+     * merges the operations per contact id and sends them as one commit, after the earlier commits the EKB rejected
+     */
+    private void commit(List<Operation> batch) {
+        Map<Object, Operation> merged = new LinkedHashMap<Object, Operation>();
+        for (Operation operation : batch) {
+            if (isControl(operation)) {
+                continue;
+            }
+            Object key = operation.contact.getId() != null ? operation.contact.getId() : operation;
+            Operation previous = merged.remove(key);
+            Operation result = merge(previous, operation);
+            if (result != null) {
+                merged.put(key, result);
+            }
+        }
+        if (!merged.isEmpty()) {
+            EKBCommit commit = service.createEKBCommit();
+            for (Operation operation : merged.values()) {
+                add(commit, operation.type, operation.contact);
+            }
+            synchronized (this) {
+                undelivered.add(commit);
+            }
+        }
+        deliver();
+    }
+
+    /**
+     * sends the waiting commits in order and stops at the first one that still fails after {@link #MAX_ATTEMPTS}
+     */
+    private void deliver() {
+        while (true) {
+            EKBCommit commit;
+            synchronized (this) {
+                if (undelivered.isEmpty()) {
+                    return;
+                }
+                commit = undelivered.get(0);
+            }
+            RuntimeException error = attempt(commit);
+            synchronized (this) {
+                if (error != null) {
+                    failure = error;
+                    LOGGER.error("unable to commit contact operations to the EKB, " + undelivered.size()
+                            + " commits are waiting to be retried", error);
+                    return;
+                }
+                undelivered.remove(0);
+            }
+        }
+    }
+
+    private RuntimeException attempt(EKBCommit commit) {
+        RuntimeException error = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                try {
+                    Thread.sleep(retryBackoff << (attempt - 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return error;
+                }
+            }
+            try {
+                service.commitToEKB(commit);
+                return null;
+            } catch (RuntimeException e) {
+                LOGGER.debug("attempt " + (attempt + 1) + " to commit to the EKB failed", e);
+                error = e;
+            }
+        }
+        return error;
+    }
+
+    /**
+     * combines two operations on the same contact into the one having the same effect, null if nothing is left
+     */
+    private static Operation merge(Operation previous, Operation next) {
+        if (previous == null) {
+            return next;
+        }
+        switch (next.type) {
+            case UPDATE:
+                // an update of a contact inserted in the same commit is still an insert
+                Type type = previous.type == Type.INSERT ? Type.INSERT : Type.UPDATE;
+                return new Operation(type, next.contact, null);
+            case DELETE:
+                // a contact inserted and deleted in the same commit never has to reach the EKB
+                return previous.type == Type.INSERT ? null : next;
+            case INSERT:
+                // the EKB already knows the contact if it was updated or deleted before
+                return previous.type == Type.INSERT ? next : new Operation(Type.UPDATE, next.contact, null);
+            default:
+                return next;
+        }
+    }
+
+    private static void add(EKBCommit commit, Type type, Contact contact) {
+        switch (type) {
+            case INSERT:
+                commit.addInsert(contact);
+                break;
+            case UPDATE:
+                commit.addUpdate(contact);
+                break;
+            case DELETE:
+                commit.addDelete(contact);
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openengsb.connector.gcontacts.internal.misc.DaemonThreadFactory;
+import org.openengsb.core.api.DomainMethodExecutionException;
+import org.openengsb.core.api.context.ContextHolder;
+import org.openengsb.domain.contact.Contact;
+import org.openengsb.domain.contact.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * non blocking variant of the contact domain methods of one connector instance. The calls are executed by worker
+ * threads, and at most maxConcurrent calls of the google account run at the same time, counting the calls of all
+ * connector instances using that account. Calls that cannot be started right away wait; if queueCapacity calls of
+ * the account are already waiting, the caller waits at most the configured submit timeout and then gets a
+ * {@link DomainMethodExecutionException}. The limits of an account are those of the first instance using it.
+ * <p>
+ * Every call runs in the OpenEngSB context of its caller, so its EKB commits go to the same context.
+ */
+public class GcontactsAsyncService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GcontactsAsyncService.class);
+
+    public static final int DEFAULT_MAX_CONCURRENT = 4;
+    public static final int DEFAULT_QUEUE_CAPACITY = 100;
+
+    private final GcontactsServiceImpl service;
+    private final ThreadPoolExecutor executor;
+    private final int maxConcurrent;
+    private final int queueCapacity;
+    private final long submitTimeout;
+
+    /**
+     * @param maxConcurrent maximum number of calls of the google account running at the same time
+     * @param queueCapacity maximum number of calls of the google account waiting to run
+     * @param submitTimeout milliseconds a caller waits for a free queue slot, 0 to fail immediately
+     */
+    public GcontactsAsyncService(GcontactsServiceImpl service, int maxConcurrent, int queueCapacity,
+            long submitTimeout) {
+        this.service = service;
+        this.maxConcurrent = maxConcurrent;
+        this.queueCapacity = queueCapacity;
+        this.submitTimeout = submitTimeout;
+        // the queue is bounded by the accepted calls of the account
+        executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("gcontacts-" + service.getInstanceId()));
+    }
+
+    public Future<String> createContact(final Contact contact, AsyncCallback<String> callback) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return service.createContact(contact);
+            }
+        }, callback);
+    }
+
+    public Future<Void> updateContact(final Contact contact, AsyncCallback<Void> callback) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                service.updateContact(contact);
+                return null;
+            }
+        }, callback);
+    }
+
+    public Future<Void> deleteContact(final String id, AsyncCallback<Void> callback) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                service.deleteContact(id);
+                return null;
+            }
+        }, callback);
+    }
+
+    public Future<Contact> loadContact(final String id, AsyncCallback<Contact> callback) {
+        return submit(new Callable<Contact>() {
+            @Override
+            public Contact call() throws Exception {
+                return service.loadContact(id);
+            }
+        }, callback);
+    }
+
+    public Future<ArrayList<Contact>> retrieveContacts(final String id, final String name, final String homepage,
+            final Location location, final Date date, final String comment,
+            AsyncCallback<ArrayList<Contact>> callback) {
+        return submit(new Callable<ArrayList<Contact>>() {
+            @Override
+            public ArrayList<Contact> call() throws Exception {
+                return service.retrieveContacts(id, name, homepage, location, date, comment);
+            }
+        }, callback);
+    }
+
+    /**
+     * number of calls of this connector instance currently running or waiting
+     */
+    public int getPendingCalls() {
+        return executor.getActiveCount() + executor.getQueue().size();
+    }
+
+    /**
+     * stops accepting calls and waits a short time for the running ones to finish
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.warn("asynchronous gcontacts calls still running after shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> Future<T> submit(final Callable<T> call, final AsyncCallback<T> callback) {
+        final AccountLimits limits = AccountLimits.forAccount(service.getGoogleUser(), maxConcurrent, queueCapacity);
+        final String contextId = ContextHolder.get().getCurrentContextId();
+        acquire(limits.getAccepted());
+        FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                // the worker threads are shared by all callers, so the context is set for every call
+                String previous = ContextHolder.get().getCurrentContextId();
+                ContextHolder.get().setCurrentContextId(contextId);
+                try {
+                    limits.getRunning().acquire();
+                    try {
+                        return call.call();
+                    } finally {
+                        limits.getRunning().release();
+                    }
+                } finally {
+                    ContextHolder.get().setCurrentContextId(previous);
+                }
+            }
+        }) {
+            @Override
+            protected void done() {
+                limits.getAccepted().release();
+                if (callback == null || isCancelled()) {
+                    return;
+                }
+                T result;
+                try {
+                    result = get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    callback.onFailure(e.getCause());
+                    return;
+                }
+                callback.onSuccess(result);
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            limits.getAccepted().release();
+            throw new DomainMethodExecutionException("unable to queue the request, connector is shut down", e);
+        }
+        return task;
+    }
+
+    private void acquire(Semaphore accepted) {
+        try {
+            if (!accepted.tryAcquire(submitTimeout, TimeUnit.MILLISECONDS)) {
+                throw new DomainMethodExecutionException("too many pending requests for google account "
+                        + service.getGoogleUser());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DomainMethodExecutionException("interrupted while waiting for a free request slot", e);
+        }
+    }
+}
@@ -17,6 +17,66 @@ public class GcontactsConnectorProvider extends AbstractConnectorProvider {
                 .build());
         builder.attribute(builder.newAttribute().id("google.password").name("google.password.name")
             .description("google.password.description").asPassword().build());
+        builder.attribute(builder.newAttribute().id("connect.timeout").name("connect.timeout.name")
+            .description("connect.timeout.description").defaultValue("10000").build());
+        builder.attribute(builder.newAttribute().id("read.timeout").name("read.timeout.name")
+            .description("read.timeout.description").defaultValue("30000").build());
+        builder.attribute(builder.newAttribute().id("gzip").name("gzip.name")
+            .description("gzip.description").asBoolean().defaultValue("true").build());
+        builder.attribute(builder.newAttribute().id("health.interval").name("health.interval.name")
+            .description("health.interval.description").defaultValue("60").build());
+        builder.attribute(builder.newAttribute().id("breaker.failures").name("breaker.failures.name")
+            .description("breaker.failures.description").defaultValue("5").build());
+        builder.attribute(builder.newAttribute().id("breaker.open").name("breaker.open.name")
+            .description("breaker.open.description").defaultValue("30").build());
+        builder.attribute(builder.newAttribute().id("breaker.trials").name("breaker.trials.name")
+            .description("breaker.trials.description").defaultValue("1").build());
+        builder.attribute(builder.newAttribute().id("batch.size").name("batch.size.name")
+            .description("batch.size.description").defaultValue("100").build());
+        builder.attribute(builder.newAttribute().id("page.size").name("page.size.name")
+            .description("page.size.description").defaultValue("250").build());
+        builder.attribute(builder.newAttribute().id("storage.directory").name("storage.directory.name")
+            .description("storage.directory.description").build());
+        builder.attribute(builder.newAttribute().id("cache.size").name("cache.size.name")
+            .description("cache.size.description").defaultValue("1000").build());
+        builder.attribute(builder.newAttribute().id("cache.ttl").name("cache.ttl.name")
+            .description("cache.ttl.description").defaultValue("60").build());
+        builder.attribute(builder.newAttribute().id("conditional.writes").name("conditional.writes.name")
+            .description("conditional.writes.description").asBoolean().defaultValue("true").build());
+        builder.attribute(builder.newAttribute().id("partial.updates").name("partial.updates.name")
+            .description("partial.updates.description").asBoolean().defaultValue("false").build());
+        builder.attribute(builder.newAttribute().id("sync.parallelism").name("sync.parallelism.name")
+            .description("sync.parallelism.description").defaultValue("1").build());
+        builder.attribute(builder.newAttribute().id("sync.interval").name("sync.interval.name")
+            .description("sync.interval.description").defaultValue("300").build());
+        builder.attribute(builder.newAttribute().id("streaming.decoder").name("streaming.decoder.name")
+            .description("streaming.decoder.description").asBoolean().defaultValue("false").build());
+        builder.attribute(builder.newAttribute().id("index.enabled").name("index.enabled.name")
+            .description("index.enabled.description").asBoolean().defaultValue("false").build());
+        builder.attribute(builder.newAttribute().id("snapshot.enabled").name("snapshot.enabled.name")
+            .description("snapshot.enabled.description").asBoolean().defaultValue("false").build());
+        builder.attribute(builder.newAttribute().id("async.threads").name("async.threads.name")
+            .description("async.threads.description").defaultValue("4").build());
+        builder.attribute(builder.newAttribute().id("async.queue").name("async.queue.name")
+            .description("async.queue.description").defaultValue("100").build());
+        builder.attribute(builder.newAttribute().id("async.timeout").name("async.timeout.name")
+            .description("async.timeout.description").defaultValue("0").build());
+        builder.attribute(builder.newAttribute().id("rate.limit").name("rate.limit.name")
+            .description("rate.limit.description").defaultValue("10").build());
+        builder.attribute(builder.newAttribute().id("rate.burst").name("rate.burst.name")
+            .description("rate.burst.description").defaultValue("10").build());
+        builder.attribute(builder.newAttribute().id("retry.max").name("retry.max.name")
+            .description("retry.max.description").defaultValue("3").build());
+        builder.attribute(builder.newAttribute().id("retry.backoff").name("retry.backoff.name")
+            .description("retry.backoff.description").defaultValue("500").build());
+        builder.attribute(builder.newAttribute().id("retry.backoff.max").name("retry.backoff.max.name")
+            .description("retry.backoff.max.description").defaultValue("30000").build());
+        builder.attribute(builder.newAttribute().id("commit.window").name("commit.window.name")
+            .description("commit.window.description").defaultValue("0").build());
+        builder.attribute(builder.newAttribute().id("commit.max").name("commit.max.name")
+            .description("commit.max.description").defaultValue("500").build());
+        builder.attribute(builder.newAttribute().id("commit.queue").name("commit.queue.name")
+            .description("commit.queue.description").defaultValue("10000").build());
 
         return builder.build();
     }
@@ -0,0 +1,284 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gdata.util.AuthenticationException;
+import com.google.gdata.util.ServiceException;
+
+/**
+ * latencies, request counts, errors by cause, transferred bytes and contact cache statistics of one connector
+ * instance. Recording only touches atomic counters, so it is cheap enough to be always on. The metrics are published as
+ * MXBean org.openengsb.connector.gcontacts:type=GcontactsConnector,instance=&lt;instance id&gt;.
+ */
+public class GcontactsMetrics implements GcontactsMetricsMXBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GcontactsMetrics.class);
+
+    public enum Operation {
+        CREATE_CONTACT("createContact"),
+        UPDATE_CONTACT("updateContact"),
+        DELETE_CONTACT("deleteContact"),
+        LOAD_CONTACT("loadContact"),
+        RETRIEVE_CONTACTS("retrieveContacts"),
+        CREATE_CONTACTS("createContacts"),
+        UPDATE_CONTACTS("updateContacts"),
+        DELETE_CONTACTS("deleteContacts"),
+        LOAD_CONTACTS("loadContacts"),
+        SYNCHRONIZE("synchronize"),
+        EKB_COMMIT("ekbCommit");
+
+        private final String label;
+
+        private Operation(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    private final AtomicLong[] failures = new AtomicLong[Operation.values().length];
+    private final SingleFlight<?, ?>[] flights = new SingleFlight<?, ?>[Operation.values().length];
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong authenticationErrors = new AtomicLong();
+    private final AtomicLong ioErrors = new AtomicLong();
+    private final AtomicLong serviceErrors = new AtomicLong();
+    private final AtomicLong quotaErrors = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private volatile ContactEntryCache cache;
+
+    private ObjectName registeredName;
+
+    public GcontactsMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+            failures[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * returns the start time to pass to {@link #record}
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void record(Operation operation, long start, boolean succeeded) {
+        latencies[operation.ordinal()].record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        if (!succeeded) {
+            failures[operation.ordinal()].incrementAndGet();
+        }
+    }
+
+    /**
+     * reports the calls coalesced by the given single flight as coalesced calls of the operation
+     */
+    public void track(Operation operation, SingleFlight<?, ?> flight) {
+        flights[operation.ordinal()] = flight;
+    }
+
+    /**
+     * reports the hits, misses and revalidations of the given cache
+     */
+    public void track(ContactEntryCache entryCache) {
+        cache = entryCache;
+    }
+
+    /**
+     * counts one request sent to google
+     */
+    public void recordRequest() {
+        requests.incrementAndGet();
+    }
+
+    /**
+     * counts a failed request by its cause
+     */
+    public void recordError(Throwable error) {
+        if (error instanceof AuthenticationException || error.getCause() instanceof AuthenticationException) {
+            authenticationErrors.incrementAndGet();
+        } else if (error instanceof ServiceException && RetryPolicy.isThrottled((ServiceException) error)) {
+            quotaErrors.incrementAndGet();
+        } else if (error instanceof ServiceException) {
+            serviceErrors.incrementAndGet();
+        } else if (error instanceof IOException) {
+            ioErrors.incrementAndGet();
+        }
+    }
+
+    public void addBytesSent(long bytes) {
+        bytesSent.addAndGet(bytes);
+    }
+
+    public void addBytesReceived(long bytes) {
+        bytesReceived.addAndGet(bytes);
+    }
+
+    public LatencyHistogram getLatency(Operation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    @Override
+    public List<OperationStatistics> getOperations() {
+        List<OperationStatistics> operations = new ArrayList<OperationStatistics>(latencies.length);
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram latency = latencies[operation.ordinal()];
+            SingleFlight<?, ?> flight = flights[operation.ordinal()];
+            long coalesced = flight == null ? 0 : flight.getCoalesced();
+            operations.add(new OperationStatistics(operation.getLabel(), latency.getCount(),
+                failures[operation.ordinal()].get(), coalesced, toMillis(latency.getPercentile(0.5)),
+                toMillis(latency.getPercentile(0.99)), toMillis(latency.getMax())));
+        }
+        return operations;
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+
+    @Override
+    public long getRequests() {
+        return requests.get();
+    }
+
+    @Override
+    public long getAuthenticationErrors() {
+        return authenticationErrors.get();
+    }
+
+    @Override
+    public long getIoErrors() {
+        return ioErrors.get();
+    }
+
+    @Override
+    public long getServiceErrors() {
+        return serviceErrors.get();
+    }
+
+    @Override
+    public long getQuotaErrors() {
+        return quotaErrors.get();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public long getCacheHits() {
+        ContactEntryCache tracked = cache;
+        return tracked == null ? 0 : tracked.getHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        ContactEntryCache tracked = cache;
+        return tracked == null ? 0 : tracked.getMisses();
+    }
+
+    @Override
+    public long getCacheRevalidations() {
+        ContactEntryCache tracked = cache;
+        return tracked == null ? 0 : tracked.getRevalidations();
+    }
+
+    @Override
+    public long getCacheNotModified() {
+        ContactEntryCache tracked = cache;
+        return tracked == null ? 0 : tracked.getNotModified();
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i].reset();
+            failures[i].set(0);
+            if (flights[i] != null) {
+                flights[i].reset();
+            }
+        }
+        requests.set(0);
+        authenticationErrors.set(0);
+        ioErrors.set(0);
+        serviceErrors.set(0);
+        quotaErrors.set(0);
+        bytesSent.set(0);
+        bytesReceived.set(0);
+        ContactEntryCache tracked = cache;
+        if (tracked != null) {
+            tracked.resetStatistics();
+        }
+    }
+
+    /**
+     * publishes the metrics in the platform MBean server under the given instance id, replacing a previous
+     * registration of the same id
+     */
+    public synchronized void register(String instanceId) {
+        unregister();
+        try {
+            ObjectName name = new ObjectName("org.openengsb.connector.gcontacts:type=GcontactsConnector,instance="
+                    + ObjectName.quote(instanceId));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            registeredName = name;
+        } catch (JMException e) {
+            LOGGER.warn("unable to register the metrics of connector " + instanceId, e);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException e) {
+            LOGGER.debug("unable to unregister " + registeredName, e);
+        }
+        registeredName = null;
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.util.List;
+
+/**
+ * management interface of the metrics of one connector instance
+ */
+public interface GcontactsMetricsMXBean {
+
+    /**
+     * statistics of every domain method and of the EKB commits, latencies in milliseconds
+     */
+    List<OperationStatistics> getOperations();
+
+    /**
+     * number of requests sent to google, including retries
+     */
+    long getRequests();
+
+    long getAuthenticationErrors();
+
+    long getIoErrors();
+
+    long getServiceErrors();
+
+    long getQuotaErrors();
+
+    long getBytesSent();
+
+    long getBytesReceived();
+
+    /**
+     * number of contact entries served from the cache without asking google
+     */
+    long getCacheHits();
+
+    /**
+     * number of contact entries that were not cached and had to be read from google
+     */
+    long getCacheMisses();
+
+    /**
+     * number of cached entries revalidated with their ETag
+     */
+    long getCacheRevalidations();
+
+    /**
+     * number of revalidations google answered with 304 not modified
+     */
+    long getCacheNotModified();
+
+    void reset();
+}
@@ -17,13 +17,33 @@
 
 package org.openengsb.connector.gcontacts.internal;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import org.openengsb.connector.gcontacts.internal.GcontactsMetrics.Operation;
 import org.openengsb.connector.gcontacts.internal.misc.ContactConverter;
+import org.openengsb.connector.gcontacts.internal.misc.ContactDiff;
+import org.openengsb.connector.gcontacts.internal.misc.ContactField;
+import org.openengsb.connector.gcontacts.internal.misc.ContactProjection;
+import org.openengsb.connector.gcontacts.internal.misc.DaemonThreadFactory;
 import org.openengsb.core.api.AliveState;
 import org.openengsb.core.api.DomainMethodExecutionException;
 import org.openengsb.core.api.ekb.EKBCommit;
@@ -35,42 +55,113 @@ import org.openengsb.domain.contact.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gdata.client.Query;
 import com.google.gdata.client.contacts.ContactQuery;
 import com.google.gdata.client.contacts.ContactsService;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.batch.BatchOperationType;
+import com.google.gdata.data.batch.BatchStatus;
+import com.google.gdata.data.batch.BatchUtils;
 import com.google.gdata.data.contacts.ContactEntry;
 import com.google.gdata.data.contacts.ContactFeed;
-import com.google.gdata.util.AuthenticationException;
+import com.google.gdata.util.NotModifiedException;
+import com.google.gdata.util.PreconditionFailedException;
 import com.google.gdata.util.ServiceException;
 
 public class GcontactsServiceImpl extends AbstractOpenEngSBConnectorService implements ContactDomain {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GcontactsServiceImpl.class);
+    public static final String FEED_URL = "https://www.google.com/m8/feeds/contacts/default/full";
+    /** google accepts at most 100 operations per batch request */
+    public static final int MAX_BATCH_SIZE = 100;
+    public static final int DEFAULT_PAGE_SIZE = 250;
+
     private PersistInterface persistInterface;
-    private AliveState state = AliveState.DISCONNECTED;
-    private String googleUser;
-    private String googlePassword;
+    private int batchSize = MAX_BATCH_SIZE;
+    private boolean conditionalWrites = true;
+    private boolean partialUpdates;
+    private boolean streamingDecoder;
+    private int syncParallelism = 1;
+    private volatile ContactIndex contactIndex;
+    private volatile ContactSnapshotStore snapshotStore;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private File storageDirectory = new File(System.getProperty("karaf.data", System.getProperty("java.io.tmpdir")),
+        "gcontacts");
+
+    private final Object storageLock = new Object();
+    private final Object syncLock = new Object();
+    private SyncWatermarkStore watermarkStore;
+    private ScheduledExecutorService syncScheduler;
 
-    private ContactsService service;
+    private final GcontactsSession session;
+    private final String feedUrl;
+    private final ContactEntryCache entryCache = new ContactEntryCache();
+    private final GcontactsMetrics metrics = new GcontactsMetrics();
+    private final HealthMonitor health;
+    private final SingleFlight<String, ContactEntry> loadFlights = new SingleFlight<String, ContactEntry>();
+    private final SingleFlight<String, List<ContactEntry>> queryFlights =
+        new SingleFlight<String, List<ContactEntry>>();
+
+    private int asyncMaxConcurrent = GcontactsAsyncService.DEFAULT_MAX_CONCURRENT;
+    private int asyncQueueCapacity = GcontactsAsyncService.DEFAULT_QUEUE_CAPACITY;
+    private long asyncSubmitTimeout;
+    private GcontactsAsyncService asyncService;
+    private EKBCommitPipeline commitPipeline = new EKBCommitPipeline(this, EKBCommitPipeline.DEFAULT_WINDOW,
+        EKBCommitPipeline.DEFAULT_MAX_OPERATIONS, EKBCommitPipeline.DEFAULT_QUEUE_CAPACITY);
 
     public GcontactsServiceImpl(String id) {
+        this(id, new GcontactsSession(), FEED_URL);
+    }
+
+    /**
+     * creates a connector talking to the given contacts feed, e.g. a local stand-in server
+     */
+    GcontactsServiceImpl(String id, GcontactsSession session, String feedUrl) {
         super(id);
+        this.session = session;
+        this.feedUrl = feedUrl;
+        session.setMetrics(metrics);
+        metrics.track(Operation.LOAD_CONTACT, loadFlights);
+        metrics.track(Operation.RETRIEVE_CONTACTS, queryFlights);
+        metrics.track(entryCache);
+        health = new HealthMonitor(session, feedUrl);
+        session.setHealthMonitor(health);
     }
 
     @Override
     public String createContact(Contact contact) {
+        long start = metrics.start();
+        boolean succeeded = false;
+        try {
+            String id = doCreateContact(contact);
+            succeeded = true;
+            return id;
+        } finally {
+            metrics.record(Operation.CREATE_CONTACT, start, succeeded);
+        }
+    }
+
+    private String doCreateContact(Contact contact) {
         try {
             login();
 
-            ContactEntry entry = ContactConverter.convertContactToContactEntry(contact);
-            URL postUrl = new URL("https://www.google.com/m8/feeds/contacts/default/full");
-            entry = service.insert(postUrl, entry);
-            LOGGER.info("Successfully created contact {}", entry.getId());
-            contact.setId(entry.getId());
+            final ContactEntry entry = ContactConverter.convertContactToContactEntry(contact);
+            final URL postUrl = new URL(feedUrl);
+            ContactEntry inserted = session.execute(new ServiceCall<ContactEntry>() {
+                @Override
+                public ContactEntry call(ContactsService service) throws IOException, ServiceException {
+                    return service.insert(postUrl, entry);
+                }
+            });
+            LOGGER.info("Successfully created contact {}", inserted.getId());
+            contact.setId(inserted.getId());
+            entryCache.put(inserted.getId(), inserted);
+            snapshotPut(inserted);
             
-            EKBCommit commit = createEKBCommit().addInsert(contact);
-            persistInterface.commit(commit);
+            indexPut(contact);
+            getCommitPipeline().insert(contact);
             
-            return entry.getId();
+            return inserted.getId();
         } catch (MalformedURLException e) {
             // should never be thrown since the URL is static
             throw new DomainMethodExecutionException("invalid URL", e);
@@ -78,22 +169,67 @@ public class GcontactsServiceImpl extends AbstractOpenEngSBConnectorService impl
             throw new DomainMethodExecutionException("unable to connect to the insert URL", e);
         } catch (ServiceException e) {
             throw new DomainMethodExecutionException("unable to insert a new contact", e);
-        } finally {
-            this.state = AliveState.DISCONNECTED;
         }
     }
 
+    /**
+     * updates the contact at google. Only the fields that differ from the current entry are written, and if no field
+     * differs nothing is written and the EKB is not touched. With conditional writes enabled a known entry is merged
+     * and written directly with its ETag, without fetching it first. If google answers 412 because the entry changed
+     * in the meantime, it is fetched again and the update is repeated on the current version. If the contact does not
+     * differ from the known entry, google is asked with its ETag whether that entry is still current. Without
+     * conditional writes the update overwrites whatever version google has.
+     */
     @Override
     public void updateContact(Contact contact) {
+        long start = metrics.start();
+        boolean succeeded = false;
+        try {
+            doUpdateContact(contact);
+            succeeded = true;
+        } finally {
+            metrics.record(Operation.UPDATE_CONTACT, start, succeeded);
+        }
+    }
+
+    private void doUpdateContact(Contact contact) {
         login();
-        ContactEntry entry = getContactEntry(contact.getId());
-        ContactConverter.extendContactEntryWithContact(entry, contact);
+        String id = contact.getId();
         try {
-            URL editUrl = new URL(entry.getEditLink().getHref());
-            service.update(editUrl, entry);
+            ContactEntry known = conditionalWrites ? entryCache.peek(id) : getContactEntry(id);
+            ContactEntry updated = null;
+            if (known != null) {
+                Set<ContactField> changes = ContactDiff.diff(known, contact);
+                if (changes.isEmpty()) {
+                    // the known entry may be outdated, only skip the update if google confirms its ETag
+                    entryCache.countRevalidation();
+                    known = revalidateContactEntry(id, known);
+                    changes = ContactDiff.diff(known, contact);
+                }
+                if (changes.isEmpty()) {
+                    LOGGER.debug("contact {} is unchanged, skipping the update", id);
+                    return;
+                }
+                try {
+                    updated = writeContactEntry(known, contact, changes);
+                } catch (PreconditionFailedException e) {
+                    LOGGER.debug("contact {} changed since it was loaded, fetching it again", id);
+                }
+            }
+            if (updated == null) {
+                ContactEntry current = fetchContactEntry(id);
+                Set<ContactField> changes = ContactDiff.diff(current, contact);
+                if (changes.isEmpty()) {
+                    LOGGER.debug("contact {} is unchanged, skipping the update", id);
+                    return;
+                }
+                updated = writeContactEntry(current, contact, changes);
+            }
+            entryCache.put(id, updated);
+            snapshotPut(updated);
             
-            EKBCommit commit = createEKBCommit().addUpdate(contact);
-            persistInterface.commit(commit);
+            indexPut(contact);
+            getCommitPipeline().update(contact);
         } catch (MalformedURLException e) {
             // should never be thrown since url is provided by google
             throw new DomainMethodExecutionException("invalid URL", e);
@@ -101,32 +237,372 @@ public class GcontactsServiceImpl extends AbstractOpenEngSBConnectorService impl
             throw new DomainMethodExecutionException("unable to connect to the google server", e);
         } catch (ServiceException e) {
             throw new DomainMethodExecutionException("unable to update the contact", e);
-        } finally {
-            this.state = AliveState.DISCONNECTED;
         }
     }
 
+    /**
+     * merges the contact into a copy of the entry and writes it to its edit URL, with conditional writes only if it is
+     * still the version of its ETag. The given entry may be shared through the cache, so it is left untouched; the
+     * cache is only updated with the entry google answers with. With partial updates enabled only the changed fields
+     * are sent as a patch.
+     */
+    private ContactEntry writeContactEntry(ContactEntry known, Contact contact, Set<ContactField> changes)
+        throws IOException, ServiceException {
+        final ContactEntry entry = ContactConverter.extendContactEntryWithContact(ContactEntryXml.copy(known), contact);
+        final URL editUrl = new URL(entry.getEditLink().getHref());
+        // without conditional writes the entry is written whatever its current version is
+        final String etag = conditionalWrites ? entry.getEtag() : "*";
+        final String fields = partialUpdates ? ContactDiff.toFieldsMask(changes) : null;
+        return session.execute(new ServiceCall<ContactEntry>() {
+            @Override
+            public ContactEntry call(ContactsService service) throws IOException, ServiceException {
+                if (fields != null) {
+                    return service.patch(editUrl, fields, entry, etag);
+                }
+                return service.update(editUrl, entry, etag);
+            }
+        });
+    }
+
+    /**
+     * deletes the contact at google. With conditional writes enabled a known entry is deleted directly with its ETag,
+     * without fetching it first. If google answers 412 the entry is fetched again and deleted regardless of its
+     * version.
+     */
     @Override
     public void deleteContact(String id) {
+        long start = metrics.start();
+        boolean succeeded = false;
+        try {
+            doDeleteContact(id);
+            succeeded = true;
+        } finally {
+            metrics.record(Operation.DELETE_CONTACT, start, succeeded);
+        }
+    }
+
+    private void doDeleteContact(String id) {
         login();
-        ContactEntry entry = getContactEntry(id);
         try {
-            entry.delete();
+            ContactEntry known = conditionalWrites ? entryCache.peek(id) : null;
+            boolean deleted = false;
+            if (known != null) {
+                try {
+                    deleteContactEntry(known, known.getEtag());
+                    deleted = true;
+                } catch (PreconditionFailedException e) {
+                    LOGGER.debug("contact {} changed since it was loaded, fetching it again", id);
+                }
+            }
+            if (!deleted) {
+                ContactEntry entry = known != null ? fetchContactEntry(id) : getContactEntry(id);
+                deleteContactEntry(entry, null);
+            }
+            entryCache.remove(id);
             
-            Contact contact = new Contact();
-            contact.setId(id);
-            EKBCommit commit = createEKBCommit().addDelete(contact);
-            persistInterface.commit(commit);
+            snapshotDelete(id);
+            indexRemove(id);
+            getCommitPipeline().delete(id);
+        } catch (MalformedURLException e) {
+            // should never be thrown since url is provided by google
+            throw new DomainMethodExecutionException("invalid URL", e);
         } catch (IOException e) {
             throw new DomainMethodExecutionException("unable to connect to the delete URL", e);
         } catch (ServiceException e) {
             throw new DomainMethodExecutionException("unable to delete the contact with the given id", e);
-        } finally {
-            this.state = AliveState.DISCONNECTED;
         }
     }
+
+    /**
+     * deletes the entry at its edit URL. If an ETag is given, google only deletes the entry if it is still that
+     * version.
+     */
+    private void deleteContactEntry(ContactEntry entry, final String etag) throws IOException, ServiceException {
+        final URL editUrl = new URL(entry.getEditLink().getHref());
+        session.execute(new ServiceCall<Void>() {
+            @Override
+            public Void call(ContactsService service) throws IOException, ServiceException {
+                if (etag == null) {
+                    service.delete(editUrl);
+                } else {
+                    service.delete(editUrl, etag);
+                }
+                return null;
+            }
+        });
+    }
     
-    private EKBCommit createEKBCommit() {
+    /**
+     * creates all given contacts via the google batch feed. Every batch of {@link #getBatchSize()} contacts is sent
+     * in one request and results in one EKB commit containing the successfully created contacts. The returned list
+     * contains one result per contact in the order of the given list.
+     */
+    public List<BatchItemResult> createContacts(List<Contact> contacts) {
+        long start = metrics.start();
+        boolean succeeded = false;
+        try {
+            List<BatchItemResult> results = doCreateContacts(contacts);
+            succeeded = true;
+            return results;
+        } finally {
+            metrics.record(Operation.CREATE_CONTACTS, start, succeeded);
+        }
+    }
+
+    private List<BatchItemResult> doCreateContacts(List<Contact> contacts) {
+        login();
+        BatchItemResult[] results = new BatchItemResult[contacts.size()];
+        for (int start = 0; start < contacts.size(); start += batchSize) {
+            int end = Math.min(start + batchSize, contacts.size());
+            ContactFeed request = new ContactFeed();
+            int[] indices = new int[end - start];
+            String[] ids = new String[end - start];
+            for (int i = start; i < end; i++) {
+                ContactEntry entry = ContactConverter.convertContactToContactEntry(contacts.get(i));
+                addBatchEntry(request, entry, i, BatchOperationType.INSERT);
+                indices[i - start] = i;
+            }
+            Map<Integer, ContactEntry> created = executeBatch(request, indices, ids, results);
+
+            EKBCommit commit = createEKBCommit();
+            for (Map.Entry<Integer, ContactEntry> entry : created.entrySet()) {
+                Contact contact = contacts.get(entry.getKey());
+                contact.setId(entry.getValue().getId());
+                snapshotPut(entry.getValue());
+                indexPut(contact);
+                commit.addInsert(contact);
+            }
+            commitWritten(commit, created.size());
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * updates all given contacts via the google batch feed. Every batch needs two requests, one to fetch the current
+     * entries and one to write the merged entries back, and results in one EKB commit. Contacts that do not differ
+     * from their current entry are not written and reported with code 304.
+     */
+    public List<BatchItemResult> updateContacts(List<Contact> contacts) {
+        long start = metrics.start();
+        boolean succeeded = false;
+        try {
+            List<BatchItemResult> results = doUpdateContacts(contacts);
+            succeeded = true;
+            return results;
+        } finally {
+            metrics.record(Operation.UPDATE_CONTACTS, start, succeeded);
+        }
+    }
+
+    private List<BatchItemResult> doUpdateContacts(List<Contact> contacts) {
+        login();
+        BatchItemResult[] results = new BatchItemResult[contacts.size()];
+        for (int start = 0; start < contacts.size(); start += batchSize) {
+            int end = Math.min(start + batchSize, contacts.size());
+            ContactFeed query = new ContactFeed();
+            int[] indices = new int[end - start];
+            String[] ids = new String[end - start];
+            for (int i = start; i < end; i++) {
+                ContactEntry entry = new ContactEntry();
+                entry.setId(contacts.get(i).getId());
+                addBatchEntry(query, entry, i, BatchOperationType.QUERY);
+                indices[i - start] = i;
+                ids[i - start] = contacts.get(i).getId();
+            }
+            Map<Integer, ContactEntry> current = executeBatch(query, indices, ids, results);
+            if (current.isEmpty()) {
+                continue;
+            }
+
+            ContactFeed request = new ContactFeed();
+            indices = new int[current.size()];
+            ids = new String[current.size()];
+            int position = 0;
+            for (Map.Entry<Integer, ContactEntry> entry : current.entrySet()) {
+                Contact contact = contacts.get(entry.getKey());
+                if (ContactDiff.diff(entry.getValue(), contact).isEmpty()) {
+                    results[entry.getKey()] =
+                        BatchItemResult.success(entry.getKey(), contact.getId(), HttpURLConnection.HTTP_NOT_MODIFIED);
+                    continue;
+                }
+                ContactEntry merged = ContactConverter.extendContactEntryWithContact(entry.getValue(), contact);
+                addBatchEntry(request, merged, entry.getKey(), BatchOperationType.UPDATE);
+                indices[position] = entry.getKey();
+                ids[position] = contact.getId();
+                position++;
+            }
+            if (position == 0) {
+                continue;
+            }
+            indices = Arrays.copyOf(indices, position);
+            ids = Arrays.copyOf(ids, position);
+            Map<Integer, ContactEntry> updated = executeBatch(request, indices, ids, results);
+
+            EKBCommit commit = createEKBCommit();
+            for (Map.Entry<Integer, ContactEntry> entry : updated.entrySet()) {
+                int index = entry.getKey();
+                snapshotPut(entry.getValue());
+                indexPut(contacts.get(index));
+                commit.addUpdate(contacts.get(index));
+            }
+            commitWritten(commit, updated.size());
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * deletes all contacts with the given ids via the google batch feed. Every batch is sent in one request and
+     * results in one EKB commit.
+     */
+    public List<BatchItemResult> deleteContacts(List<String> contactIds) {
+        long start = metrics.start();
+        boolean succeeded = false;
+        try {
+            List<BatchItemResult> results = doDeleteContacts(contactIds);
+            succeeded = true;
+            return results;
+        } finally {
+            metrics.record(Operation.DELETE_CONTACTS, start, succeeded);
+        }
+    }
+
+    private List<BatchItemResult> doDeleteContacts(List<String> contactIds) {
+        login();
+        BatchItemResult[] results = new BatchItemResult[contactIds.size()];
+        for (int start = 0; start < contactIds.size(); start += batchSize) {
+            int end = Math.min(start + batchSize, contactIds.size());
+            ContactFeed request = new ContactFeed();
+            int[] indices = new int[end - start];
+            String[] ids = new String[end - start];
+            for (int i = start; i < end; i++) {
+                ContactEntry entry = new ContactEntry();
+                entry.setId(contactIds.get(i));
+                // delete regardless of the current version of the entry, like deleteContact does
+                entry.setEtag("*");
+                addBatchEntry(request, entry, i, BatchOperationType.DELETE);
+                indices[i - start] = i;
+                ids[i - start] = contactIds.get(i);
+            }
+            Map<Integer, ContactEntry> deleted = executeBatch(request, indices, ids, results);
+
+            EKBCommit commit = createEKBCommit();
+            for (Integer index : deleted.keySet()) {
+                Contact contact = new Contact();
+                contact.setId(contactIds.get(index));
+                snapshotDelete(contact.getId());
+                indexRemove(contact.getId());
+                commit.addDelete(contact);
+            }
+            commitWritten(commit, deleted.size());
+        }
+        return Arrays.asList(results);
+    }
+
+    private static void addBatchEntry(ContactFeed feed, ContactEntry entry, int index, BatchOperationType type) {
+        BatchUtils.setBatchId(entry, String.valueOf(index));
+        BatchUtils.setBatchOperationType(entry, type);
+        feed.getEntries().add(entry);
+    }
+
+    /**
+     * sends one batch feed to google and records a result for every index. If the whole request fails, every item of
+     * the batch is reported as failed instead of aborting the remaining batches.
+     *
+     * @return the response entries of all successful operations by index
+     */
+    private Map<Integer, ContactEntry> executeBatch(final ContactFeed request, int[] indices, String[] ids,
+            BatchItemResult[] results) {
+        Map<Integer, ContactEntry> succeeded = new TreeMap<Integer, ContactEntry>();
+        Map<String, Integer> positions = new HashMap<String, Integer>();
+        for (int i = 0; i < indices.length; i++) {
+            positions.put(String.valueOf(indices[i]), i);
+        }
+        String failure = "no result reported by google";
+        try {
+            final URL batchUrl = new URL(feedUrl + "/batch");
+            ContactFeed response = session.execute(new ServiceCall<ContactFeed>() {
+                @Override
+                public ContactFeed call(ContactsService service) throws IOException, ServiceException {
+                    return service.batch(batchUrl, request);
+                }
+            });
+            for (ContactEntry entry : response.getEntries()) {
+                Integer position = positions.get(BatchUtils.getBatchId(entry));
+                if (position == null) {
+                    continue;
+                }
+                int index = indices[position];
+                BatchStatus status = BatchUtils.getBatchStatus(entry);
+                int code = status == null ? -1 : status.getCode();
+                if (BatchUtils.isSuccess(entry)) {
+                    String id = entry.getId() != null ? entry.getId() : ids[position];
+                    results[index] = BatchItemResult.success(index, id, code);
+                    succeeded.put(index, entry);
+                } else {
+                    String reason = status == null ? null : status.getReason();
+                    results[index] = BatchItemResult.failure(index, ids[position], code, reason);
+                }
+            }
+        } catch (MalformedURLException e) {
+            // should never be thrown since the URL is static
+            throw new DomainMethodExecutionException("invalid URL", e);
+        } catch (IOException e) {
+            LOGGER.warn("unable to connect to the batch URL", e);
+            failure = "unable to connect to the batch URL: " + e.getMessage();
+        } catch (ServiceException e) {
+            LOGGER.warn("unable to execute the batch request", e);
+            failure = "unable to execute the batch request: " + e.getMessage();
+        }
+        for (int i = 0; i < indices.length; i++) {
+            if (results[indices[i]] == null) {
+                results[indices[i]] = BatchItemResult.failure(indices[i], ids[i], -1, failure);
+            }
+        }
+        return succeeded;
+    }
+
+    /**
+     * commits directly, after all operations still waiting in the commit pipeline, so the EKB sees them in order
+     */
+    private void commitIfNotEmpty(EKBCommit commit, int operations) {
+        if (operations > 0) {
+            getCommitPipeline().flush();
+            commitToEKB(commit);
+        }
+    }
+
+    /**
+     * commits the operations of google writes that already succeeded. Failures are logged and counted in the metrics
+     * instead of thrown, so the caller still gets the results of the writes and does not repeat them.
+     */
+    private void commitWritten(EKBCommit commit, int operations) {
+        if (operations <= 0) {
+            return;
+        }
+        try {
+            getCommitPipeline().flush();
+        } catch (DomainMethodExecutionException e) {
+            LOGGER.error("earlier contact operations are not committed to the EKB yet", e);
+        }
+        try {
+            commitToEKB(commit);
+        } catch (RuntimeException e) {
+            LOGGER.error("unable to commit " + operations + " written contact operations to the EKB", e);
+        }
+    }
+
+    void commitToEKB(EKBCommit commit) {
+        long start = metrics.start();
+        boolean succeeded = false;
+        try {
+            persistInterface.commit(commit);
+            succeeded = true;
+        } finally {
+            metrics.record(Operation.EKB_COMMIT, start, succeeded);
+        }
+    }
+
+    EKBCommit createEKBCommit() {
         EKBCommit commit = new EKBCommit();
         commit.setDomainId(domainId).setConnectorId(connectorId).setInstanceId(instanceId);
         return commit;
@@ -134,20 +610,160 @@ public class GcontactsServiceImpl extends AbstractOpenEngSBConnectorService impl
 
     @Override
     public Contact loadContact(String id) {
+        return loadContact(id, ContactProjection.ALL);
+    }
+
+    /**
+     * loads only the given fields of a contact, the other fields of the returned contact are null. If the contact is
+     * not cached, google is asked for just these fields. A contact loaded this way must not be passed to
+     * {@link #updateContact} since the missing fields would be cleared; {@link #loadContact(String)} always loads
+     * complete contacts.
+     */
+    public Contact loadContact(String id, Set<ContactField> fields) {
+        long start = metrics.start();
+        boolean succeeded = false;
+        try {
+            Contact contact = doLoadContact(id, fields);
+            succeeded = true;
+            return contact;
+        } finally {
+            metrics.record(Operation.LOAD_CONTACT, start, succeeded);
+        }
+    }
+
+    /**
+     * concurrent loads of the same contact and fields share one request to google
+     */
+    private Contact doLoadContact(final String id, final Set<ContactField> fields) {
+        login();
+        // a complete cached entry serves every projection
+        ContactEntry entry = entryCache.getIfFresh(id);
+        if (entry != null) {
+            return ContactConverter.convertContactEntryToContact(entry, fields);
+        }
+        if (!ContactProjection.isPartial(fields)) {
+            entry = loadFlights.execute(id, new Callable<ContactEntry>() {
+                @Override
+                public ContactEntry call() {
+                    return getContactEntry(id);
+                }
+            });
+            return ContactConverter.convertContactEntryToContact(entry);
+        }
+        entry = loadFlights.execute(id + "?fields=" + ContactProjection.toEntryFields(fields),
+            new Callable<ContactEntry>() {
+                @Override
+                public ContactEntry call() {
+                    return getPartialContactEntry(id, fields);
+                }
+            });
+        return ContactConverter.convertContactEntryToContact(entry, fields);
+    }
+
+    /**
+     * loads all contacts with the given ids. Fresh cached entries are served locally, the others are read with query
+     * operations of the google batch feed, one request per batch size distinct ids. The results are in the order of
+     * the ids. Ids without a contact are reported as not found and the ids of a failed batch as errors instead of
+     * aborting the remaining batches.
+     */
+    public List<ContactLoadResult> loadContacts(List<String> ids) {
+        long start = metrics.start();
+        boolean succeeded = false;
+        try {
+            List<ContactLoadResult> results = doLoadContacts(ids);
+            succeeded = true;
+            return results;
+        } finally {
+            metrics.record(Operation.LOAD_CONTACTS, start, succeeded);
+        }
+    }
+
+    private List<ContactLoadResult> doLoadContacts(List<String> ids) {
         login();
-        ContactEntry entry = getContactEntry(id);
-        return ContactConverter.convertContactEntryToContact(entry);
+        ContactLoadResult[] results = new ContactLoadResult[ids.size()];
+        // positions of every id that is not cached, so an id listed twice is only asked for once
+        Map<String, List<Integer>> missing = new LinkedHashMap<String, List<Integer>>();
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            ContactEntry cached = entryCache.getIfFresh(id);
+            if (cached != null) {
+                results[i] = ContactLoadResult.found(i, id, ContactConverter.convertContactEntryToContact(cached));
+                continue;
+            }
+            List<Integer> positions = missing.get(id);
+            if (positions == null) {
+                positions = new ArrayList<Integer>(1);
+                missing.put(id, positions);
+            }
+            positions.add(i);
+        }
+
+        List<String> distinct = new ArrayList<String>(missing.keySet());
+        BatchItemResult[] batchResults = new BatchItemResult[distinct.size()];
+        for (int start = 0; start < distinct.size(); start += batchSize) {
+            int end = Math.min(start + batchSize, distinct.size());
+            ContactFeed query = new ContactFeed();
+            int[] indices = new int[end - start];
+            String[] batchIds = new String[end - start];
+            for (int i = start; i < end; i++) {
+                ContactEntry entry = new ContactEntry();
+                entry.setId(distinct.get(i));
+                addBatchEntry(query, entry, i, BatchOperationType.QUERY);
+                indices[i - start] = i;
+                batchIds[i - start] = distinct.get(i);
+            }
+            Map<Integer, ContactEntry> loaded = executeBatch(query, indices, batchIds, batchResults);
+
+            for (int i = start; i < end; i++) {
+                String id = distinct.get(i);
+                ContactEntry entry = loaded.get(i);
+                if (entry != null) {
+                    entryCache.put(id, entry);
+                }
+                for (int index : missing.get(id)) {
+                    if (entry != null) {
+                        Contact contact = ContactConverter.convertContactEntryToContact(entry);
+                        results[index] = ContactLoadResult.found(index, id, contact);
+                    } else {
+                        BatchItemResult failure = batchResults[i];
+                        results[index] =
+                            ContactLoadResult.failure(index, id, failure.getCode(), failure.getReason());
+                    }
+                }
+            }
+        }
+        return Arrays.asList(results);
     }
 
     /**
-     * it works for one argument only. That means if a name is set, homepage, location, ... will be ignored. location
-     * works only partwise. If all values for location are set, it often don't work. Try it with less values then. e.g.
-     * only address. date works unfortunately not at all. I assume there are problems with the internationalisation of
-     * the format because only full text searches are working (at least until google gives us better oppurtunities)
+     * With the local index enabled all given arguments are combined and the search is answered without asking google.
+     * Without it, it works for one argument only. That means if a name is set, homepage, location, ... will be
+     * ignored. location works only partwise. If all values for location are set, it often don't work. Try it with
+     * less values then. e.g. only address. date works unfortunately not at all. I assume there are problems with the
+     * internationalisation of the format because only full text searches are working (at least until google gives us
+     * better oppurtunities)
      */
     @Override
     public ArrayList<Contact> retrieveContacts(String id, String name, String homepage, Location location, Date date,
             String comment) {
+        long start = metrics.start();
+        boolean succeeded = false;
+        try {
+            ArrayList<Contact> contacts = doRetrieveContacts(id, name, homepage, location, date, comment);
+            succeeded = true;
+            return contacts;
+        } finally {
+            metrics.record(Operation.RETRIEVE_CONTACTS, start, succeeded);
+        }
+    }
+
+    private ArrayList<Contact> doRetrieveContacts(String id, String name, String homepage, Location location,
+            Date date, String comment) {
+        ContactIndex index = getLoadedIndex();
+        if (index != null) {
+            return retrieveIndexedContacts(index, id, name, homepage, location, date, comment);
+        }
+        login();
         ArrayList<Contact> contacts = new ArrayList<Contact>();
 
         String querytext = null;
@@ -188,34 +804,568 @@ public class GcontactsServiceImpl extends AbstractOpenEngSBConnectorService impl
             return contacts;
         }
 
+        final String fullTextQuery = querytext;
+        List<ContactEntry> entries = queryFlights.execute(fullTextQuery, new Callable<List<ContactEntry>>() {
+            @Override
+            public List<ContactEntry> call() {
+                ContactQuery query = createQuery();
+                query.setFullTextQuery(fullTextQuery);
+                ContactFeedIterator iterator = new ContactFeedIterator(session, query);
+                List<ContactEntry> result = new ArrayList<ContactEntry>();
+                while (iterator.hasNext()) {
+                    result.add(iterator.next());
+                }
+                return result;
+            }
+        });
+        // every caller of a coalesced query converts the shared entries into contacts of its own
+        for (ContactEntry entry : entries) {
+            contacts.add(ContactConverter.convertContactEntryToContact(entry));
+        }
+        return contacts;
+    }
+
+    /**
+     * answers a search from the local index, all given criteria have to match, see {@link ContactIndex#query}
+     */
+    private ArrayList<Contact> retrieveIndexedContacts(ContactIndex index, String id, String name, String homepage,
+            Location location, Date date, String comment) {
+        if (id != null) {
+            ArrayList<Contact> contacts = new ArrayList<Contact>(1);
+            Contact contact = index.get(id);
+            contacts.add(contact != null ? contact : loadContact(id));
+            return contacts;
+        }
+        return new ArrayList<Contact>(index.query(name, homepage, location, date, comment));
+    }
+
+    /**
+     * returns the local index, loading the whole address book into it first if that did not happen yet. Returns null
+     * if the index is disabled.
+     */
+    private ContactIndex getLoadedIndex() {
+        ContactIndex index = contactIndex;
+        if (index != null && !index.isComplete()) {
+            login();
+            rebuildIndex();
+        }
+        return index;
+    }
+
+    /**
+     * loads the whole address book into the local index again. Afterwards the index is kept current by the writes of
+     * this connector and by {@link #synchronize()}, which applies the changes made elsewhere every sync interval.
+     */
+    public void rebuildIndex() {
+        ContactIndex index = contactIndex;
+        if (index == null) {
+            return;
+        }
+        // serialized with the sync, so changes it applies are not overwritten by an older state of the full read
+        synchronized (syncLock) {
+            if (index.isComplete()) {
+                return;
+            }
+            index.clear();
+            clearSnapshot();
+            ContactFeedIterator entries = new ContactFeedIterator(session, createQuery());
+            while (entries.hasNext()) {
+                ContactEntry entry = entries.next();
+                snapshotPut(entry);
+                index.put(ContactConverter.convertContactEntryToContact(entry));
+            }
+            index.setComplete(true);
+            // the full read is at least as new as the sync watermark, so the snapshot can resume from it
+            ContactSnapshotStore snapshot = snapshotStore;
+            DateTime watermark = getWatermarkStore().load();
+            if (snapshot != null && watermark != null) {
+                snapshot.storeWatermark(watermark);
+            }
+            LOGGER.info("loaded {} contacts into the local index", index.size());
+        }
+    }
+
+    /**
+     * enables the on-disk snapshot of the mirrored entries. It is read right away to warm the entry cache and the
+     * local index, so they do not need to be loaded from google after a restart.
+     */
+    public void setSnapshotEnabled(boolean enabled) {
+        ContactSnapshotStore old;
+        synchronized (storageLock) {
+            old = snapshotStore;
+            snapshotStore = enabled ? new ContactSnapshotStore(getInstanceFile(".snapshot")) : null;
+        }
+        if (old != null) {
+            old.close();
+        }
+        if (enabled) {
+            restoreSnapshot();
+        }
+    }
+
+    public boolean isSnapshotEnabled() {
+        return snapshotStore != null;
+    }
+
+    /**
+     * fills the entry cache and the local index from the snapshot. Restored entries are revalidated with their ETag
+     * before they are served. The index is only complete if the snapshot was taken at the point the next sync resumes
+     * from, otherwise it is loaded from google on the first search as usual.
+     */
+    private void restoreSnapshot() {
+        synchronized (syncLock) {
+            ContactSnapshotStore snapshot = snapshotStore;
+            if (snapshot == null) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            Map<String, ContactEntry> entries = snapshot.load();
+            DateTime watermark = getWatermarkStore().load();
+            if (snapshot.getWatermark() == null || watermark == null
+                    || snapshot.getWatermark().getValue() != watermark.getValue()) {
+                snapshot.setIncomplete();
+            }
+            ContactIndex index = contactIndex;
+            if (index != null) {
+                index.clear();
+            }
+            for (Map.Entry<String, ContactEntry> entry : entries.entrySet()) {
+                entryCache.putStale(entry.getKey(), entry.getValue());
+                if (index != null) {
+                    index.put(ContactConverter.convertContactEntryToContact(entry.getValue()));
+                }
+            }
+            if (index != null && snapshot.isComplete()) {
+                index.setComplete(true);
+            }
+            LOGGER.info("restored {} contacts from {} in {} ms", new Object[]{
+                entries.size(), snapshot.getFile(), System.currentTimeMillis() - start });
+        }
+    }
+
+    private void snapshotPut(ContactEntry entry) {
+        ContactSnapshotStore snapshot = snapshotStore;
+        if (snapshot != null) {
+            snapshot.put(entry);
+        }
+    }
+
+    private void clearSnapshot() {
+        ContactSnapshotStore snapshot = snapshotStore;
+        if (snapshot != null) {
+            snapshot.clear();
+        }
+    }
+
+    private void snapshotDelete(String id) {
+        ContactSnapshotStore snapshot = snapshotStore;
+        if (snapshot != null) {
+            snapshot.delete(id);
+        }
+    }
+
+    private void indexPut(Contact contact) {
+        ContactIndex index = contactIndex;
+        if (index != null) {
+            index.put(contact);
+        }
+    }
+
+    private void indexRemove(String id) {
+        ContactIndex index = contactIndex;
+        if (index != null) {
+            index.remove(id);
+        }
+    }
+
+    /**
+     * iterates over all contacts of the address book. Pages of {@link #getPageSize()} entries are requested from
+     * google only when the previous page is exhausted and every entry is converted when it is handed out, so memory
+     * usage does not depend on the size of the address book.
+     */
+    public Iterator<Contact> iterateAllContacts() {
+        return iterateContacts((String) null);
+    }
+
+    /**
+     * streams all contacts into the file, as vCard if it ends with .vcf or .vcard and as one JSON object per line
+     * otherwise
+     *
+     * @return the number of exported contacts
+     */
+    public int exportContacts(File file) {
+        return new ContactTransfer(this).exportContacts(file);
+    }
+
+    /**
+     * creates the contacts of a file written by {@link #exportContacts(File)} in batches. An interrupted import is
+     * continued from its last completed batch when it is started again with the same file.
+     */
+    public ImportResult importContacts(File file) {
+        return new ContactTransfer(this).importContacts(file);
+    }
+
+    /**
+     * reads the whole address book once and returns the groups of duplicate contacts, see {@link DuplicateDetector}
+     */
+    public List<DuplicateGroup> findDuplicates() {
+        return new DuplicateDetector().findDuplicates(iterateAllContacts());
+    }
+
+    /**
+     * merges the groups in two batch runs: the merged contacts are written with {@link #updateContacts(List)} and the
+     * duplicates of every group whose update succeeded are deleted with {@link #deleteContacts(List)}. Groups whose
+     * update failed are left untouched.
+     *
+     * @return the number of deleted duplicates
+     */
+    public int mergeDuplicates(List<DuplicateGroup> groups) {
+        List<Contact> merged = new ArrayList<Contact>(groups.size());
+        for (DuplicateGroup group : groups) {
+            merged.add(group.getMerged());
+        }
+        List<String> duplicateIds = new ArrayList<String>();
+        for (BatchItemResult result : updateContacts(merged)) {
+            if (result.isSuccess()) {
+                duplicateIds.addAll(groups.get(result.getIndex()).getDuplicateIds());
+            } else {
+                LOGGER.warn("unable to merge duplicates into contact {}: {} {}", new Object[]{
+                    result.getContactId(), result.getCode(), result.getReason() });
+            }
+        }
+        int deleted = 0;
+        for (BatchItemResult result : deleteContacts(duplicateIds)) {
+            if (result.isSuccess()) {
+                deleted++;
+            } else {
+                LOGGER.warn("unable to delete duplicate contact {}: {} {}", new Object[]{
+                    result.getContactId(), result.getCode(), result.getReason() });
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * iterates over all contacts matching the full text query, see {@link #iterateAllContacts()}. If the query is
+     * null all contacts are returned.
+     */
+    public Iterator<Contact> iterateContacts(String fullTextQuery) {
+        return iterateContacts(fullTextQuery, ContactProjection.ALL);
+    }
+
+    /**
+     * iterates over the given fields of all contacts matching the full text query, see
+     * {@link #loadContact(String, Set)}
+     */
+    public Iterator<Contact> iterateContacts(String fullTextQuery, Set<ContactField> fields) {
+        ContactQuery query = createQuery();
+        if (fullTextQuery != null) {
+            query.setFullTextQuery(fullTextQuery);
+        }
+        return iterateContacts(query, fields);
+    }
+
+    /**
+     * iterates over all contacts matching the given query, following the next links of the feed
+     */
+    public Iterator<Contact> iterateContacts(ContactQuery query) {
+        return iterateContacts(query, null);
+    }
+
+    /**
+     * iterates over the given fields of all contacts matching the query. For a partial projection google only sends
+     * the selected elements of every entry. With the streaming decoder enabled the pages are decoded into contacts
+     * directly, without building ContactEntry objects.
+     */
+    public Iterator<Contact> iterateContacts(ContactQuery query, Set<ContactField> fields) {
+        final Set<ContactField> converted = ContactProjection.isPartial(fields) ? fields : ContactProjection.ALL;
+        if (streamingDecoder) {
+            return new DecodingContactIterator(session, applyProjection(query, fields), converted);
+        }
+        final ContactFeedIterator entries = new ContactFeedIterator(session, applyProjection(query, fields));
+        return new Iterator<Contact>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public Contact next() {
+                return ContactConverter.convertContactEntryToContact(entries.next(), converted);
+            }
+
+            @Override
+            public void remove() {
+                entries.remove();
+            }
+        };
+    }
+
+    /**
+     * asks google for only the given fields of every entry if the projection is partial
+     */
+    private static ContactQuery applyProjection(ContactQuery query, Set<ContactField> fields) {
+        if (ContactProjection.isPartial(fields)) {
+            query.addCustomParameter(new Query.CustomParameter("fields", ContactProjection.toFeedFields(fields)));
+        }
+        return query;
+    }
+
+    /**
+     * mirrors all changes of the address book since the last sync into the EKB as one commit of inserts, updates and
+     * deletes. Only entries changed after the stored watermark are requested from google (updated-min together with
+     * showdeleted), so the cost depends on the number of changes and not on the size of the address book. Without a
+     * watermark, or if google does not keep deletions for that long anymore, the whole address book is read.
+     */
+    public SyncResult synchronize() {
+        long start = metrics.start();
+        boolean succeeded = false;
         try {
-            URL feedUrl = new URL("https://www.google.com/m8/feeds/contacts/default/full");
-            ContactQuery myQuery = new ContactQuery(feedUrl);
+            SyncResult result = doSynchronize();
+            succeeded = true;
+            return result;
+        } finally {
+            metrics.record(Operation.SYNCHRONIZE, start, succeeded);
+        }
+    }
 
-            myQuery.setFullTextQuery(querytext);
-            ContactFeed resultFeed = service.query(myQuery, ContactFeed.class);
-            for (ContactEntry entry : resultFeed.getEntries()) {
-                contacts.add(ContactConverter.convertContactEntryToContact(entry));
+    private SyncResult doSynchronize() {
+        login();
+        synchronized (syncLock) {
+            SyncWatermarkStore store = getWatermarkStore();
+            DateTime watermark = store.load();
+            try {
+                return synchronize(store, watermark, watermark);
+            } catch (DomainMethodExecutionException e) {
+                if (watermark != null && isGone(e)) {
+                    LOGGER.info("sync watermark {} is too old, doing a full sync", watermark);
+                    store.clear();
+                    // the EKB still mirrors every contact created before the old watermark
+                    return synchronize(store, null, watermark);
+                }
+                throw e;
             }
-            return contacts;
+        }
+    }
+
+    /**
+     * reads the changes since the watermark, or the whole address book if it is null. Contacts created before mirrored
+     * are known to the EKB already and committed as updates, all others as inserts.
+     */
+    private SyncResult synchronize(SyncWatermarkStore store, DateTime watermark, DateTime mirrored) {
+        ContactQuery query = createQuery();
+        if (watermark != null) {
+            query.setUpdatedMin(watermark);
+            query.setShowDeleted(true);
+        } else {
+            // a full read does not report deletions, so the snapshot is written from scratch
+            clearSnapshot();
+        }
+
+        EKBCommit commit = createEKBCommit();
+        int inserted = 0;
+        int updated = 0;
+        int deleted = 0;
+        long newest = -1;
+        int parallelism = getEffectiveSyncParallelism();
+        ShardedFeedReader sharded = null;
+        ContactFeedIterator sequential = null;
+        Iterator<ContactEntry> entries;
+        if (watermark == null && parallelism > 1) {
+            sharded = new ShardedFeedReader(session, feedUrl, pageSize, parallelism);
+            entries = sharded;
+        } else {
+            sequential = new ContactFeedIterator(session, query);
+            entries = sequential;
+        }
+        try {
+            while (entries.hasNext()) {
+                ContactEntry entry = entries.next();
+                if (entry.getUpdated() != null) {
+                    newest = Math.max(newest, entry.getUpdated().getValue());
+                }
+                if (entry.hasDeleted()) {
+                    entryCache.remove(entry.getId());
+                    snapshotDelete(entry.getId());
+                    indexRemove(entry.getId());
+                    if (watermark != null) {
+                        Contact contact = new Contact();
+                        contact.setId(entry.getId());
+                        commit.addDelete(contact);
+                        deleted++;
+                    }
+                    continue;
+                }
+                entryCache.replaceIfPresent(entry.getId(), entry);
+                snapshotPut(entry);
+                Contact contact = ContactConverter.convertContactEntryToContact(entry);
+                indexPut(contact);
+                if (mirrored == null || isCreatedSince(entry, mirrored)) {
+                    commit.addInsert(contact);
+                    inserted++;
+                } else {
+                    commit.addUpdate(contact);
+                    updated++;
+                }
+            }
+        } finally {
+            if (sharded != null) {
+                sharded.close();
+            }
+        }
+        commitIfNotEmpty(commit, inserted + updated + deleted);
+
+        DateTime next = watermark;
+        // the pages are not read at one instant, a contact changed in between may sit on a page that was already read.
+        // Such changes are newer than the time google reported with the first page, so the next sync starts there.
+        DateTime feedUpdated = sharded != null ? sharded.getFeedUpdated() : sequential.getFeedUpdated();
+        if (feedUpdated != null) {
+            if (watermark == null || feedUpdated.getValue() > watermark.getValue()) {
+                next = feedUpdated;
+            }
+        } else if (newest >= 0 && (watermark == null || newest >= watermark.getValue())) {
+            // updated-min is inclusive, so start right after the newest change to not read it again
+            next = new DateTime(newest + 1);
+        }
+        if (next != watermark) {
+            store.store(next);
+        }
+        ContactSnapshotStore snapshot = snapshotStore;
+        if (snapshot != null && next != null && (watermark == null || snapshot.isComplete())) {
+            snapshot.storeWatermark(next);
+            snapshot.compactIfNeeded();
+        }
+        LOGGER.info("synchronized address book: {} inserts, {} updates, {} deletes", new Object[]{
+            inserted, updated, deleted });
+        return new SyncResult(watermark == null, inserted, updated, deleted, next);
+    }
+
+    private static boolean isCreatedSince(ContactEntry entry, DateTime watermark) {
+        return entry.getPublished() != null && entry.getPublished().getValue() >= watermark.getValue();
+    }
+
+    /**
+     * google answers updated-min queries with 410 if the deletions since then are not available anymore
+     */
+    private static boolean isGone(DomainMethodExecutionException e) {
+        return e.getCause() instanceof ServiceException
+                && ((ServiceException) e.getCause()).getHttpErrorCodeOverride() == HttpURLConnection.HTTP_GONE;
+    }
+
+    private SyncWatermarkStore getWatermarkStore() {
+        synchronized (storageLock) {
+            if (watermarkStore == null) {
+                watermarkStore = new SyncWatermarkStore(getInstanceFile(".sync"));
+            }
+            return watermarkStore;
+        }
+    }
+
+    /**
+     * returns the file with the given suffix this connector instance keeps in the storage directory
+     */
+    File getInstanceFile(String suffix) {
+        return new File(storageDirectory, instanceId.replaceAll("[^A-Za-z0-9._-]", "_") + suffix);
+    }
+
+    /**
+     * creates a query on the contacts feed using the configured page size
+     */
+    private ContactQuery createQuery() {
+        try {
+            ContactQuery query = new ContactQuery(new URL(feedUrl));
+            query.setMaxResults(pageSize);
+            return query;
         } catch (MalformedURLException e) {
             // should never be thrown since the URL is static
             throw new DomainMethodExecutionException("invalid URL", e);
+        }
+    }
+
+    /**
+     * retrieves the current version of one contact from google, ignoring any cached entry
+     */
+    private ContactEntry fetchContactEntry(String id) {
+        entryCache.remove(id);
+        return getContactEntry(id);
+    }
+
+    /**
+     * retrieves one contact by id. Entries are served from the local cache while they are younger than its time to
+     * live. Older cached entries are revalidated with their ETag, so google only sends the entry again if it changed.
+     * While the circuit breaker is open a cached entry of any age is served instead of failing.
+     */
+    private ContactEntry getContactEntry(final String id) {
+        ContactEntry cached = entryCache.getIfFresh(id);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            ContactEntry stale = entryCache.getForRevalidation(id);
+            if (stale != null) {
+                return revalidateContactEntry(id, stale);
+            }
+            final URL entryUrl = new URL(id);
+            ContactEntry entry = session.execute(new ServiceCall<ContactEntry>() {
+                @Override
+                public ContactEntry call(ContactsService service) throws IOException, ServiceException {
+                    return service.getEntry(entryUrl, ContactEntry.class);
+                }
+            });
+            entryCache.put(id, entry);
+            return entry;
+        } catch (MalformedURLException e) {
+            throw new DomainMethodExecutionException("invalid id, id must be an url to the element on the calendar", e);
+        } catch (CircuitOpenException e) {
+            ContactEntry last = entryCache.peek(id);
+            if (last != null) {
+                LOGGER.debug("circuit breaker is open, serving cached contact {}", id);
+                return last;
+            }
+            throw new DomainMethodExecutionException("google is failing, no cached copy of the contact", e);
         } catch (IOException e) {
             throw new DomainMethodExecutionException("unable to connect to the google server", e);
         } catch (ServiceException e) {
-            throw new DomainMethodExecutionException("unable to retrieve contacts", e);
+            entryCache.remove(id);
+            throw new DomainMethodExecutionException("unable to retrieve the appointment", e);
         }
     }
 
     /**
-     * retrieves one contact by id
+     * asks google whether the known entry is still current, regardless of its age in the cache. The entry is sent
+     * with its ETag, so google answers 304 if it did not change and the current version otherwise.
      */
-    private ContactEntry getContactEntry(String id) {
+    private ContactEntry revalidateContactEntry(String id, final ContactEntry known)
+        throws IOException, ServiceException {
+        final URL entryUrl = new URL(id);
         try {
-
-            ContactEntry entry = (ContactEntry) service.getEntry(new URL(id), ContactEntry.class);
+            ContactEntry entry = session.execute(new ServiceCall<ContactEntry>() {
+                @Override
+                public ContactEntry call(ContactsService service) throws IOException, ServiceException {
+                    return service.getEntry(entryUrl, ContactEntry.class, known.getEtag());
+                }
+            });
+            entryCache.put(id, entry);
             return entry;
+        } catch (NotModifiedException e) {
+            entryCache.markNotModified(id, known);
+            return known;
+        }
+    }
+
+    /**
+     * retrieves only the given fields of one contact. Such entries are incomplete, so they are never cached.
+     */
+    private ContactEntry getPartialContactEntry(String id, Set<ContactField> fields) {
+        try {
+            String parameter = URLEncoder.encode(ContactProjection.toEntryFields(fields), "UTF-8");
+            final URL entryUrl = new URL(id + (id.indexOf('?') < 0 ? '?' : '&') + "fields=" + parameter);
+            return session.execute(new ServiceCall<ContactEntry>() {
+                @Override
+                public ContactEntry call(ContactsService service) throws IOException, ServiceException {
+                    return service.getEntry(entryUrl, ContactEntry.class);
+                }
+            });
         } catch (MalformedURLException e) {
             throw new DomainMethodExecutionException("invalid id, id must be an url to the element on the calendar", e);
         } catch (IOException e) {
@@ -227,37 +1377,335 @@ public class GcontactsServiceImpl extends AbstractOpenEngSBConnectorService impl
 
     @Override
     public AliveState getAliveState() {
-        return this.state;
+        switch (session.getCircuitBreaker().getState()) {
+            case OPEN:
+                return AliveState.OFFLINE;
+            case HALF_OPEN:
+                return AliveState.CONNECTING;
+            default:
+                return health.getState();
+        }
     }
 
     /**
-     * make the login action to the google server
+     * fails fast if the health monitor knows that the call cannot succeed
      */
     private void login() {
-        try {
-            service = new ContactsService("OPENENGSB");
-            service.setUserCredentials(googleUser, googlePassword);
-            this.state = AliveState.ONLINE;
-        } catch (AuthenticationException e) {
-            throw new DomainMethodExecutionException(
-                "unable to authenticate at google server, maybe wrong username and/or password?", e);
-        }
+        health.checkAvailable();
     }
 
     public String getGooglePassword() {
-        return googlePassword;
+        return session.getPassword();
     }
 
     public void setGooglePassword(String googlePassword) {
-        this.googlePassword = googlePassword;
+        session.setCredentials(session.getUser(), googlePassword);
     }
 
     public String getGoogleUser() {
-        return googleUser;
+        return session.getUser();
     }
 
     public void setGoogleUser(String googleUser) {
-        this.googleUser = googleUser;
+        session.setCredentials(googleUser, session.getPassword());
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1 || batchSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("batch size must be between 1 and " + MAX_BATCH_SIZE);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("page size must be positive");
+        }
+        this.pageSize = pageSize;
+    }
+
+    public File getStorageDirectory() {
+        return storageDirectory;
+    }
+
+    /**
+     * sets the directory where this connector keeps local state like the sync watermark and the contact snapshot.
+     * The snapshot has to be enabled again afterwards to use the new directory.
+     */
+    public void setStorageDirectory(String storageDirectory) {
+        synchronized (storageLock) {
+            this.storageDirectory = new File(storageDirectory);
+            watermarkStore = null;
+        }
+    }
+
+    /**
+     * sets the maximum number of cached contact entries, 0 disables the cache
+     */
+    public void setCacheSize(int cacheSize) {
+        entryCache.setMaxSize(cacheSize);
+    }
+
+    /**
+     * sets how long cached contact entries are used without asking google, in seconds
+     */
+    public void setCacheTimeToLive(long seconds) {
+        entryCache.setTimeToLive(seconds * 1000);
+    }
+
+    public boolean isConditionalWrites() {
+        return conditionalWrites;
+    }
+
+    /**
+     * if enabled, updates and deletes of known entries are sent directly with their ETag instead of fetching the
+     * entry first
+     */
+    public void setConditionalWrites(boolean conditionalWrites) {
+        this.conditionalWrites = conditionalWrites;
+    }
+
+    /**
+     * enables the local index answering retrieveContacts. It is loaded with the whole address book on the first
+     * search and only sees changes made elsewhere through {@link #synchronize()}, see {@link #setSyncInterval(long)}.
+     */
+    public synchronized void setIndexEnabled(boolean enabled) {
+        if (!enabled) {
+            contactIndex = null;
+        } else if (contactIndex == null) {
+            contactIndex = new ContactIndex();
+        }
+    }
+
+    public boolean isIndexEnabled() {
+        return contactIndex != null;
+    }
+
+    /**
+     * returns the local index, or null if it is disabled
+     */
+    public ContactIndex getContactIndex() {
+        return contactIndex;
+    }
+
+    public boolean isPartialUpdates() {
+        return partialUpdates;
+    }
+
+    /**
+     * if enabled, updates only send the changed fields to google as a patch instead of the whole entry
+     */
+    public void setPartialUpdates(boolean partialUpdates) {
+        this.partialUpdates = partialUpdates;
+    }
+
+    public int getSyncParallelism() {
+        return syncParallelism;
+    }
+
+    /**
+     * reads the pages of a full sync with up to the given number of concurrent requests, see
+     * {@link ShardedFeedReader}. 1 reads them one after the other.
+     */
+    public void setSyncParallelism(int syncParallelism) {
+        this.syncParallelism = Math.max(syncParallelism, 1);
+    }
+
+    /**
+     * the sync parallelism capped by the rate limit of the account. Reading a page takes about a second, so more
+     * concurrent requests than the permits per second would only wait for the rate limiter or get throttled.
+     */
+    int getEffectiveSyncParallelism() {
+        double permitsPerSecond = session.getRateLimit();
+        if (permitsPerSecond <= 0) {
+            return syncParallelism;
+        }
+        return Math.min(syncParallelism, Math.max(1, (int) Math.ceil(permitsPerSecond)));
+    }
+
+    public boolean isStreamingDecoder() {
+        return streamingDecoder;
+    }
+
+    /**
+     * decodes the feed pages of {@link #iterateContacts} straight into contacts with a StAX reader, which saves the
+     * ContactEntry objects of every page
+     */
+    public void setStreamingDecoder(boolean streamingDecoder) {
+        this.streamingDecoder = streamingDecoder;
+    }
+
+    public ContactEntryCache getEntryCache() {
+        return entryCache;
+    }
+
+    /**
+     * returns the non blocking variant of this connector, creating its worker threads on first use
+     */
+    public synchronized GcontactsAsyncService async() {
+        if (asyncService == null) {
+            asyncService =
+                new GcontactsAsyncService(this, asyncMaxConcurrent, asyncQueueCapacity, asyncSubmitTimeout);
+        }
+        return asyncService;
+    }
+
+    /**
+     * configures the asynchronous calls. A running executor is replaced after the calls already submitted to it are
+     * finished.
+     */
+    public void setAsyncLimits(int maxConcurrent, int queueCapacity, long submitTimeout) {
+        GcontactsAsyncService old;
+        synchronized (this) {
+            asyncMaxConcurrent = maxConcurrent;
+            asyncQueueCapacity = queueCapacity;
+            asyncSubmitTimeout = submitTimeout;
+            old = asyncService;
+            asyncService = null;
+        }
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    /**
+     * limits the requests sent for the google account, see {@link TokenBucket}
+     */
+    public void setRateLimit(double permitsPerSecond, double burst) {
+        session.setRateLimit(permitsPerSecond, burst);
+    }
+
+    /**
+     * sets the connect and read timeouts in milliseconds and whether responses are requested gzip compressed
+     */
+    public void setTransport(int connectTimeout, int readTimeout, boolean gzip) {
+        session.setTransport(connectTimeout, readTimeout, gzip);
+    }
+
+    /**
+     * configures how often and how long throttled requests are retried, see {@link RetryPolicy}
+     */
+    public void setRetryPolicy(int maxRetries, long initialBackoff, long maxBackoff) {
+        session.setRetryPolicy(new RetryPolicy(maxRetries, initialBackoff, maxBackoff));
+    }
+
+    /**
+     * configures how EKB commits are collected, see {@link EKBCommitPipeline}. Operations pending in the previous
+     * pipeline are committed first.
+     */
+    public void setCommitPipeline(long window, int maxOperations, int queueCapacity) {
+        EKBCommitPipeline old;
+        synchronized (this) {
+            old = commitPipeline;
+            commitPipeline = new EKBCommitPipeline(this, window, maxOperations, queueCapacity);
+        }
+        old.shutdown();
+    }
+
+    synchronized EKBCommitPipeline getCommitPipeline() {
+        return commitPipeline;
+    }
+
+    /**
+     * blocks until all contact operations done so far are committed to the EKB
+     */
+    public void flushCommits() {
+        getCommitPipeline().flush();
+    }
+
+    /**
+     * runs {@link #synchronize()} every given number of seconds in the background, so the EKB, the local index and the
+     * snapshot follow the changes made elsewhere. 0 stops the scheduled sync.
+     */
+    public synchronized void setSyncInterval(long seconds) {
+        stopScheduledSync();
+        if (seconds <= 0) {
+            return;
+        }
+        syncScheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("gcontacts-sync-"
+                + getInstanceId()));
+        syncScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    synchronize();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("scheduled sync of " + getInstanceId() + " failed, retrying in the next interval", e);
+                }
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized boolean isSyncScheduled() {
+        return syncScheduler != null;
+    }
+
+    private synchronized void stopScheduledSync() {
+        if (syncScheduler != null) {
+            syncScheduler.shutdownNow();
+            syncScheduler = null;
+        }
+    }
+
+    /**
+     * stops all background work of this connector instance. Pending EKB commits are delivered before.
+     */
+    public void shutdown() {
+        GcontactsAsyncService old;
+        synchronized (this) {
+            stopScheduledSync();
+            old = asyncService;
+            asyncService = null;
+        }
+        if (old != null) {
+            old.shutdown();
+        }
+        getCommitPipeline().shutdown();
+        ContactSnapshotStore snapshot = snapshotStore;
+        if (snapshot != null) {
+            snapshot.close();
+        }
+        metrics.unregister();
+        health.stop();
+    }
+
+    /**
+     * the metrics of this instance, published over JMX once {@link GcontactsMetrics#register} was called
+     */
+    public GcontactsMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * probes the connection to google every given number of seconds in the background, 0 disables the probe. While
+     * probing, calls fail fast if google is known to be unreachable.
+     */
+    public void setHealthCheckInterval(long seconds) {
+        health.start(seconds);
+    }
+
+    /**
+     * opens the circuit after the given number of consecutive outage failures for the given number of seconds, then
+     * lets the given number of trial requests through. 0 failures disables the breaker.
+     */
+    public void setCircuitBreaker(int failures, long openSeconds, int trialRequests) {
+        session.setCircuitBreaker(new CircuitBreaker(failures, openSeconds * 1000, trialRequests));
+    }
+
+    public HealthMonitor getHealthMonitor() {
+        return health;
+    }
+
+    public GcontactsSession getSession() {
+        return session;
     }
 
     public void setPersistInterface(PersistInterface persistInterface) {
@@ -17,6 +17,9 @@
 
 package org.openengsb.connector.gcontacts.internal;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.openengsb.core.api.Connector;
@@ -25,12 +28,30 @@ import org.openengsb.core.common.AbstractConnectorInstanceFactory;
 
 public class GcontactsServiceInstanceFactory extends AbstractConnectorInstanceFactory<GcontactsServiceImpl> {
 
+    /** requests per second per google account */
+    private static final double DEFAULT_RATE_LIMIT = 10;
+
     private PersistInterface persistInterface;
-    
+    /** the live instance per connector id, shut down when the id is created again or the factory is destroyed */
+    private final Map<String, GcontactsServiceImpl> instances = new HashMap<String, GcontactsServiceImpl>();
+
+    /**
+     * creates the instance with the given id. An instance created before with the same id is shut down, as the
+     * OpenEngSB creates a new one when a connector is removed and added again.
+     */
     @Override
     public Connector createNewInstance(String id) {
         GcontactsServiceImpl service = new GcontactsServiceImpl(id);
         service.setPersistInterface(persistInterface);
+        service.setRateLimit(DEFAULT_RATE_LIMIT, DEFAULT_RATE_LIMIT);
+        GcontactsServiceImpl previous;
+        synchronized (instances) {
+            previous = instances.put(id, service);
+        }
+        if (previous != null) {
+            previous.shutdown();
+        }
+        service.getMetrics().register(id);
         return service;
     }
 
@@ -38,8 +59,123 @@ public class GcontactsServiceInstanceFactory extends AbstractConnectorInstanceFa
     public void doApplyAttributes(GcontactsServiceImpl instance, Map<String, String> attributes) {
         instance.setGoogleUser(attributes.get("google.user"));
         instance.setGooglePassword(attributes.get("google.password"));
+        if (attributes.containsKey("connect.timeout") || attributes.containsKey("read.timeout")
+                || attributes.containsKey("gzip")) {
+            instance.setTransport(
+                parseInt(attributes, "connect.timeout", GcontactsSession.DEFAULT_CONNECT_TIMEOUT),
+                parseInt(attributes, "read.timeout", GcontactsSession.DEFAULT_READ_TIMEOUT),
+                !attributes.containsKey("gzip") || Boolean.parseBoolean(attributes.get("gzip")));
+        }
+        if (attributes.containsKey("batch.size")) {
+            instance.setBatchSize(Integer.parseInt(attributes.get("batch.size")));
+        }
+        if (attributes.containsKey("page.size")) {
+            instance.setPageSize(Integer.parseInt(attributes.get("page.size")));
+        }
+        if (attributes.containsKey("storage.directory")) {
+            instance.setStorageDirectory(attributes.get("storage.directory"));
+        }
+        if (attributes.containsKey("cache.size")) {
+            instance.setCacheSize(Integer.parseInt(attributes.get("cache.size")));
+        }
+        if (attributes.containsKey("cache.ttl")) {
+            instance.setCacheTimeToLive(Long.parseLong(attributes.get("cache.ttl")));
+        }
+        if (attributes.containsKey("conditional.writes")) {
+            instance.setConditionalWrites(Boolean.parseBoolean(attributes.get("conditional.writes")));
+        }
+        if (attributes.containsKey("partial.updates")) {
+            instance.setPartialUpdates(Boolean.parseBoolean(attributes.get("partial.updates")));
+        }
+        if (attributes.containsKey("sync.parallelism")) {
+            instance.setSyncParallelism(parseInt(attributes, "sync.parallelism", 1));
+        }
+        if (attributes.containsKey("sync.interval")) {
+            instance.setSyncInterval(parseLong(attributes, "sync.interval", 0));
+        }
+        if (attributes.containsKey("streaming.decoder")) {
+            instance.setStreamingDecoder(Boolean.parseBoolean(attributes.get("streaming.decoder")));
+        }
+        if (attributes.containsKey("index.enabled")) {
+            instance.setIndexEnabled(Boolean.parseBoolean(attributes.get("index.enabled")));
+        }
+        if (attributes.containsKey("async.threads") || attributes.containsKey("async.queue")
+                || attributes.containsKey("async.timeout")) {
+            instance.setAsyncLimits(
+                parseInt(attributes, "async.threads", GcontactsAsyncService.DEFAULT_MAX_CONCURRENT),
+                parseInt(attributes, "async.queue", GcontactsAsyncService.DEFAULT_QUEUE_CAPACITY),
+                parseInt(attributes, "async.timeout", 0));
+        }
+        if (attributes.containsKey("rate.limit") || attributes.containsKey("rate.burst")) {
+            double rate = parseDouble(attributes, "rate.limit", DEFAULT_RATE_LIMIT);
+            instance.setRateLimit(rate, parseDouble(attributes, "rate.burst", rate));
+        }
+        if (attributes.containsKey("retry.max") || attributes.containsKey("retry.backoff")
+                || attributes.containsKey("retry.backoff.max")) {
+            instance.setRetryPolicy(parseInt(attributes, "retry.max", RetryPolicy.DEFAULT_MAX_RETRIES),
+                parseLong(attributes, "retry.backoff", RetryPolicy.DEFAULT_INITIAL_BACKOFF),
+                parseLong(attributes, "retry.backoff.max", RetryPolicy.DEFAULT_MAX_BACKOFF));
+        }
+        if (attributes.containsKey("commit.window") || attributes.containsKey("commit.max")
+                || attributes.containsKey("commit.queue")) {
+            instance.setCommitPipeline(parseLong(attributes, "commit.window", EKBCommitPipeline.DEFAULT_WINDOW),
+                parseInt(attributes, "commit.max", EKBCommitPipeline.DEFAULT_MAX_OPERATIONS),
+                parseInt(attributes, "commit.queue", EKBCommitPipeline.DEFAULT_QUEUE_CAPACITY));
+        }
+        if (attributes.containsKey("health.interval")) {
+            instance.setHealthCheckInterval(parseLong(attributes, "health.interval", HealthMonitor.DEFAULT_INTERVAL));
+        }
+        if (attributes.containsKey("breaker.failures") || attributes.containsKey("breaker.open")
+                || attributes.containsKey("breaker.trials")) {
+            instance.setCircuitBreaker(
+                parseInt(attributes, "breaker.failures", CircuitBreaker.DEFAULT_FAILURE_THRESHOLD),
+                parseLong(attributes, "breaker.open", CircuitBreaker.DEFAULT_OPEN_DURATION / 1000),
+                parseInt(attributes, "breaker.trials", CircuitBreaker.DEFAULT_TRIAL_REQUESTS));
+        }
+        // last, so the snapshot is read into the configured directory, cache and index
+        if (attributes.containsKey("snapshot.enabled")) {
+            instance.setSnapshotEnabled(Boolean.parseBoolean(attributes.get("snapshot.enabled")));
+        }
+    }
+
+    private static long parseLong(Map<String, String> attributes, String key, long defaultValue) {
+        String value = attributes.get(key);
+        return value == null ? defaultValue : Long.parseLong(value);
     }
-    
+
+    private static double parseDouble(Map<String, String> attributes, String key, double defaultValue) {
+        String value = attributes.get(key);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    private static int parseInt(Map<String, String> attributes, String key, int defaultValue) {
+        String value = attributes.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * stops the background work of all connector instances created by this factory and unregisters their MBeans
+     */
+    public void destroy() {
+        List<GcontactsServiceImpl> removed;
+        synchronized (instances) {
+            removed = new ArrayList<GcontactsServiceImpl>(instances.values());
+            instances.clear();
+        }
+        for (GcontactsServiceImpl instance : removed) {
+            instance.shutdown();
+        }
+    }
+
+    /**
+     * the instance created last with the given id, null if there is none
+     */
+    GcontactsServiceImpl getInstance(String id) {
+        synchronized (instances) {
+            return instances.get(id);
+        }
+    }
+
     public void setPersistInterface(PersistInterface persistInterface) {
         this.persistInterface = persistInterface;
     }
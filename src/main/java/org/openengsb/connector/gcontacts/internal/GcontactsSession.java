@@ -0,0 +1,429 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openengsb.core.api.DomainMethodExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gdata.client.contacts.ContactsService;
+import com.google.gdata.client.http.HttpGDataRequest;
+import com.google.gdata.client.http.JdkHttpUrlConnectionSource;
+import com.google.gdata.util.AuthenticationException;
+import com.google.gdata.util.NotModifiedException;
+import com.google.gdata.util.ServiceException;
+
+/**
+ * keeps one authenticated contacts service per connector instance. The service is created lazily on first use,
+ * shared between all threads and only authenticated again if the token is older than the configured lifetime, the
+ * credentials change or google rejects the token with a 401.
+ */
+public class GcontactsSession {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GcontactsSession.class);
+
+    public static final String APPLICATION_NAME = "OPENENGSB";
+    /** ClientLogin tokens are valid for about two weeks, refresh them well before */
+    public static final long DEFAULT_TOKEN_LIFETIME = 24L * 60 * 60 * 1000;
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10 * 1000;
+    public static final int DEFAULT_READ_TIMEOUT = 30 * 1000;
+
+    private final String protocol;
+    private final String domainName;
+
+    private final Object lock = new Object();
+    private final AtomicInteger authenticationCount = new AtomicInteger();
+
+    private volatile ContactsService service;
+    private volatile long authenticatedAt;
+    private volatile long tokenLifetime = DEFAULT_TOKEN_LIFETIME;
+
+    private String user;
+    private String password;
+
+    private double permitsPerSecond;
+    private double burst;
+    private volatile TokenBucket rateLimiter;
+    private volatile RetryPolicy retryPolicy = new RetryPolicy();
+    private volatile CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private int readTimeout = DEFAULT_READ_TIMEOUT;
+    private boolean gzip = true;
+    private volatile GcontactsMetrics metrics;
+    private volatile HealthMonitor healthMonitor;
+
+    public GcontactsSession() {
+        this(null, null);
+    }
+
+    /**
+     * creates a session authenticating against the given ClientLogin host, e.g. "https" and "www.google.com". If both
+     * are null the defaults of the google client are used.
+     */
+    public GcontactsSession(String protocol, String domainName) {
+        this.protocol = protocol;
+        this.domainName = domainName;
+    }
+
+    /**
+     * returns the shared authenticated service, authenticating first if there is no valid token
+     */
+    public ContactsService getService() {
+        ContactsService current = service;
+        if (current != null && !isExpired()) {
+            return current;
+        }
+        synchronized (lock) {
+            if (service == null || isExpired()) {
+                service = authenticate();
+            }
+            return service;
+        }
+    }
+
+    /**
+     * executes the call with the shared service. Every attempt first takes a token of the rate limiter of the account
+     * and is rejected with a {@link CircuitOpenException} while the circuit breaker is open. If google throttles the
+     * request it is repeated as decided by the retry policy.
+     */
+    public <T> T execute(ServiceCall<T> call) throws IOException, ServiceException {
+        int retries = 0;
+        while (true) {
+            acquireRateLimit();
+            CircuitBreaker breaker = circuitBreaker;
+            if (!breaker.allowRequest()) {
+                throw new CircuitOpenException("google is failing, requests are rejected until the circuit closes");
+            }
+            try {
+                T result = executeAuthenticated(call);
+                breaker.onSuccess();
+                return result;
+            } catch (NotModifiedException e) {
+                breaker.onSuccess();
+                throw e;
+            } catch (IOException e) {
+                breaker.onFailure();
+                throw e;
+            } catch (RuntimeException e) {
+                // a failed login is thrown as DomainMethodExecutionException
+                breaker.onError(e);
+                throw e;
+            } catch (ServiceException e) {
+                breaker.onError(e);
+                RetryPolicy policy = retryPolicy;
+                if (!policy.shouldRetry(e, retries)) {
+                    throw e;
+                }
+                long delay = policy.getDelay(e, retries);
+                retries++;
+                LOGGER.info("google throttled the request, retry {} in {} ms", retries, delay);
+                sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * executes the call once. If google answers with an authentication error the token is discarded and the call is
+     * repeated once with a freshly authenticated service.
+     */
+    private <T> T executeAuthenticated(ServiceCall<T> call) throws IOException, ServiceException {
+        ContactsService current = getService();
+        try {
+            return executeCounted(call, current);
+        } catch (AuthenticationException e) {
+            LOGGER.debug("token rejected by google, authenticating again", e);
+            invalidate(current);
+            return executeCounted(call, getService());
+        }
+    }
+
+    /**
+     * executes the call once, counting the request and its error in the metrics and reporting its outcome to the
+     * health monitor
+     */
+    private <T> T executeCounted(ServiceCall<T> call, ContactsService current) throws IOException, ServiceException {
+        GcontactsMetrics counter = metrics;
+        if (counter != null) {
+            counter.recordRequest();
+        }
+        try {
+            T result = call.call(current);
+            succeeded();
+            return result;
+        } catch (NotModifiedException e) {
+            // an answer to a conditional request, not an error
+            succeeded();
+            throw e;
+        } catch (ServiceException e) {
+            failed(e);
+            throw e;
+        } catch (IOException e) {
+            failed(e);
+            throw e;
+        }
+    }
+
+    private void succeeded() {
+        HealthMonitor monitor = healthMonitor;
+        if (monitor != null) {
+            monitor.requestSucceeded();
+        }
+    }
+
+    private void failed(Exception error) {
+        GcontactsMetrics counter = metrics;
+        if (counter != null) {
+            counter.recordError(error);
+        }
+        HealthMonitor monitor = healthMonitor;
+        // a rejected token is handled by logging in again, only a failed login changes the state
+        if (monitor != null && !(error instanceof AuthenticationException)) {
+            monitor.requestFailed(error);
+        }
+    }
+
+    private void acquireRateLimit() throws InterruptedIOException {
+        TokenBucket bucket = rateLimiter;
+        if (bucket == null) {
+            return;
+        }
+        try {
+            bucket.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the rate limit");
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting to retry the request");
+        }
+    }
+
+    /**
+     * discards the given service if it is still the current one, so the next call authenticates again
+     */
+    public void invalidate(ContactsService stale) {
+        synchronized (lock) {
+            if (service == stale) {
+                service = null;
+            }
+        }
+    }
+
+    public void setCredentials(String user, String password) {
+        synchronized (lock) {
+            this.user = user;
+            this.password = password;
+            service = null;
+            bindRateLimiter();
+            HealthMonitor monitor = healthMonitor;
+            if (monitor != null && user != null) {
+                monitor.connecting();
+            }
+        }
+    }
+
+    /**
+     * limits the requests of the account to the given rate with the given burst size, a rate of 0 disables the limit
+     */
+    public void setRateLimit(double permitsPerSecond, double burst) {
+        synchronized (lock) {
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+            bindRateLimiter();
+        }
+    }
+
+    public double getRateLimit() {
+        synchronized (lock) {
+            return permitsPerSecond;
+        }
+    }
+
+    private void bindRateLimiter() {
+        if (permitsPerSecond > 0) {
+            rateLimiter = TokenBucket.forAccount(user, permitsPerSecond, burst);
+        } else {
+            rateLimiter = null;
+        }
+    }
+
+    /**
+     * sets the timeouts in milliseconds for connecting to google and for waiting on a response, 0 waits forever, and
+     * whether responses are requested gzip compressed. The settings apply to the current service right away.
+     */
+    public void setTransport(int connectTimeout, int readTimeout, boolean gzip) {
+        synchronized (lock) {
+            this.connectTimeout = connectTimeout;
+            this.readTimeout = readTimeout;
+            this.gzip = gzip;
+            if (service != null) {
+                configureTransport(service);
+            }
+        }
+    }
+
+    /**
+     * counts the requests, errors and transferred bytes of this session in the given metrics
+     */
+    public void setMetrics(GcontactsMetrics metrics) {
+        synchronized (lock) {
+            this.metrics = metrics;
+            if (service != null) {
+                configureTransport(service);
+            }
+        }
+    }
+
+    public GcontactsMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * reports the outcome of every request to the given health monitor
+     */
+    public void setHealthMonitor(HealthMonitor healthMonitor) {
+        this.healthMonitor = healthMonitor;
+    }
+
+    public int getConnectTimeout() {
+        synchronized (lock) {
+            return connectTimeout;
+        }
+    }
+
+    public int getReadTimeout() {
+        synchronized (lock) {
+            return readTimeout;
+        }
+    }
+
+    public boolean isGzip() {
+        synchronized (lock) {
+            return gzip;
+        }
+    }
+
+    /**
+     * applies the transport settings. Connections are reused by the keep-alive cache of HttpURLConnection, which the
+     * google client drains and closes properly after every response; its size is a setting of the whole JVM
+     * (http.maxConnections).
+     */
+    private void configureTransport(ContactsService target) {
+        target.setConnectTimeout(connectTimeout);
+        target.setReadTimeout(readTimeout);
+        // google only compresses responses for clients that announce gzip in their user agent as well
+        if (gzip) {
+            target.getRequestFactory().setHeader("Accept-Encoding", "gzip");
+            target.getRequestFactory().setHeader("User-Agent", APPLICATION_NAME + " GData-Java (gzip)");
+        } else {
+            target.getRequestFactory().setHeader("Accept-Encoding", "identity");
+            target.getRequestFactory().setHeader("User-Agent", APPLICATION_NAME + " GData-Java");
+        }
+        if (target.getRequestFactory() instanceof HttpGDataRequest.Factory) {
+            HttpGDataRequest.Factory factory = (HttpGDataRequest.Factory) target.getRequestFactory();
+            factory.setConnectionSource(metrics == null ? JdkHttpUrlConnectionSource.INSTANCE
+                : new CountingConnectionSource(metrics));
+        }
+    }
+
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public String getUser() {
+        synchronized (lock) {
+            return user;
+        }
+    }
+
+    public String getPassword() {
+        synchronized (lock) {
+            return password;
+        }
+    }
+
+    public void setTokenLifetime(long tokenLifetime) {
+        this.tokenLifetime = tokenLifetime;
+    }
+
+    public long getTokenLifetime() {
+        return tokenLifetime;
+    }
+
+    /**
+     * number of ClientLogin requests made by this session so far
+     */
+    public int getAuthenticationCount() {
+        return authenticationCount.get();
+    }
+
+    private boolean isExpired() {
+        return System.currentTimeMillis() - authenticatedAt >= tokenLifetime;
+    }
+
+    private ContactsService authenticate() {
+        ContactsService newService;
+        if (protocol == null && domainName == null) {
+            newService = new ContactsService(APPLICATION_NAME);
+        } else {
+            newService = new ContactsService(APPLICATION_NAME, protocol, domainName);
+        }
+        configureTransport(newService);
+        try {
+            authenticationCount.incrementAndGet();
+            newService.setUserCredentials(user, password);
+        } catch (AuthenticationException e) {
+            GcontactsMetrics counter = metrics;
+            if (counter != null) {
+                counter.recordError(e);
+            }
+            HealthMonitor monitor = healthMonitor;
+            if (monitor != null) {
+                monitor.requestFailed(e);
+            }
+            throw new DomainMethodExecutionException(
+                "unable to authenticate at google server, maybe wrong username and/or password?", e);
+        }
+        authenticatedAt = System.currentTimeMillis();
+        LOGGER.debug("authenticated google user {}", user);
+        return newService;
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openengsb.connector.gcontacts.internal.misc.DaemonThreadFactory;
+import org.openengsb.core.api.AliveState;
+import org.openengsb.core.api.DomainMethodExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gdata.client.contacts.ContactsService;
+import com.google.gdata.data.contacts.ContactFeed;
+import com.google.gdata.util.AuthenticationException;
+import com.google.gdata.util.ServiceException;
+
+/**
+ * keeps the connection state of one connector instance. The state is updated from the outcome of every request and
+ * from a cheap periodic probe, which asks google for the id of one contact, so reading it never blocks or sends a
+ * request.
+ * <ul>
+ * <li>DISCONNECTED: no credentials yet, or google rejected them</li>
+ * <li>CONNECTING: credentials changed, no request has completed since</li>
+ * <li>ONLINE: the last request reached google</li>
+ * <li>OFFLINE: the last request could not reach google or google failed with a server error</li>
+ * </ul>
+ * While the probe is running, calls fail fast if google is known to be offline or the credentials were rejected,
+ * until the next successful probe.
+ */
+public class HealthMonitor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HealthMonitor.class);
+
+    public static final long DEFAULT_INTERVAL = 60;
+
+    private final GcontactsSession session;
+    private final String feedUrl;
+
+    private volatile AliveState state = AliveState.DISCONNECTED;
+    private volatile boolean probing;
+    private ScheduledExecutorService scheduler;
+
+    public HealthMonitor(GcontactsSession session, String feedUrl) {
+        this.session = session;
+        this.feedUrl = feedUrl;
+    }
+
+    /**
+     * the current state, without contacting google
+     */
+    public AliveState getState() {
+        return state;
+    }
+
+    /**
+     * throws if the probe found google unreachable or the credentials rejected, so the call does not wait for a
+     * timeout or risk locking the account with more failed logins
+     */
+    public void checkAvailable() {
+        if (!probing) {
+            return;
+        }
+        AliveState current = state;
+        if (current == AliveState.OFFLINE) {
+            throw new DomainMethodExecutionException("google is not reachable, retry after the next health check");
+        }
+        if (current == AliveState.DISCONNECTED && session.getUser() != null) {
+            throw new DomainMethodExecutionException("google rejected the credentials, check username and password");
+        }
+    }
+
+    /**
+     * called when the credentials changed and have not been used yet
+     */
+    public void connecting() {
+        setState(AliveState.CONNECTING);
+    }
+
+    public void requestSucceeded() {
+        setState(AliveState.ONLINE);
+    }
+
+    /**
+     * updates the state from a failed request. Errors google answered with, apart from server errors, prove that it is
+     * reachable and leave the state online.
+     */
+    public void requestFailed(Throwable error) {
+        if (error instanceof AuthenticationException || error.getCause() instanceof AuthenticationException) {
+            setState(AliveState.DISCONNECTED);
+        } else if (error instanceof IOException) {
+            setState(AliveState.OFFLINE);
+        } else if (error instanceof ServiceException) {
+            ServiceException e = (ServiceException) error;
+            if (e.getHttpErrorCodeOverride() >= 500 && !RetryPolicy.isThrottled(e)) {
+                setState(AliveState.OFFLINE);
+            } else {
+                setState(AliveState.ONLINE);
+            }
+        }
+    }
+
+    private void setState(AliveState next) {
+        AliveState previous = state;
+        state = next;
+        if (previous != next) {
+            LOGGER.info("google account {} is {}", session.getUser(), next);
+        }
+    }
+
+    /**
+     * probes google every given number of seconds, 0 stops probing
+     */
+    public synchronized void start(long intervalSeconds) {
+        stop();
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("gcontacts-health"));
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                probe();
+            }
+        }, 0, intervalSeconds, TimeUnit.SECONDS);
+        probing = true;
+    }
+
+    public synchronized void stop() {
+        probing = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public boolean isProbing() {
+        return probing;
+    }
+
+    /**
+     * sends one probe request. Its outcome is recorded by the session like that of every other request.
+     */
+    public void probe() {
+        if (session.getUser() == null) {
+            return;
+        }
+        try {
+            final URL probeUrl = new URL(feedUrl + "?max-results=1&fields=entry(id)");
+            session.execute(new ServiceCall<ContactFeed>() {
+                @Override
+                public ContactFeed call(ContactsService service) throws IOException, ServiceException {
+                    return service.getFeed(probeUrl, ContactFeed.class);
+                }
+            });
+        } catch (MalformedURLException e) {
+            LOGGER.error("invalid feed URL {}", feedUrl);
+        } catch (IOException e) {
+            LOGGER.debug("health probe failed", e);
+        } catch (ServiceException e) {
+            LOGGER.debug("health probe failed", e);
+        } catch (RuntimeException e) {
+            LOGGER.debug("health probe failed", e);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+/**
+ * summary of one import of a contact file
+ */
+public final class ImportResult {
+
+    private final int resumedAt;
+    private final int created;
+    private final int failed;
+
+    public ImportResult(int resumedAt, int created, int failed) {
+        this.resumedAt = resumedAt;
+        this.created = created;
+        this.failed = failed;
+    }
+
+    /**
+     * number of contacts at the start of the file that an earlier, interrupted import had already processed
+     */
+    public int getResumedAt() {
+        return resumedAt;
+    }
+
+    /**
+     * number of contacts created by the whole import, including the interrupted runs
+     */
+    public int getCreated() {
+        return created;
+    }
+
+    /**
+     * number of contacts google rejected, see the log for the reasons
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportResult [resumedAt=" + resumedAt + ", created=" + created + ", failed=" + failed + "]";
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * snapshot of the statistics of one operation, latencies in milliseconds
+ */
+public final class OperationStatistics {
+
+    private final String name;
+    private final long count;
+    private final long errors;
+    private final long coalesced;
+    private final double p50;
+    private final double p99;
+    private final double max;
+
+    @ConstructorProperties({ "name", "count", "errors", "coalesced", "p50", "p99", "max" })
+    public OperationStatistics(String name, long count, long errors, long coalesced, double p50, double p99,
+            double max) {
+        this.name = name;
+        this.count = count;
+        this.errors = errors;
+        this.coalesced = coalesced;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * number of calls that shared the google request of an identical concurrent call instead of sending their own
+     */
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "OperationStatistics [name=" + name + ", count=" + count + ", errors=" + errors + ", coalesced="
+                + coalesced + ", p50=" + p50 + ", p99=" + p99 + ", max=" + max + "]";
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.net.HttpURLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.gdata.util.ServiceException;
+
+/**
+ * decides which failed requests are worth repeating and how long to wait before. Only answers telling that google
+ * did not process the request are retried: 503, 429 and quota errors. The delay grows exponentially with a random
+ * jitter, so throttled clients do not retry in lockstep, and a Retry-After header sent by google is always honoured.
+ */
+public class RetryPolicy {
+
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_INITIAL_BACKOFF = 500;
+    public static final long DEFAULT_MAX_BACKOFF = 30 * 1000;
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final int maxRetries;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final Random random = new Random();
+
+    public RetryPolicy() {
+        this(DEFAULT_MAX_RETRIES, DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF);
+    }
+
+    public RetryPolicy(int maxRetries, long initialBackoff, long maxBackoff) {
+        this.maxRetries = maxRetries;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * returns true if the request failing with the given exception should be sent again after the given number of
+     * retries already done
+     */
+    public boolean shouldRetry(ServiceException e, int retries) {
+        return retries < maxRetries && isThrottled(e);
+    }
+
+    /**
+     * returns the milliseconds to wait before the next retry
+     */
+    public long getDelay(ServiceException e, int retries) {
+        long backoff = Math.min(maxBackoff, initialBackoff << Math.min(retries, 30));
+        // equal jitter: wait at least half the backoff, the rest is random
+        long delay = backoff / 2 + (long) (random.nextDouble() * (backoff / 2 + 1));
+        long retryAfter = getRetryAfter(e);
+        return Math.max(delay, retryAfter);
+    }
+
+    /**
+     * returns true if google rejected the request because of load or quota
+     */
+    public static boolean isThrottled(ServiceException e) {
+        int code = e.getHttpErrorCodeOverride();
+        if (code == HttpURLConnection.HTTP_UNAVAILABLE || code == TOO_MANY_REQUESTS) {
+            return true;
+        }
+        if (code == HttpURLConnection.HTTP_FORBIDDEN) {
+            return mentionsQuota(e.getMessage()) || mentionsQuota(e.getResponseBody());
+        }
+        return false;
+    }
+
+    private static boolean mentionsQuota(String text) {
+        if (text == null) {
+            return false;
+        }
+        String lower = text.toLowerCase(Locale.ENGLISH);
+        return lower.contains("quota") || lower.contains("rate limit") || lower.contains("ratelimit");
+    }
+
+    /**
+     * returns the delay requested by the Retry-After header in milliseconds, 0 if there is none
+     */
+    static long getRetryAfter(ServiceException e) {
+        Map<String, List<String>> headers = e.getHttpHeaders();
+        if (headers == null) {
+            return 0;
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if ("Retry-After".equalsIgnoreCase(header.getKey()) && header.getValue() != null
+                    && !header.getValue().isEmpty()) {
+                return parseRetryAfter(header.getValue().get(0).trim());
+            }
+        }
+        return 0;
+    }
+
+    static long parseRetryAfter(String value) {
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // not delta seconds, so it must be an http date
+        }
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            return Math.max(0, format.parse(value).getTime() - System.currentTimeMillis());
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.openengsb.connector.gcontacts.internal.misc.DaemonThreadFactory;
+import org.openengsb.core.api.DomainMethodExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gdata.client.contacts.ContactQuery;
+import com.google.gdata.client.contacts.ContactsService;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.contacts.ContactFeed;
+import com.google.gdata.util.ServiceException;
+
+/**
+ * reads all entries of the contacts feed with several concurrent requests. The first page is read alone and tells
+ * the total number of contacts, then the start-index ranges of the remaining pages are requested by a pool of
+ * threads, at most parallelism pages ahead of the consumer. The feed is ordered by last modification, so contacts
+ * changed while it is read move to its end. Every page overlaps the previous one by a few entries to make up for
+ * such shifts, and entries already handed out are skipped, so the entries come out in feed order without duplicates.
+ * If more contacts moved than the pages overlap, fewer entries than the total are found; then the feed is read again
+ * page after page and the missing entries are handed out at the end. Contacts changed during the read are picked up
+ * by the next incremental sync, which starts from {@link #getFeedUpdated()}.
+ */
+public class ShardedFeedReader implements Iterator<ContactEntry>, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardedFeedReader.class);
+
+    static final int PAGE_OVERLAP = 10;
+
+    private final GcontactsSession session;
+    private final String feedUrl;
+    private final int pageSize;
+    private final int parallelism;
+
+    private final Set<String> seen = new HashSet<String>();
+    private final Deque<Future<List<ContactEntry>>> pending = new ArrayDeque<Future<List<ContactEntry>>>();
+    private ExecutorService executor;
+    private boolean started;
+    private boolean exhausted;
+    private int nextStartIndex;
+    private int totalResults;
+    private DateTime feedUpdated;
+    private ContactFeedIterator reread;
+
+    private List<ContactEntry> page;
+    private int position;
+    private ContactEntry next;
+
+    public ShardedFeedReader(GcontactsSession session, String feedUrl, int pageSize, int parallelism) {
+        this.session = session;
+        this.feedUrl = feedUrl;
+        this.pageSize = pageSize;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null) {
+            if (page != null && position < page.size()) {
+                ContactEntry entry = page.get(position);
+                page.set(position++, null);
+                if (seen.add(entry.getId())) {
+                    next = entry;
+                }
+            } else if (reread != null) {
+                if (!reread.hasNext()) {
+                    return false;
+                }
+                ContactEntry entry = reread.next();
+                if (seen.add(entry.getId())) {
+                    next = entry;
+                }
+            } else if (!fetchNextPage()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public ContactEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ContactEntry entry = next;
+        next = null;
+        return entry;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("contacts cannot be removed while iterating the feed");
+    }
+
+    private boolean fetchNextPage() {
+        if (!started) {
+            started = true;
+            ContactFeed first = fetch(1, pageSize);
+            // without a total the pages are requested until one is not full
+            totalResults = first.getTotalResults() >= 0 ? first.getTotalResults() : Integer.MAX_VALUE;
+            exhausted = first.getEntries().size() < pageSize && totalResults == Integer.MAX_VALUE;
+            feedUpdated = first.getUpdated();
+            nextStartIndex = 1 + pageSize;
+            page = first.getEntries();
+            position = 0;
+            if (!exhausted && nextStartIndex <= totalResults) {
+                executor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("gcontacts-sync"));
+            }
+            return true;
+        }
+        submitPages();
+        Future<List<ContactEntry>> shard = pending.poll();
+        page = null;
+        if (shard == null) {
+            if (totalResults == Integer.MAX_VALUE || seen.size() >= totalResults) {
+                return false;
+            }
+            LOGGER.info("found {} of {} contacts, more moved during the read than the pages overlap, reading them "
+                    + "again", seen.size(), totalResults);
+            reread = new ContactFeedIterator(session, createQuery(1, pageSize));
+            return true;
+        }
+        page = await(shard);
+        position = 0;
+        if (page.size() < pageSize && totalResults == Integer.MAX_VALUE) {
+            exhausted = true;
+        }
+        return true;
+    }
+
+    /**
+     * keeps parallelism pages in flight until every start index up to the total was requested
+     */
+    private void submitPages() {
+        while (executor != null && !exhausted && pending.size() < parallelism && nextStartIndex <= totalResults) {
+            // start a few entries early to catch entries that moved to the previous page in the meantime
+            final int startIndex = Math.max(1, nextStartIndex - PAGE_OVERLAP);
+            final int maxResults = nextStartIndex + pageSize - startIndex;
+            pending.add(executor.submit(new Callable<List<ContactEntry>>() {
+                @Override
+                public List<ContactEntry> call() {
+                    return fetch(startIndex, maxResults).getEntries();
+                }
+            }));
+            nextStartIndex += pageSize;
+        }
+    }
+
+    private static List<ContactEntry> await(Future<List<ContactEntry>> shard) {
+        try {
+            return shard.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DomainMethodExecutionException("interrupted while reading the contacts", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new DomainMethodExecutionException("unable to retrieve contacts", e.getCause());
+        }
+    }
+
+    private ContactQuery createQuery(int startIndex, int maxResults) {
+        try {
+            ContactQuery query = new ContactQuery(new URL(feedUrl));
+            query.setStartIndex(startIndex);
+            query.setMaxResults(maxResults);
+            query.setOrderBy(ContactQuery.OrderBy.LAST_MODIFIED);
+            query.setSortOrder(ContactQuery.SortOrder.ASCENDING);
+            return query;
+        } catch (MalformedURLException e) {
+            // should never be thrown since the URL is static
+            throw new DomainMethodExecutionException("invalid URL", e);
+        }
+    }
+
+    private ContactFeed fetch(int startIndex, int maxResults) {
+        final ContactQuery query = createQuery(startIndex, maxResults);
+        try {
+            return session.execute(new ServiceCall<ContactFeed>() {
+                @Override
+                public ContactFeed call(ContactsService service) throws IOException, ServiceException {
+                    return service.query(query, ContactFeed.class);
+                }
+            });
+        } catch (IOException e) {
+            throw new DomainMethodExecutionException("unable to connect to the google server", e);
+        } catch (ServiceException e) {
+            throw new DomainMethodExecutionException("unable to retrieve contacts", e);
+        }
+    }
+
+    /**
+     * the time google reported for the feed when its first page was read, null before that
+     */
+    public DateTime getFeedUpdated() {
+        return feedUpdated;
+    }
+
+    /**
+     * stops the threads, pages still being read are discarded
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        pending.clear();
+    }
+}
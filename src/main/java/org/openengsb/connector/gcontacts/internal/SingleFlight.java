@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openengsb.core.api.DomainMethodExecutionException;
+
+/**
+ * coalesces concurrent identical reads. The first caller for a key executes the call, callers asking for the same key
+ * while it is running wait for it and get the same result or exception. Once the call is finished the key is
+ * forgotten, so a later caller always gets a fresh result. The shared result must not be modified by the callers.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<K, FutureTask<V>>();
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public V execute(K key, Callable<V> call) {
+        FutureTask<V> task = new FutureTask<V>(call);
+        FutureTask<V> running = inFlight.putIfAbsent(key, task);
+        if (running == null) {
+            executions.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+            running = task;
+        } else {
+            coalesced.incrementAndGet();
+        }
+        return await(running);
+    }
+
+    private static <V> V await(FutureTask<V> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DomainMethodExecutionException("interrupted while waiting for a running request", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new DomainMethodExecutionException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * number of calls that were actually executed
+     */
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    /**
+     * number of callers that got the result of a call already running for the same key
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public void reset() {
+        executions.set(0);
+        coalesced.set(0);
+    }
+}
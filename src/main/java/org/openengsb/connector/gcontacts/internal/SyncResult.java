@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import com.google.gdata.data.DateTime;
+
+/**
+ * summary of one synchronization of the address book into the EKB
+ */
+public final class SyncResult {
+
+    private final boolean fullSync;
+    private final int inserted;
+    private final int updated;
+    private final int deleted;
+    private final DateTime watermark;
+
+    public SyncResult(boolean fullSync, int inserted, int updated, int deleted, DateTime watermark) {
+        this.fullSync = fullSync;
+        this.inserted = inserted;
+        this.updated = updated;
+        this.deleted = deleted;
+        this.watermark = watermark;
+    }
+
+    /**
+     * true if the whole address book was read because there was no usable watermark
+     */
+    public boolean isFullSync() {
+        return fullSync;
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public int getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * the watermark the next incremental sync starts from
+     */
+    public DateTime getWatermark() {
+        return watermark;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncResult [fullSync=" + fullSync + ", inserted=" + inserted + ", updated=" + updated + ", deleted="
+                + deleted + ", watermark=" + watermark + "]";
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.openengsb.core.api.DomainMethodExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gdata.data.DateTime;
+
+/**
+ * stores the point in time up to which the address book has been synchronized into the EKB, so an incremental sync
+ * can continue from there after the connector is restarted
+ */
+public class SyncWatermarkStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SyncWatermarkStore.class);
+    private static final String KEY = "updated-min";
+
+    private final File file;
+
+    public SyncWatermarkStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * returns the stored watermark or null if the address book has never been synchronized
+     */
+    public synchronized DateTime load() {
+        if (!file.exists()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            properties.load(in);
+        } catch (IOException e) {
+            LOGGER.warn("unable to read sync watermark from {}, doing a full sync", file);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+        String value = properties.getProperty(KEY);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return DateTime.parseDateTime(value);
+        } catch (NumberFormatException e) {
+            LOGGER.warn("invalid sync watermark {} in {}, doing a full sync", value, file);
+            return null;
+        }
+    }
+
+    /**
+     * stores the watermark. The file is written next to the old one and renamed afterwards, so a crash never leaves a
+     * half written watermark behind.
+     */
+    public synchronized void store(DateTime watermark) {
+        Properties properties = new Properties();
+        properties.setProperty(KEY, watermark.toString());
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new DomainMethodExecutionException("unable to create directory " + parent);
+        }
+        File temp = new File(parent, file.getName() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            properties.store(out, "gcontacts sync watermark");
+        } catch (IOException e) {
+            throw new DomainMethodExecutionException("unable to write sync watermark to " + temp, e);
+        } finally {
+            closeQuietly(out);
+        }
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            throw new DomainMethodExecutionException("unable to replace sync watermark " + file);
+        }
+    }
+
+    /**
+     * forgets the watermark, so the next sync reads the whole address book
+     */
+    public synchronized void clear() {
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("unable to delete sync watermark {}", file);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOGGER.debug("unable to close stream", e);
+        }
+    }
+}
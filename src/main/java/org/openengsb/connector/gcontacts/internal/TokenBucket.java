@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * token bucket limiting the requests sent for one google account. Tokens are refilled continuously at the configured
+ * rate up to the burst size; every request takes one token and waits if none is left. All connector instances using
+ * the same account share one bucket, since google counts the quota per user.
+ */
+public final class TokenBucket {
+
+    private static final ConcurrentMap<String, TokenBucket> ACCOUNTS = new ConcurrentHashMap<String, TokenBucket>();
+
+    private double permitsPerSecond;
+    private double capacity;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    public TokenBucket(double permitsPerSecond, double capacity) {
+        setRate(permitsPerSecond, capacity);
+        tokens = this.capacity;
+    }
+
+    /**
+     * returns the shared bucket of the account, creating it if necessary, and applies the given rate to it
+     */
+    public static TokenBucket forAccount(String account, double permitsPerSecond, double capacity) {
+        String key = account == null ? "" : account;
+        TokenBucket bucket = ACCOUNTS.get(key);
+        if (bucket == null) {
+            TokenBucket created = new TokenBucket(permitsPerSecond, capacity);
+            bucket = ACCOUNTS.putIfAbsent(key, created);
+            if (bucket == null) {
+                return created;
+            }
+        }
+        bucket.setRate(permitsPerSecond, capacity);
+        return bucket;
+    }
+
+    /**
+     * waits until a token is available and takes it
+     */
+    public void acquire() throws InterruptedException {
+        long wait;
+        while ((wait = reserve()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * takes a token if one is available and returns 0, otherwise returns the nanoseconds until the next token
+     */
+    private synchronized long reserve() {
+        if (permitsPerSecond <= 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) ((1 - tokens) / permitsPerSecond * TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    /**
+     * sets the sustained rate and the burst size. A rate of 0 or less disables the limit.
+     */
+    public synchronized void setRate(double permitsPerSecond, double capacity) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = Math.max(1, capacity);
+        tokens = Math.min(tokens, this.capacity);
+    }
+
+    public synchronized double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+}
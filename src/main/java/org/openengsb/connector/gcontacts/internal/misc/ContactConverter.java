@@ -18,11 +18,12 @@
 package org.openengsb.connector.gcontacts.internal.misc;
 
 import java.text.DateFormat;
-import java.text.Format;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
 import java.util.TimeZone;
 
 import org.openengsb.domain.contact.Contact;
@@ -55,6 +56,16 @@ import com.google.gdata.data.extensions.When;
 public final class ContactConverter {
 
     private static Logger LOGGER = LoggerFactory.getLogger(ContactConverter.class);
+
+    static final String BIRTHDAY = "birthday";
+
+    /** SimpleDateFormat is not thread-safe, so every thread reuses its own instance instead of creating one per date */
+    private static final ThreadLocal<DateFormat> BIRTHDAY_FORMAT = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd");
+        }
+    };
     
     private ContactConverter() {
     }
@@ -108,22 +119,22 @@ public final class ContactConverter {
 
         entry.getEvents().clear();
         entry.setBirthday(null);
-        if (contact.getDates() != null) {
+        if (contact.getDates() != null && !contact.getDates().isEmpty()) {
+            // TimeZone.getDefault() returns a new clone on every call
+            TimeZone timeZone = TimeZone.getDefault();
             for (InformationTypeWithValue<Date> date : contact.getDates()) {
-                if (date.getKey().matches(".*birthday.*")) {
+                if (isBirthday(date.getKey())) {
                     Birthday birth = new Birthday();
-                    Format formatter = new SimpleDateFormat("yyyy-MM-dd");
-                    birth.setWhen(formatter.format(date.getValue()));
+                    birth.setWhen(formatBirthday(date.getValue()));
                     entry.setBirthday(birth);
                 } else {
                     Event ev = new Event();
-                    DateTime startTime = new DateTime(date.getValue(), TimeZone.getDefault());
-                    startTime.setDateOnly(true);
-                    DateTime endTime = new DateTime(date.getValue(), TimeZone.getDefault());
-                    endTime.setDateOnly(true);
+                    // events are single days, so start and end share one instance that is never modified afterwards
+                    DateTime day = new DateTime(date.getValue(), timeZone);
+                    day.setDateOnly(true);
                     When w = new When();
-                    w.setStartTime(startTime);
-                    w.setEndTime(endTime);
+                    w.setStartTime(day);
+                    w.setEndTime(day);
                     ev.setWhen(w);
                     ev.setLabel(date.getKey());
                     entry.addEvent(ev);
@@ -174,93 +185,124 @@ public final class ContactConverter {
         return entry;
     }
 
+    /**
+     * returns true if a date with the given key is stored as the birthday of the contact
+     */
+    public static boolean isBirthday(String key) {
+        return key != null && key.contains(BIRTHDAY);
+    }
+
+    /**
+     * formats a birthday the way google stores it
+     */
+    public static String formatBirthday(Date date) {
+        return BIRTHDAY_FORMAT.get().format(date);
+    }
+
+    /**
+     * parses a birthday as google stores it
+     */
+    public static Date parseBirthday(String when) throws ParseException {
+        return BIRTHDAY_FORMAT.get().parse(when);
+    }
+
     /**
      * converts a contact entry of google api to a contact object of contact domain
      */
     public static Contact convertContactEntryToContact(ContactEntry entry) {
+        return convertContactEntryToContact(entry, ContactProjection.ALL);
+    }
+
+    /**
+     * converts only the given fields of a contact entry, e.g. of an entry read with a partial response. Fields that
+     * are not selected stay null in the returned contact.
+     */
+    public static Contact convertContactEntryToContact(ContactEntry entry, Set<ContactField> fields) {
         Contact contact = new Contact();
 
         contact.setId(entry.getId());
-        contact.setComment(entry.getPlainTextContent());
+        if (fields.contains(ContactField.COMMENT)) {
+            contact.setComment(entry.getPlainTextContent());
+        }
 
-        ArrayList<InformationTypeWithValue<String>> mails = new ArrayList<InformationTypeWithValue<String>>();
+        if (fields.contains(ContactField.MAILS)) {
+            List<Email> emails = entry.getEmailAddresses();
+            ArrayList<InformationTypeWithValue<String>> mails =
+                new ArrayList<InformationTypeWithValue<String>>(emails.size());
 
-        for (Email mail : entry.getEmailAddresses()) {
-            InformationTypeWithValue<String> itwv = new InformationTypeWithValue<String>();
-            itwv.setKey(mail.getLabel());
-            itwv.setValue(mail.getAddress());
-            mails.add(itwv);
+            for (Email mail : emails) {
+                mails.add(new InformationTypeWithValue<String>(mail.getLabel(), mail.getAddress()));
+            }
+
+            contact.setMails(mails);
         }
 
-        contact.setMails(mails);
+        if (fields.contains(ContactField.TELEPHONES)) {
+            List<PhoneNumber> phoneNumbers = entry.getPhoneNumbers();
+            ArrayList<InformationTypeWithValue<String>> numbers =
+                new ArrayList<InformationTypeWithValue<String>>(phoneNumbers.size());
 
-        ArrayList<InformationTypeWithValue<String>> numbers = new ArrayList<InformationTypeWithValue<String>>();
+            for (PhoneNumber number : phoneNumbers) {
+                numbers.add(new InformationTypeWithValue<String>(number.getLabel(), number.getPhoneNumber()));
+            }
 
-        for (PhoneNumber number : entry.getPhoneNumbers()) {
-            InformationTypeWithValue<String> itwv = new InformationTypeWithValue<String>();
-            itwv.setKey(number.getLabel());
-            itwv.setValue(number.getPhoneNumber());
-            numbers.add(itwv);
+            contact.setTelephones(numbers);
         }
 
-        contact.setTelephones(numbers);
+        if (fields.contains(ContactField.HOMEPAGES)) {
+            List<Website> websites = entry.getWebsites();
+            ArrayList<InformationTypeWithValue<String>> sites =
+                new ArrayList<InformationTypeWithValue<String>>(websites.size());
 
-        ArrayList<InformationTypeWithValue<String>> sites = new ArrayList<InformationTypeWithValue<String>>();
+            for (Website site : websites) {
+                sites.add(new InformationTypeWithValue<String>(site.getLabel(), site.getHref()));
+            }
 
-        for (Website site : entry.getWebsites()) {
-            InformationTypeWithValue<String> itwv = new InformationTypeWithValue<String>();
-            itwv.setKey(site.getLabel());
-            itwv.setValue(site.getHref());
-            sites.add(itwv);
+            contact.setHomepages(sites);
         }
 
-        contact.setHomepages(sites);
+        if (fields.contains(ContactField.DATES)) {
+            List<Event> events = entry.getEvents();
+            ArrayList<InformationTypeWithValue<Date>> dates =
+                new ArrayList<InformationTypeWithValue<Date>>(events.size() + 1);
 
-        ArrayList<InformationTypeWithValue<Date>> dates = new ArrayList<InformationTypeWithValue<Date>>();
+            for (Event event : events) {
+                Date date = new Date(event.getWhen().getStartTime().getValue());
+                dates.add(new InformationTypeWithValue<Date>(event.getLabel(), date));
+            }
 
-        for (Event event : entry.getEvents()) {
-            String key = event.getLabel();
-            Date date = new Date(event.getWhen().getStartTime().getValue());
-            InformationTypeWithValue<Date> itwv = new InformationTypeWithValue<Date>();
-            itwv.setKey(key);
-            itwv.setValue(date);
-            dates.add(itwv);
+            Birthday birthday = entry.getBirthday();
+            if (birthday != null) {
+                try {
+                    dates.add(new InformationTypeWithValue<Date>(BIRTHDAY, parseBirthday(birthday.getWhen())));
+                } catch (ParseException e) {
+                    LOGGER.error("unable to parse date from google", e);
+                }
+            }
+            contact.setDates(dates);
         }
 
-        Birthday birthday = entry.getBirthday();
-        if (birthday != null) {
-            Date date;
-            try {
-                DateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
-                date = formatter.parse(birthday.getWhen());
-                InformationTypeWithValue<Date> itwv = new InformationTypeWithValue<Date>();
-                itwv.setKey("birthday");
-                itwv.setValue(date);
-                dates.add(itwv);
-            } catch (ParseException e) {
-                LOGGER.error("unable to parse date from google", e);
+        if (fields.contains(ContactField.LOCATIONS)) {
+            List<StructuredPostalAddress> addresses = entry.getStructuredPostalAddresses();
+            ArrayList<InformationTypeWithValue<Location>> locations =
+                new ArrayList<InformationTypeWithValue<Location>>(addresses.size());
+
+            for (StructuredPostalAddress address : addresses) {
+                Location loc = new Location();
+                loc.setCountry(address.getCountry().getValue());
+                loc.setState(address.getRegion().getValue());
+                loc.setCity(address.getCity().getValue());
+                loc.setZip(address.getPostcode().getValue());
+                loc.setAddress(address.getStreet().getValue());
+                locations.add(new InformationTypeWithValue<Location>(address.getLabel(), loc));
             }
-        }
-        contact.setDates(dates);
-
-        ArrayList<InformationTypeWithValue<Location>> locations = new ArrayList<InformationTypeWithValue<Location>>();
-
-        for (StructuredPostalAddress address : entry.getStructuredPostalAddresses()) {
-            Location loc = new Location();
-            loc.setCountry(address.getCountry().getValue());
-            loc.setState(address.getRegion().getValue());
-            loc.setCity(address.getCity().getValue());
-            loc.setZip(address.getPostcode().getValue());
-            loc.setAddress(address.getStreet().getValue());
-            InformationTypeWithValue<Location> itwv = new InformationTypeWithValue<Location>();
-            itwv.setKey(address.getLabel());
-            itwv.setValue(loc);
-            locations.add(itwv);
-        }
 
-        contact.setLocations(locations);
+            contact.setLocations(locations);
+        }
 
-        contact.setName(entry.getName().getFullName().getValue());
+        if (fields.contains(ContactField.NAME)) {
+            contact.setName(entry.getName().getFullName().getValue());
+        }
 
         return contact;
     }
@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal.misc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.openengsb.domain.contact.Contact;
+import org.openengsb.domain.contact.InformationTypeWithValue;
+import org.openengsb.domain.contact.Location;
+
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.ValueConstruct;
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.contacts.Event;
+import com.google.gdata.data.contacts.Website;
+import com.google.gdata.data.extensions.Country;
+import com.google.gdata.data.extensions.Email;
+import com.google.gdata.data.extensions.PhoneNumber;
+import com.google.gdata.data.extensions.StructuredPostalAddress;
+
+/**
+ * compares a contact of the contact domain with a google entry field by field. A field counts as changed if
+ * {@link ContactConverter#extendContactEntryWithContact} would write something different into the entry, so an
+ * update with no changed field can be skipped.
+ */
+public final class ContactDiff {
+
+    private ContactDiff() {
+    }
+
+    /**
+     * returns the fields of the entry that would change if it was extended with the contact
+     */
+    public static Set<ContactField> diff(ContactEntry entry, Contact contact) {
+        Set<ContactField> changes = EnumSet.noneOf(ContactField.class);
+        String currentName = null;
+        if (entry.getName() != null && entry.getName().getFullName() != null) {
+            currentName = entry.getName().getFullName().getValue();
+        }
+        if (!same(currentName, contact.getName())) {
+            changes.add(ContactField.NAME);
+        }
+        if (!same(entry.getPlainTextContent(), contact.getComment())) {
+            changes.add(ContactField.COMMENT);
+        }
+        if (!sameMails(entry.getEmailAddresses(), contact.getMails())) {
+            changes.add(ContactField.MAILS);
+        }
+        if (!samePhones(entry.getPhoneNumbers(), contact.getTelephones())) {
+            changes.add(ContactField.TELEPHONES);
+        }
+        if (!sameSites(entry.getWebsites(), contact.getHomepages())) {
+            changes.add(ContactField.HOMEPAGES);
+        }
+        if (!sameDates(entry, contact.getDates())) {
+            changes.add(ContactField.DATES);
+        }
+        if (!sameLocations(entry.getStructuredPostalAddresses(), contact.getLocations())) {
+            changes.add(ContactField.LOCATIONS);
+        }
+        return changes;
+    }
+
+    /**
+     * returns the value of the fields parameter selecting the given fields
+     */
+    public static String toFieldsMask(Set<ContactField> fields) {
+        StringBuilder builder = new StringBuilder();
+        for (ContactField field : fields) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(field.getElements());
+        }
+        return builder.toString();
+    }
+
+    private static boolean sameMails(List<Email> current, List<InformationTypeWithValue<String>> wanted) {
+        if (current.size() != size(wanted)) {
+            return false;
+        }
+        for (int i = 0; i < current.size(); i++) {
+            Email mail = current.get(i);
+            if (!same(mail.getLabel(), wanted.get(i).getKey()) || !same(mail.getAddress(), wanted.get(i).getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean samePhones(List<PhoneNumber> current, List<InformationTypeWithValue<String>> wanted) {
+        if (current.size() != size(wanted)) {
+            return false;
+        }
+        for (int i = 0; i < current.size(); i++) {
+            PhoneNumber number = current.get(i);
+            if (!same(number.getLabel(), wanted.get(i).getKey())
+                    || !same(number.getPhoneNumber(), wanted.get(i).getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameSites(List<Website> current, List<InformationTypeWithValue<String>> wanted) {
+        if (current.size() != size(wanted)) {
+            return false;
+        }
+        for (int i = 0; i < current.size(); i++) {
+            Website site = current.get(i);
+            if (!same(site.getLabel(), wanted.get(i).getKey()) || !same(site.getHref(), wanted.get(i).getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * compares events by label and day, and the birthday by day, as the converter writes them
+     */
+    private static boolean sameDates(ContactEntry entry, List<InformationTypeWithValue<Date>> wanted) {
+        List<InformationTypeWithValue<Date>> events = new ArrayList<InformationTypeWithValue<Date>>();
+        String birthday = null;
+        if (wanted != null) {
+            for (InformationTypeWithValue<Date> date : wanted) {
+                if (ContactConverter.isBirthday(date.getKey())) {
+                    birthday = ContactConverter.formatBirthday(date.getValue());
+                } else {
+                    events.add(date);
+                }
+            }
+        }
+        String currentBirthday = entry.getBirthday() == null ? null : entry.getBirthday().getWhen();
+        if (!same(currentBirthday, birthday)) {
+            return false;
+        }
+        List<Event> current = entry.getEvents();
+        if (current.size() != events.size()) {
+            return false;
+        }
+        TimeZone timeZone = TimeZone.getDefault();
+        for (int i = 0; i < current.size(); i++) {
+            Event event = current.get(i);
+            if (!same(event.getLabel(), events.get(i).getKey())) {
+                return false;
+            }
+            if (event.getWhen() == null || event.getWhen().getStartTime() == null) {
+                return false;
+            }
+            DateTime day = new DateTime(events.get(i).getValue(), timeZone);
+            day.setDateOnly(true);
+            if (!day.toString().equals(event.getWhen().getStartTime().toString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameLocations(List<StructuredPostalAddress> current,
+            List<InformationTypeWithValue<Location>> wanted) {
+        if (current.size() != size(wanted)) {
+            return false;
+        }
+        for (int i = 0; i < current.size(); i++) {
+            StructuredPostalAddress address = current.get(i);
+            Location location = wanted.get(i).getValue();
+            if (!same(address.getLabel(), wanted.get(i).getKey())
+                    || !same(value(address.getCountry()), location.getCountry())
+                    || !same(value(address.getRegion()), location.getState())
+                    || !same(value(address.getCity()), location.getCity())
+                    || !same(value(address.getPostcode()), location.getZip())
+                    || !same(value(address.getStreet()), location.getAddress())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String value(ValueConstruct construct) {
+        return construct == null ? null : construct.getValue();
+    }
+
+    private static String value(Country country) {
+        return country == null ? null : country.getValue();
+    }
+
+    private static int size(Collection<?> collection) {
+        return collection == null ? 0 : collection.size();
+    }
+
+    /**
+     * compares two texts, treating null and the empty string as equal since google does not keep empty values
+     */
+    private static boolean same(String a, String b) {
+        if (a == null || a.length() == 0) {
+            return b == null || b.length() == 0;
+        }
+        return a.equals(b);
+    }
+}
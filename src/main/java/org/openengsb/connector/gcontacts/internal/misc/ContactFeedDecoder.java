@@ -0,0 +1,282 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal.misc;
+
+import java.io.InputStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.openengsb.domain.contact.Contact;
+import org.openengsb.domain.contact.InformationTypeWithValue;
+import org.openengsb.domain.contact.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gdata.data.DateTime;
+
+/**
+ * decodes the atom XML of the contacts feed straight into contacts with a StAX reader, without building the
+ * ContactEntry object graph first. The mapping is the one of
+ * {@link ContactConverter#convertContactEntryToContact(com.google.gdata.data.contacts.ContactEntry, Set)}: fields that
+ * are not selected stay null, events are followed by the birthday. Elements a contact lacks, e.g. a name, are null
+ * instead of failing the conversion.
+ */
+public final class ContactFeedDecoder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContactFeedDecoder.class);
+
+    static final String ATOM = "http://www.w3.org/2005/Atom";
+    static final String GD = "http://schemas.google.com/g/2005";
+    static final String GCONTACT = "http://schemas.google.com/contact/2008";
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private ContactFeedDecoder() {
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        // the feed never needs a DTD, so none is read
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * decodes the selected fields of every entry of one feed page. The stream is not closed.
+     */
+    public static ContactFeedPage decodeFeed(InputStream in, Set<ContactField> fields) throws XMLStreamException {
+        XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+        try {
+            List<Contact> contacts = new ArrayList<Contact>();
+            String nextLink = null;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if (is(reader, ATOM, "entry")) {
+                    contacts.add(decodeEntry(reader, fields));
+                } else if (is(reader, ATOM, "link") && "next".equals(reader.getAttributeValue(null, "rel"))) {
+                    nextLink = reader.getAttributeValue(null, "href");
+                }
+            }
+            return new ContactFeedPage(contacts, nextLink);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * decodes the entry the reader is positioned on and leaves the reader on its end tag
+     */
+    static Contact decodeEntry(XMLStreamReader reader, Set<ContactField> fields) throws XMLStreamException {
+        Contact contact = new Contact();
+        ArrayList<InformationTypeWithValue<String>> mails = select(fields, ContactField.MAILS);
+        ArrayList<InformationTypeWithValue<String>> numbers = select(fields, ContactField.TELEPHONES);
+        ArrayList<InformationTypeWithValue<String>> sites = select(fields, ContactField.HOMEPAGES);
+        ArrayList<InformationTypeWithValue<Date>> dates = select(fields, ContactField.DATES);
+        ArrayList<InformationTypeWithValue<Location>> locations = select(fields, ContactField.LOCATIONS);
+        InformationTypeWithValue<Date> birthday = null;
+
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            if (is(reader, ATOM, "id")) {
+                contact.setId(readText(reader));
+            } else if (is(reader, ATOM, "content") && fields.contains(ContactField.COMMENT)) {
+                contact.setComment(readText(reader));
+            } else if (is(reader, GD, "email") && mails != null) {
+                String address = reader.getAttributeValue(null, "address");
+                mails.add(new InformationTypeWithValue<String>(label(reader), address));
+                skip(reader);
+            } else if (is(reader, GD, "phoneNumber") && numbers != null) {
+                String label = label(reader);
+                numbers.add(new InformationTypeWithValue<String>(label, readText(reader)));
+            } else if (is(reader, GCONTACT, "website") && sites != null) {
+                String href = reader.getAttributeValue(null, "href");
+                sites.add(new InformationTypeWithValue<String>(label(reader), href));
+                skip(reader);
+            } else if (is(reader, GCONTACT, "event") && dates != null) {
+                InformationTypeWithValue<Date> event = readEvent(reader);
+                if (event != null) {
+                    dates.add(event);
+                }
+            } else if (is(reader, GCONTACT, "birthday") && dates != null) {
+                birthday = readBirthday(reader.getAttributeValue(null, "when"));
+                skip(reader);
+            } else if (is(reader, GD, "structuredPostalAddress") && locations != null) {
+                locations.add(readAddress(reader));
+            } else if (is(reader, GD, "name") && fields.contains(ContactField.NAME)) {
+                contact.setName(readFullName(reader));
+            } else {
+                skip(reader);
+            }
+        }
+
+        if (birthday != null) {
+            dates.add(birthday);
+        }
+        contact.setMails(mails);
+        contact.setTelephones(numbers);
+        contact.setHomepages(sites);
+        contact.setDates(dates);
+        contact.setLocations(locations);
+        return contact;
+    }
+
+    private static <T> ArrayList<InformationTypeWithValue<T>> select(Set<ContactField> fields, ContactField field) {
+        return fields.contains(field) ? new ArrayList<InformationTypeWithValue<T>>() : null;
+    }
+
+    private static InformationTypeWithValue<Date> readEvent(XMLStreamReader reader) throws XMLStreamException {
+        String label = label(reader);
+        Date date = null;
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String start = is(reader, GD, "when") ? reader.getAttributeValue(null, "startTime") : null;
+            if (start != null && date == null) {
+                date = new Date(DateTime.parseDateTimeChoice(start).getValue());
+            }
+            skip(reader);
+        }
+        return date == null ? null : new InformationTypeWithValue<Date>(label, date);
+    }
+
+    private static InformationTypeWithValue<Date> readBirthday(String when) {
+        if (when == null) {
+            return null;
+        }
+        try {
+            return new InformationTypeWithValue<Date>(ContactConverter.BIRTHDAY, ContactConverter.parseBirthday(when));
+        } catch (ParseException e) {
+            LOGGER.error("unable to parse date from google", e);
+            return null;
+        }
+    }
+
+    private static InformationTypeWithValue<Location> readAddress(XMLStreamReader reader) throws XMLStreamException {
+        String label = label(reader);
+        Location location = new Location();
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            if (is(reader, GD, "country")) {
+                location.setCountry(readText(reader));
+            } else if (is(reader, GD, "region")) {
+                location.setState(readText(reader));
+            } else if (is(reader, GD, "city")) {
+                location.setCity(readText(reader));
+            } else if (is(reader, GD, "postcode")) {
+                location.setZip(readText(reader));
+            } else if (is(reader, GD, "street")) {
+                location.setAddress(readText(reader));
+            } else {
+                skip(reader);
+            }
+        }
+        return new InformationTypeWithValue<Location>(label, location);
+    }
+
+    private static String readFullName(XMLStreamReader reader) throws XMLStreamException {
+        String fullName = null;
+        while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            if (is(reader, GD, "fullName")) {
+                fullName = readText(reader);
+            } else {
+                skip(reader);
+            }
+        }
+        return fullName;
+    }
+
+    private static boolean is(XMLStreamReader reader, String namespace, String name) {
+        return name.equals(reader.getLocalName()) && namespace.equals(reader.getNamespaceURI());
+    }
+
+    private static String label(XMLStreamReader reader) {
+        return reader.getAttributeValue(null, "label");
+    }
+
+    /**
+     * returns the text of the current element including that of nested elements, e.g. of xhtml content, and leaves
+     * the reader on its end tag
+     */
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = null;
+        String single = null;
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    // most elements hold exactly one text node, which needs no builder
+                    if (single == null && text == null) {
+                        single = reader.getText();
+                    } else {
+                        if (text == null) {
+                            text = new StringBuilder(single);
+                        }
+                        text.append(reader.getText());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return text != null ? text.toString() : single;
+    }
+
+    /**
+     * skips the current element and everything in it, leaving the reader on its end tag
+     */
+    private static void skip(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
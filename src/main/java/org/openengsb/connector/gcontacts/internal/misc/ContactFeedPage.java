@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal.misc;
+
+import java.util.List;
+
+import org.openengsb.domain.contact.Contact;
+
+/**
+ * the contacts of one page of the contacts feed and the link to the next page
+ */
+public final class ContactFeedPage {
+
+    private final List<Contact> contacts;
+    private final String nextLink;
+
+    public ContactFeedPage(List<Contact> contacts, String nextLink) {
+        this.contacts = contacts;
+        this.nextLink = nextLink;
+    }
+
+    public List<Contact> getContacts() {
+        return contacts;
+    }
+
+    /**
+     * the href of the next link of the feed, null on the last page
+     */
+    public String getNextLink() {
+        return nextLink;
+    }
+}
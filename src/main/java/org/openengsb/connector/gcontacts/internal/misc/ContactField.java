@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal.misc;
+
+/**
+ * the parts of a contact the converter maps between the contact domain and google, with the elements of the google
+ * entry they are stored in
+ */
+public enum ContactField {
+    NAME("gd:name"),
+    COMMENT("content"),
+    MAILS("gd:email"),
+    TELEPHONES("gd:phoneNumber"),
+    HOMEPAGES("gContact:website"),
+    DATES("gContact:event,gContact:birthday"),
+    LOCATIONS("gd:structuredPostalAddress");
+
+    private final String elements;
+
+    private ContactField(String elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * the google entry elements of this field, in the syntax of the fields parameter
+     */
+    public String getElements() {
+        return elements;
+    }
+}
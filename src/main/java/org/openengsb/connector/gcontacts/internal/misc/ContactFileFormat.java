@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal.misc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.openengsb.domain.contact.Contact;
+
+/**
+ * file formats contacts are exported to and imported from. Both write one contact at a time and read one contact at
+ * a time, so whole address books pass through them in constant memory.
+ */
+public enum ContactFileFormat {
+
+    /**
+     * one JSON object per line
+     */
+    NDJSON {
+        @Override
+        public void write(Contact contact, Writer out) throws IOException {
+            NdjsonContactCodec.write(contact, out);
+        }
+
+        @Override
+        public Contact read(BufferedReader in) throws IOException {
+            return NdjsonContactCodec.read(in);
+        }
+    },
+
+    /**
+     * vCard 3.0, dates other than the birthday are written as X-OPENENGSB-DATE properties
+     */
+    VCARD {
+        @Override
+        public void write(Contact contact, Writer out) throws IOException {
+            VCardContactCodec.write(contact, out);
+        }
+
+        @Override
+        public Contact read(BufferedReader in) throws IOException {
+            return VCardContactCodec.read(in);
+        }
+    };
+
+    /** timestamps are written in UTC, SimpleDateFormat is not thread-safe */
+    private static final ThreadLocal<DateFormat> TIMESTAMP_FORMAT = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            DateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return format;
+        }
+    };
+
+    public abstract void write(Contact contact, Writer out) throws IOException;
+
+    /**
+     * reads the next contact, null at the end of the file
+     */
+    public abstract Contact read(BufferedReader in) throws IOException;
+
+    /**
+     * the format matching the extension of the file name, .vcf or .vcard for vCard and NDJSON for everything else
+     */
+    public static ContactFileFormat forFileName(String name) {
+        String lower = name.toLowerCase(Locale.ENGLISH);
+        return lower.endsWith(".vcf") || lower.endsWith(".vcard") ? VCARD : NDJSON;
+    }
+
+    static String formatTimestamp(Date date) {
+        return TIMESTAMP_FORMAT.get().format(date);
+    }
+
+    static Date parseTimestamp(String value) throws IOException {
+        try {
+            return TIMESTAMP_FORMAT.get().parse(value);
+        } catch (ParseException e) {
+            throw new IOException("invalid timestamp " + value, e);
+        }
+    }
+}
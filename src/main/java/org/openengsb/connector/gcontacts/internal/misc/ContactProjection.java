@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal.misc;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * describes which fields of a contact are requested from google. Google only sends the selected elements if the
+ * value of {@link #toEntryFields} or {@link #toFeedFields} is passed as fields parameter (partial response), which
+ * reduces both the size of the response and the time needed to parse it.
+ */
+public final class ContactProjection {
+
+    /** all fields, a contact read with this projection is complete */
+    public static final Set<ContactField> ALL = Collections.unmodifiableSet(EnumSet.allOf(ContactField.class));
+
+    /** the elements every entry needs independent of the projection, e.g. to update it later */
+    private static final String ENTRY_ELEMENTS = "id,updated,@gd:etag,link[@rel='edit']";
+
+    private ContactProjection() {
+    }
+
+    /**
+     * returns true if the projection selects only a part of the fields, null selects all fields
+     */
+    public static boolean isPartial(Set<ContactField> fields) {
+        return fields != null && !fields.containsAll(ALL);
+    }
+
+    /**
+     * the fields parameter selecting the given fields of a single entry
+     */
+    public static String toEntryFields(Set<ContactField> fields) {
+        if (fields.isEmpty()) {
+            return ENTRY_ELEMENTS;
+        }
+        return ENTRY_ELEMENTS + "," + ContactDiff.toFieldsMask(fields);
+    }
+
+    /**
+     * the fields parameter selecting the given fields of all entries of a feed, keeping the link to the next page
+     */
+    public static String toFeedFields(Set<ContactField> fields) {
+        return "link[@rel='next'],entry(" + toEntryFields(fields) + ")";
+    }
+
+    /**
+     * parses a comma separated list of field names like "name,mails". A null or empty text selects all fields.
+     *
+     * @throws IllegalArgumentException if a name is not a field
+     */
+    public static Set<ContactField> parse(String text) {
+        if (text == null || text.trim().length() == 0) {
+            return ALL;
+        }
+        Set<ContactField> fields = EnumSet.noneOf(ContactField.class);
+        for (String name : text.split(",")) {
+            if (name.trim().length() > 0) {
+                fields.add(ContactField.valueOf(name.trim().toUpperCase(Locale.ENGLISH)));
+            }
+        }
+        return fields;
+    }
+}
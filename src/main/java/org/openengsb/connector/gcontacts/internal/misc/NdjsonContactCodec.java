@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.openengsb.connector.gcontacts.internal.misc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.openengsb.domain.contact.Contact;
+import org.openengsb.domain.contact.InformationTypeWithValue;
+import org.openengsb.domain.contact.Location;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * the contacts as JSON lines: {"id":..,"name":..,"comment":..,"mails":[{"label":..,"value":..}],"telephones":..,
+ * "homepages":..,"dates":..,"locations":[{"label":..,"address":..,"city":..,"state":..,"zip":..,"country":..}]}.
+ * Null fields are left out.
+ */
+final class NdjsonContactCodec {
+
+    /** thread-safe once configured */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private NdjsonContactCodec() {
+    }
+
+    static void write(Contact contact, Writer out) throws IOException {
+        ObjectNode json = MAPPER.createObjectNode();
+        putField(json, "id", contact.getId());
+        putField(json, "name", contact.getName());
+        putField(json, "comment", contact.getComment());
+        putStrings(json, "mails", contact.getMails());
+        putStrings(json, "telephones", contact.getTelephones());
+        putStrings(json, "homepages", contact.getHomepages());
+        if (contact.getDates() != null) {
+            ArrayNode dates = json.putArray("dates");
+            for (InformationTypeWithValue<Date> date : contact.getDates()) {
+                ObjectNode item = dates.addObject();
+                putField(item, "label", date.getKey());
+                Date value = date.getValue();
+                putField(item, "value", value == null ? null : ContactFileFormat.formatTimestamp(value));
+            }
+        }
+        if (contact.getLocations() != null) {
+            ArrayNode locations = json.putArray("locations");
+            for (InformationTypeWithValue<Location> location : contact.getLocations()) {
+                Location value = location.getValue() == null ? new Location() : location.getValue();
+                ObjectNode item = locations.addObject();
+                putField(item, "label", location.getKey());
+                putField(item, "address", value.getAddress());
+                putField(item, "city", value.getCity());
+                putField(item, "state", value.getState());
+                putField(item, "zip", value.getZip());
+                putField(item, "country", value.getCountry());
+            }
+        }
+        out.write(MAPPER.writeValueAsString(json));
+        out.write('\n');
+    }
+
+    private static void putStrings(ObjectNode json, String name, List<InformationTypeWithValue<String>> values) {
+        if (values == null) {
+            return;
+        }
+        ArrayNode array = json.putArray(name);
+        for (InformationTypeWithValue<String> value : values) {
+            ObjectNode item = array.addObject();
+            putField(item, "label", value.getKey());
+            putField(item, "value", value.getValue());
+        }
+    }
+
+    private static void putField(ObjectNode json, String name, String value) {
+        if (value != null) {
+            json.put(name, value);
+        }
+    }
+
+    static Contact read(BufferedReader in) throws IOException {
+        String line;
+        do {
+            line = in.readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (line.trim().isEmpty());
+        JsonNode object = MAPPER.readTree(line);
+        if (object == null || !object.isObject()) {
+            throw new IOException("expected a JSON object per line, got " + line);
+        }
+        Contact contact = new Contact();
+        contact.setId(string(object, "id"));
+        contact.setName(string(object, "name"));
+        contact.setComment(string(object, "comment"));
+        contact.setMails(strings(object, "mails"));
+        contact.setTelephones(strings(object, "telephones"));
+        contact.setHomepages(strings(object, "homepages"));
+        List<JsonNode> dates = objects(object, "dates");
+        if (dates != null) {
+            ArrayList<InformationTypeWithValue<Date>> values =
+                new ArrayList<InformationTypeWithValue<Date>>(dates.size());
+            for (JsonNode date : dates) {
+                String value = string(date, "value");
+                values.add(new InformationTypeWithValue<Date>(string(date, "label"),
+                    value == null ? null : ContactFileFormat.parseTimestamp(value)));
+            }
+            contact.setDates(values);
+        }
+        List<JsonNode> locations = objects(object, "locations");
+        if (locations != null) {
+            ArrayList<InformationTypeWithValue<Location>> values =
+                new ArrayList<InformationTypeWithValue<Location>>(locations.size());
+            for (JsonNode location : locations) {
+                Location value = new Location();
+                value.setAddress(string(location, "address"));
+                value.setCity(string(location, "city"));
+                value.setState(string(location, "state"));
+                value.setZip(string(location, "zip"));
+                value.setCountry(string(location, "country"));
+                values.add(new InformationTypeWithValue<Location>(string(location, "label"), value));
+            }
+            contact.setLocations(values);
+        }
+        return contact;
+    }
+
+    private static String string(JsonNode object, String name) {
+        JsonNode value = object.get(name);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static ArrayList<InformationTypeWithValue<String>> strings(JsonNode object, String name)
+        throws IOException {
+        List<JsonNode> items = objects(object, name);
+        if (items == null) {
+            return null;
+        }
+        ArrayList<InformationTypeWithValue<String>> values =
+            new ArrayList<InformationTypeWithValue<String>>(items.size());
+        for (JsonNode item : items) {
+            values.add(new InformationTypeWithValue<String>(string(item, "label"), string(item, "value")));
+        }
+        return values;
+    }
+
+    private static List<JsonNode> objects(JsonNode object, String name) throws IOException {
+        JsonNode value = object.get(name);
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        if (!value.isArray()) {
+            throw new IOException(name + " has to be an array");
+        }
+        List<JsonNode> items = new ArrayList<JsonNode>(value.size());
+        for (JsonNode item : value) {
+            if (!item.isObject()) {
+                throw new IOException(name + " has to contain objects");
+            }
+            items.add(item);
+        }
+        return items;
+    }
+}
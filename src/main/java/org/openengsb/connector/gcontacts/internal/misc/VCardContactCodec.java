@@ -0,0 +1,307 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal.misc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.openengsb.domain.contact.Contact;
+import org.openengsb.domain.contact.InformationTypeWithValue;
+import org.openengsb.domain.contact.Location;
+
+/**
+ * contacts as vCard 3.0. The label of every value is its TYPE parameter, a date labeled birthday becomes BDAY and all
+ * other dates X-OPENENGSB-DATE, both as UTC timestamps. Lines are folded at 75 characters.
+ */
+final class VCardContactCodec {
+
+    private static final String DATE_PROPERTY = "X-OPENENGSB-DATE";
+    private static final int LINE_LENGTH = 75;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private VCardContactCodec() {
+    }
+
+    static void write(Contact contact, Writer out) throws IOException {
+        StringBuilder card = new StringBuilder(1024);
+        card.append("BEGIN:VCARD\r\nVERSION:3.0\r\n");
+        appendProperty(card, "UID", null, escape(contact.getId()));
+        appendProperty(card, "FN", null, escape(contact.getName()));
+        appendProperty(card, "NOTE", null, escape(contact.getComment()));
+        appendValues(card, "EMAIL", contact.getMails());
+        appendValues(card, "TEL", contact.getTelephones());
+        appendValues(card, "URL", contact.getHomepages());
+        if (contact.getDates() != null) {
+            for (InformationTypeWithValue<Date> date : contact.getDates()) {
+                if (date.getValue() == null) {
+                    continue;
+                }
+                String name = ContactConverter.BIRTHDAY.equals(date.getKey()) ? "BDAY" : DATE_PROPERTY;
+                appendProperty(card, name, date.getKey(), ContactFileFormat.formatTimestamp(date.getValue()));
+            }
+        }
+        if (contact.getLocations() != null) {
+            for (InformationTypeWithValue<Location> location : contact.getLocations()) {
+                Location value = location.getValue() == null ? new Location() : location.getValue();
+                // post office box; extended address; street; city; region; postal code; country
+                String address = ";;" + component(value.getAddress()) + ";" + component(value.getCity()) + ";"
+                        + component(value.getState()) + ";" + component(value.getZip()) + ";"
+                        + component(value.getCountry());
+                appendProperty(card, "ADR", location.getKey(), address);
+            }
+        }
+        card.append("END:VCARD\r\n");
+        out.write(card.toString());
+    }
+
+    private static void appendValues(StringBuilder card, String name, List<InformationTypeWithValue<String>> values) {
+        if (values == null) {
+            return;
+        }
+        for (InformationTypeWithValue<String> value : values) {
+            appendProperty(card, name, value.getKey(), escape(value.getValue()));
+        }
+    }
+
+    private static void appendProperty(StringBuilder card, String name, String type, String value) {
+        if (value == null) {
+            return;
+        }
+        StringBuilder line = new StringBuilder(name);
+        if (type != null) {
+            line.append(";TYPE=").append(quote(type));
+        }
+        line.append(':').append(value);
+        for (int start = 0; start < line.length(); start += LINE_LENGTH) {
+            if (start > 0) {
+                card.append(' ');
+            }
+            card.append(line, start, Math.min(start + LINE_LENGTH, line.length())).append("\r\n");
+        }
+    }
+
+    /**
+     * labels containing separators are quoted, quotes themselves cannot be represented and are dropped
+     */
+    private static String quote(String type) {
+        String value = type.replace("\"", "").replace("\r", "").replace("\n", " ");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ';' || c == ':' || c == ',') {
+                return '"' + value + '"';
+            }
+        }
+        return value;
+    }
+
+    private static String component(String value) {
+        return value == null ? "" : escape(value);
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return null;
+        }
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                case ';':
+                case ',':
+                    escaped.append('\\').append(c);
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    static Contact read(BufferedReader in) throws IOException {
+        String line = readLine(in);
+        while (line != null && !line.equalsIgnoreCase("BEGIN:VCARD")) {
+            line = readLine(in);
+        }
+        if (line == null) {
+            return null;
+        }
+        Contact contact = new Contact();
+        ArrayList<InformationTypeWithValue<String>> mails = new ArrayList<InformationTypeWithValue<String>>();
+        ArrayList<InformationTypeWithValue<String>> numbers = new ArrayList<InformationTypeWithValue<String>>();
+        ArrayList<InformationTypeWithValue<String>> sites = new ArrayList<InformationTypeWithValue<String>>();
+        ArrayList<InformationTypeWithValue<Date>> dates = new ArrayList<InformationTypeWithValue<Date>>();
+        ArrayList<InformationTypeWithValue<Location>> locations = new ArrayList<InformationTypeWithValue<Location>>();
+        while (true) {
+            line = readLine(in);
+            if (line == null) {
+                throw new IOException("vCard without END:VCARD");
+            }
+            if (line.equalsIgnoreCase("END:VCARD")) {
+                break;
+            }
+            int colon = indexOfUnquoted(line, ':');
+            if (colon < 0) {
+                continue;
+            }
+            List<String> head = split(line.substring(0, colon), ';', true);
+            String name = head.get(0).toUpperCase();
+            String type = null;
+            for (String parameter : head.subList(1, head.size())) {
+                if (parameter.regionMatches(true, 0, "TYPE=", 0, 5)) {
+                    type = unquote(parameter.substring(5));
+                }
+            }
+            String value = line.substring(colon + 1);
+            if ("UID".equals(name)) {
+                contact.setId(unescape(value));
+            } else if ("FN".equals(name)) {
+                contact.setName(unescape(value));
+            } else if ("NOTE".equals(name)) {
+                contact.setComment(unescape(value));
+            } else if ("EMAIL".equals(name)) {
+                mails.add(new InformationTypeWithValue<String>(type, unescape(value)));
+            } else if ("TEL".equals(name)) {
+                numbers.add(new InformationTypeWithValue<String>(type, unescape(value)));
+            } else if ("URL".equals(name)) {
+                sites.add(new InformationTypeWithValue<String>(type, unescape(value)));
+            } else if ("BDAY".equals(name) || DATE_PROPERTY.equals(name)) {
+                String label = type != null ? type : "BDAY".equals(name) ? ContactConverter.BIRTHDAY : null;
+                dates.add(new InformationTypeWithValue<Date>(label, ContactFileFormat.parseTimestamp(value)));
+            } else if ("ADR".equals(name)) {
+                List<String> parts = split(value, ';', false);
+                while (parts.size() < 7) {
+                    parts.add("");
+                }
+                Location location = new Location();
+                location.setAddress(emptyToNull(unescape(parts.get(2))));
+                location.setCity(emptyToNull(unescape(parts.get(3))));
+                location.setState(emptyToNull(unescape(parts.get(4))));
+                location.setZip(emptyToNull(unescape(parts.get(5))));
+                location.setCountry(emptyToNull(unescape(parts.get(6))));
+                locations.add(new InformationTypeWithValue<Location>(type, location));
+            }
+        }
+        contact.setMails(mails);
+        contact.setTelephones(numbers);
+        contact.setHomepages(sites);
+        contact.setDates(dates);
+        contact.setLocations(locations);
+        return contact;
+    }
+
+    /**
+     * reads one logical line, joining the folded continuation lines that start with a space or tab
+     */
+    private static String readLine(BufferedReader in) throws IOException {
+        String line;
+        do {
+            line = in.readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (line.isEmpty());
+        StringBuilder logical = null;
+        while (true) {
+            in.mark(MAX_LINE_LENGTH);
+            String next = in.readLine();
+            if (next == null || next.isEmpty() || next.charAt(0) != ' ' && next.charAt(0) != '\t') {
+                in.reset();
+                break;
+            }
+            if (logical == null) {
+                logical = new StringBuilder(line);
+            }
+            logical.append(next, 1, next.length());
+        }
+        return logical == null ? line : logical.toString();
+    }
+
+    private static int indexOfUnquoted(String text, char separator) {
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == separator && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * splits at the separator, skipping escaped separators and, for parameters, quoted ones. The parts are not
+     * unescaped.
+     */
+    private static List<String> split(String text, char separator, boolean parameters) {
+        List<String> parts = new ArrayList<String>();
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && !parameters) {
+                i++;
+            } else if (c == '"' && parameters) {
+                quoted = !quoted;
+            } else if (c == separator && !quoted) {
+                parts.add(text.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(text.substring(start));
+        return parts;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                unescaped.append(next == 'n' || next == 'N' ? '\n' : next);
+            } else {
+                unescaped.append(c);
+            }
+        }
+        return unescaped.toString();
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.google.gdata.util.ServiceException;
+
+public class CircuitBreakerTest {
+
+    private static void fail(CircuitBreaker breaker, int times) {
+        for (int i = 0; i < times; i++) {
+            assertThat(breaker.allowRequest(), is(true));
+            breaker.onFailure();
+        }
+    }
+
+    @Test
+    public void testFailuresBelowThreshold_shouldKeepCircuitClosed() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(3, 60000, 1);
+        fail(breaker, 2);
+        breaker.onSuccess();
+        fail(breaker, 2);
+        assertThat(breaker.getState(), is(CircuitBreaker.State.CLOSED));
+        assertThat(breaker.allowRequest(), is(true));
+    }
+
+    @Test
+    public void testFailuresAtThreshold_shouldRejectRequests() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(3, 60000, 1);
+        fail(breaker, 3);
+        assertThat(breaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(breaker.allowRequest(), is(false));
+    }
+
+    @Test
+    public void testSuccessfulTrial_shouldCloseCircuit() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0, 1);
+        fail(breaker, 1);
+        assertThat(breaker.allowRequest(), is(true));
+        assertThat(breaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        assertThat(breaker.allowRequest(), is(false));
+        breaker.onSuccess();
+        assertThat(breaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void testFailedTrial_shouldOpenCircuitAgain() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(2, 0, 1);
+        fail(breaker, 2);
+        assertThat(breaker.allowRequest(), is(true));
+        breaker.onFailure();
+        assertThat(breaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    public void testZeroThreshold_shouldDisableBreaker() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(0, 60000, 1);
+        fail(breaker, 10);
+        assertThat(breaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void testErrorsOfTheRequest_shouldNotCountAsOutage() throws Exception {
+        ServiceException notFound = new ServiceException("not found");
+        notFound.setHttpErrorCodeOverride(404);
+        ServiceException serverError = new ServiceException("internal error");
+        serverError.setHttpErrorCodeOverride(500);
+        assertThat(CircuitBreaker.isOutage(notFound), is(false));
+        assertThat(CircuitBreaker.isOutage(serverError), is(true));
+        assertThat(CircuitBreaker.isOutage(new IOException("connection refused")), is(true));
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gdata.data.contacts.ContactEntry;
+
+public class ContactEntryCacheTest {
+
+    private ContactEntryCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new ContactEntryCache();
+    }
+
+    private static ContactEntry createEntry(String etag) {
+        ContactEntry entry = new ContactEntry();
+        entry.setEtag(etag);
+        return entry;
+    }
+
+    @Test
+    public void testFreshEntry_shouldBeHit() throws Exception {
+        ContactEntry entry = createEntry("\"a\"");
+        cache.put("1", entry);
+        assertThat(cache.getIfFresh("1"), sameInstance(entry));
+        assertThat(cache.getHits(), is(1L));
+    }
+
+    @Test
+    public void testExpiredEntry_shouldBeRevalidated() throws Exception {
+        cache.setTimeToLive(0);
+        ContactEntry entry = createEntry("\"a\"");
+        cache.put("1", entry);
+        assertThat(cache.getIfFresh("1"), nullValue());
+        assertThat(cache.getForRevalidation("1"), sameInstance(entry));
+        assertThat(cache.getRevalidations(), is(1L));
+        assertThat(cache.getMisses(), is(0L));
+    }
+
+    @Test
+    public void testEntryWithoutEtag_shouldBeMiss() throws Exception {
+        cache.setTimeToLive(0);
+        cache.put("1", createEntry(null));
+        assertThat(cache.getForRevalidation("1"), nullValue());
+        assertThat(cache.getMisses(), is(1L));
+    }
+
+    @Test
+    public void testFullCache_shouldEvictLeastRecentlyUsed() throws Exception {
+        cache.setMaxSize(2);
+        cache.put("1", createEntry("\"a\""));
+        cache.put("2", createEntry("\"b\""));
+        cache.getIfFresh("1");
+        cache.put("3", createEntry("\"c\""));
+        assertThat(cache.size(), is(2));
+        assertThat(cache.getIfFresh("2"), nullValue());
+    }
+
+    @Test
+    public void testDisabledCache_shouldNotStoreEntries() throws Exception {
+        cache.setMaxSize(0);
+        cache.put("1", createEntry("\"a\""));
+        assertThat(cache.size(), is(0));
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openengsb.connector.gcontacts.internal.misc.ContactConverter;
+import org.openengsb.domain.contact.Contact;
+import org.openengsb.domain.contact.InformationTypeWithValue;
+import org.openengsb.domain.contact.Location;
+
+public class ContactIndexTest {
+
+    private ContactIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        index = new ContactIndex();
+        index.put(createContact("1", "Anna Maria Huber", "Vienna", "1040", "1980-02-29"));
+        index.put(createContact("2", "Maria Berger", "Vienna", "1010", "1975-05-01"));
+        index.put(createContact("3", "Anna Berger", "Graz", "8010", "1980-02-29"));
+    }
+
+    private static Contact createContact(String id, String name, String city, String zip, String birthday)
+        throws Exception {
+        Contact contact = new Contact();
+        contact.setId(id);
+        contact.setName(name);
+        ArrayList<InformationTypeWithValue<String>> mails = new ArrayList<InformationTypeWithValue<String>>();
+        mails.add(new InformationTypeWithValue<String>("privat", id + "@Example.org"));
+        contact.setMails(mails);
+        ArrayList<InformationTypeWithValue<Date>> dates = new ArrayList<InformationTypeWithValue<Date>>();
+        dates.add(new InformationTypeWithValue<Date>("birthday", ContactConverter.parseBirthday(birthday)));
+        contact.setDates(dates);
+        ArrayList<InformationTypeWithValue<Location>> locations = new ArrayList<InformationTypeWithValue<Location>>();
+        Location location = new Location();
+        location.setCity(city);
+        location.setZip(zip);
+        location.setCountry("Austria");
+        locations.add(new InformationTypeWithValue<Location>("home", location));
+        contact.setLocations(locations);
+        return contact;
+    }
+
+    private static Location createLocation(String city, String country) {
+        Location location = new Location();
+        location.setCity(city);
+        location.setCountry(country);
+        return location;
+    }
+
+    @Test
+    public void testNameTokens_shouldAllMatch() throws Exception {
+        List<Contact> result = index.query("maria berger", null, null, null, null);
+        assertThat(result.size(), is(1));
+        assertThat(result.get(0).getId(), is("2"));
+    }
+
+    @Test
+    public void testCriteria_shouldBeCombined() throws Exception {
+        Date birthday = ContactConverter.parseBirthday("1980-02-29");
+        List<Contact> result = index.query("anna", null, createLocation("vienna", "austria"), birthday, null);
+        assertThat(result.size(), is(1));
+        assertThat(result.get(0).getId(), is("1"));
+    }
+
+    @Test
+    public void testReplacedContact_shouldNotBeFoundByOldValues() throws Exception {
+        index.put(createContact("2", "Maria Berger", "Linz", "4020", "1975-05-01"));
+        assertThat(index.query(null, null, createLocation("Vienna", null), null, null).size(), is(1));
+        assertThat(index.query(null, null, createLocation("Linz", null), null, null).size(), is(1));
+    }
+
+    @Test
+    public void testRemovedContact_shouldNotBeFound() throws Exception {
+        index.remove("3");
+        assertThat(index.query("anna", null, null, null, null).size(), is(1));
+        assertThat(index.get("3"), nullValue());
+    }
+
+    @Test
+    public void testMail_shouldIgnoreCase() throws Exception {
+        assertThat(index.findByMail("1@example.ORG").size(), is(1));
+    }
+
+    @Test
+    public void testNoCriteria_shouldReturnEmptyList() throws Exception {
+        assertThat(index.query(null, null, null, null, null).size(), is(0));
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.extensions.Email;
+
+public class ContactSnapshotStoreTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("gcontacts", ".snapshot");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private static ContactEntry createEntry(String id, String mail) {
+        ContactEntry entry = new ContactEntry();
+        entry.setId(id);
+        entry.setEtag("\"" + mail + "\"");
+        Email email = new Email();
+        email.setAddress(mail);
+        email.setLabel("privat");
+        entry.addEmailAddress(email);
+        return entry;
+    }
+
+    @Test
+    public void testStoredEntries_shouldSurviveNewStore() throws Exception {
+        ContactSnapshotStore store = new ContactSnapshotStore(file);
+        store.put(createEntry("1", "a@example.org"));
+        store.put(createEntry("2", "b@example.org"));
+        store.put(createEntry("1", "c@example.org"));
+        store.delete("2");
+        store.storeWatermark(new DateTime(1325376000000L));
+        store.close();
+
+        ContactSnapshotStore restored = new ContactSnapshotStore(file);
+        Map<String, ContactEntry> entries = restored.load();
+        assertThat(entries.size(), is(1));
+        assertThat(entries.get("1").getEmailAddresses().get(0).getAddress(), is("c@example.org"));
+        assertThat(entries.get("1").getEtag(), is("\"c@example.org\""));
+        assertThat(restored.getWatermark().getValue(), is(1325376000000L));
+        assertThat(restored.isComplete(), is(true));
+    }
+
+    @Test
+    public void testCutOffRecord_shouldBeDiscarded() throws Exception {
+        ContactSnapshotStore store = new ContactSnapshotStore(file);
+        store.put(createEntry("1", "a@example.org"));
+        store.close();
+        long length = file.length();
+        store.put(createEntry("2", "b@example.org"));
+        store.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(length + 10);
+        raf.close();
+
+        Map<String, ContactEntry> entries = new ContactSnapshotStore(file).load();
+        assertThat(entries.size(), is(1));
+        assertThat(file.length(), is(length));
+    }
+
+    @Test
+    public void testCorruptRecord_shouldBeSkipped() throws Exception {
+        ContactSnapshotStore store = new ContactSnapshotStore(file);
+        store.put(createEntry("1", "a@example.org"));
+        store.close();
+        long corrupt = file.length() + 20;
+        store.put(createEntry("2", "b@example.org"));
+        store.put(createEntry("3", "c@example.org"));
+        store.storeWatermark(new DateTime(1325376000000L));
+        store.close();
+        long length = file.length();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(corrupt);
+        byte value = raf.readByte();
+        raf.seek(corrupt);
+        raf.writeByte(value ^ 0xff);
+        raf.close();
+
+        ContactSnapshotStore restored = new ContactSnapshotStore(file);
+        Map<String, ContactEntry> entries = restored.load();
+        assertThat(entries.keySet().toString(), is("[1, 3]"));
+        assertThat(restored.isComplete(), is(false));
+        assertThat(file.length(), is(length));
+    }
+
+    @Test
+    public void testSnapshotWithoutWatermark_shouldBeIncomplete() throws Exception {
+        ContactSnapshotStore store = new ContactSnapshotStore(file);
+        store.put(createEntry("1", "a@example.org"));
+        store.close();
+
+        ContactSnapshotStore restored = new ContactSnapshotStore(file);
+        restored.load();
+        assertThat(restored.isComplete(), is(false));
+        assertThat(restored.getWatermark(), nullValue());
+    }
+}
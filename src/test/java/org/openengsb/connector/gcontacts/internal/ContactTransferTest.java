@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openengsb.connector.gcontacts.internal.misc.ContactFileFormat;
+import org.openengsb.core.api.DomainMethodExecutionException;
+import org.openengsb.core.api.ekb.PersistInterface;
+import org.openengsb.domain.contact.Contact;
+import org.openengsb.domain.contact.InformationTypeWithValue;
+
+public class ContactTransferTest {
+
+    private LocalContactsServer server;
+    private GcontactsServiceImpl service;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LocalContactsServer();
+        server.start();
+        service = server.createService("id");
+        service.setPersistInterface(mock(PersistInterface.class));
+        service.setCommitPipeline(0, EKBCommitPipeline.DEFAULT_MAX_OPERATIONS,
+            EKBCommitPipeline.DEFAULT_QUEUE_CAPACITY);
+        service.setBatchSize(2);
+        file = File.createTempFile("gcontacts", ".ndjson");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        service.shutdown();
+        server.stop();
+        file.delete();
+        new File(file.getPath() + ContactTransfer.CHECKPOINT_SUFFIX).delete();
+    }
+
+    private static Contact createContact(String name) {
+        Contact contact = new Contact();
+        contact.setName(name);
+        ArrayList<InformationTypeWithValue<Date>> dates = new ArrayList<InformationTypeWithValue<Date>>();
+        dates.add(new InformationTypeWithValue<Date>("anniversary", new Date(1325376000000L)));
+        contact.setDates(dates);
+        return contact;
+    }
+
+    private void writeFile(String... names) throws Exception {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        for (String name : names) {
+            ContactFileFormat.NDJSON.write(createContact(name), out);
+        }
+        out.close();
+    }
+
+    @Test
+    public void testExport_shouldContainAllFields() throws Exception {
+        server.add(createContact("exported"));
+
+        assertThat(service.exportContacts(file), is(1));
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        Contact exported = ContactFileFormat.NDJSON.read(in);
+        in.close();
+        assertThat(exported.getName(), is("exported"));
+        assertThat(exported.getDates().size(), is(1));
+    }
+
+    @Test
+    public void testRejectedContacts_shouldBeCountedAsFailed() throws Exception {
+        writeFile("first", "rejected", "third");
+        server.rejectName("rejected");
+
+        ImportResult result = service.importContacts(file);
+
+        assertThat(result.getCreated(), is(2));
+        assertThat(result.getFailed(), is(1));
+    }
+
+    @Test
+    public void testUnreachableGoogle_shouldStopImportWithoutCheckpoint() throws Exception {
+        writeFile("first", "second", "third");
+        server.setFailingBatches(true);
+        try {
+            service.importContacts(file);
+            fail("the import should fail while the batches do not reach google");
+        } catch (DomainMethodExecutionException e) {
+            assertThat(new File(file.getPath() + ContactTransfer.CHECKPOINT_SUFFIX).exists(), is(false));
+        }
+
+        server.setFailingBatches(false);
+        ImportResult result = service.importContacts(file);
+        assertThat(result.getResumedAt(), is(0));
+        assertThat(result.getCreated(), is(3));
+        assertThat(result.getFailed(), is(0));
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.openengsb.domain.contact.Contact;
+import org.openengsb.domain.contact.InformationTypeWithValue;
+import org.openengsb.domain.contact.Location;
+
+public class DuplicateDetectorTest {
+
+    private static Contact createContact(String id, String name, String mail, String phone) {
+        Contact contact = new Contact();
+        contact.setId(id);
+        contact.setName(name);
+        if (mail != null) {
+            ArrayList<InformationTypeWithValue<String>> mails = new ArrayList<InformationTypeWithValue<String>>();
+            mails.add(new InformationTypeWithValue<String>("privat", mail));
+            contact.setMails(mails);
+        }
+        if (phone != null) {
+            ArrayList<InformationTypeWithValue<String>> phones = new ArrayList<InformationTypeWithValue<String>>();
+            phones.add(new InformationTypeWithValue<String>("mobile", phone));
+            contact.setTelephones(phones);
+        }
+        return contact;
+    }
+
+    private static Contact withAddress(Contact contact, String address, String zip) {
+        ArrayList<InformationTypeWithValue<Location>> locations = new ArrayList<InformationTypeWithValue<Location>>();
+        Location location = new Location();
+        location.setAddress(address);
+        location.setZip(zip);
+        location.setCity("Vienna");
+        locations.add(new InformationTypeWithValue<Location>("home", location));
+        contact.setLocations(locations);
+        return contact;
+    }
+
+    private static List<DuplicateGroup> findDuplicates(Contact... contacts) {
+        return new DuplicateDetector().findDuplicates(Arrays.asList(contacts).iterator());
+    }
+
+    @Test
+    public void testSameMail_shouldBeDuplicates() throws Exception {
+        List<DuplicateGroup> groups = findDuplicates(
+            createContact("1", "Anna Huber", "anna@example.org", null),
+            createContact("2", "A. Huber", " Anna@Example.org", null),
+            createContact("3", "Maria Berger", "maria@example.org", null));
+        assertThat(groups.size(), is(1));
+        assertThat(groups.get(0).getSurvivorId(), is("1"));
+        assertThat(groups.get(0).getDuplicateIds(), is(Arrays.asList("2")));
+    }
+
+    @Test
+    public void testSameNameOnly_shouldNotBeDuplicates() throws Exception {
+        List<DuplicateGroup> groups = findDuplicates(
+            createContact("1", "Anna Huber", "anna@example.org", null),
+            createContact("2", "Anna Huber", "other@example.org", null));
+        assertThat(groups.size(), is(0));
+    }
+
+    @Test
+    public void testPhoneAndName_shouldMatchDifferentSpellings() throws Exception {
+        List<DuplicateGroup> groups = findDuplicates(
+            createContact("1", "Huber, Anna", null, "+43 664 1234567"),
+            createContact("2", "Anna Huber", null, "0664/123 45 67"));
+        assertThat(groups.size(), is(1));
+    }
+
+    @Test
+    public void testDuplicatesOfDuplicates_shouldShareGroup() throws Exception {
+        List<DuplicateGroup> groups = findDuplicates(
+            createContact("1", "Anna Huber", "anna@example.org", null),
+            createContact("2", "Anna Huber", "anna@example.org", "06641234567"),
+            createContact("3", "Anna Huber", null, "06641234567"),
+            createContact("4", "Maria Berger", null, null));
+        assertThat(groups.size(), is(1));
+        assertThat(groups.get(0).getSurvivorId(), is("2"));
+        assertThat(groups.get(0).getDuplicateIds(), is(Arrays.asList("1", "3")));
+    }
+
+    @Test
+    public void testMerge_shouldKeepValuesOfAllMembers() throws Exception {
+        Contact first = createContact("1", "Anna Huber", "anna@example.org", "06641234567");
+        first.setComment("met at the conference");
+        Contact second = createContact("2", null, "ANNA@example.org", null);
+        second.getMails().add(new InformationTypeWithValue<String>("work", "huber@example.com"));
+        second.setComment("prefers mail");
+        List<DuplicateGroup> groups = findDuplicates(first, second);
+        Contact merged = groups.get(0).getMerged();
+        assertThat(merged.getId(), is("1"));
+        assertThat(merged.getName(), is("Anna Huber"));
+        assertThat(merged.getMails().size(), is(2));
+        assertThat(merged.getMails().get(1).getValue(), is("huber@example.com"));
+        assertThat(merged.getTelephones().size(), is(1));
+        assertThat(merged.getComment(), is("met at the conference\nprefers mail"));
+    }
+
+    @Test
+    public void testContactImportedManyTimes_shouldBeOneGroup() throws Exception {
+        List<Contact> contacts = new ArrayList<Contact>();
+        for (int i = 0; i < 500; i++) {
+            contacts.add(createContact(String.valueOf(i), "Anna Huber", "anna@example.org", "06641234567"));
+        }
+        List<DuplicateGroup> groups = new DuplicateDetector().findDuplicates(contacts.iterator());
+        assertThat(groups.size(), is(1));
+        assertThat(groups.get(0).getDuplicateIds().size(), is(499));
+    }
+
+    @Test
+    public void testSameNameAndAddress_shouldBeDuplicates() throws Exception {
+        List<DuplicateGroup> groups = findDuplicates(
+            withAddress(createContact("1", "Anna Huber", null, null), "Favoritenstrasse 9", "1040"),
+            withAddress(createContact("2", "Huber Anna", null, null), "favoritenstrasse 9 ", "1040"));
+        assertThat(groups.size(), is(1));
+    }
+
+    @Test
+    public void testFamilySharingPhoneAndAddress_shouldNotBeDuplicates() throws Exception {
+        List<DuplicateGroup> groups = findDuplicates(
+            withAddress(createContact("1", "Anna Huber", null, "01 5880123"), "Favoritenstrasse 9", "1040"),
+            withAddress(createContact("2", "Karl Huber", null, "01 5880123"), "Favoritenstrasse 9", "1040"));
+        assertThat(groups.size(), is(0));
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.openengsb.core.api.DomainMethodExecutionException;
+import org.openengsb.core.api.ekb.EKBCommit;
+import org.openengsb.core.api.ekb.PersistInterface;
+import org.openengsb.domain.contact.Contact;
+
+public class EKBCommitPipelineTest {
+
+    private PersistInterface persistInterface;
+    private GcontactsServiceImpl service;
+    private EKBCommitPipeline pipeline;
+
+    @Before
+    public void setUp() throws Exception {
+        persistInterface = mock(PersistInterface.class);
+        service = new GcontactsServiceImpl("id");
+        service.setPersistInterface(persistInterface);
+        pipeline = new EKBCommitPipeline(service, 10000, 100, 100, 1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        doNothing().when(persistInterface).commit(any(EKBCommit.class));
+        pipeline.shutdown();
+    }
+
+    private static Contact createContact(String id) {
+        Contact contact = new Contact();
+        contact.setId(id);
+        return contact;
+    }
+
+    @Test
+    public void testOperationsOnDifferentContacts_shouldBeCommittedTogether() throws Exception {
+        pipeline.insert(createContact("1"));
+        pipeline.update(createContact("2"));
+        pipeline.delete("3");
+        pipeline.flush();
+
+        ArgumentCaptor<EKBCommit> commit = ArgumentCaptor.forClass(EKBCommit.class);
+        verify(persistInterface, times(1)).commit(commit.capture());
+        assertThat(commit.getValue().getInserts().size(), is(1));
+        assertThat(commit.getValue().getUpdates().size(), is(1));
+        assertThat(commit.getValue().getDeletes().size(), is(1));
+    }
+
+    @Test
+    public void testUpdateOfInsertedContact_shouldStayInsert() throws Exception {
+        pipeline.insert(createContact("1"));
+        pipeline.update(createContact("1"));
+        pipeline.flush();
+
+        ArgumentCaptor<EKBCommit> commit = ArgumentCaptor.forClass(EKBCommit.class);
+        verify(persistInterface).commit(commit.capture());
+        assertThat(commit.getValue().getInserts().size(), is(1));
+        assertThat(commit.getValue().getUpdates().size(), is(0));
+    }
+
+    @Test
+    public void testDeleteOfInsertedContact_shouldNotCommit() throws Exception {
+        pipeline.insert(createContact("1"));
+        pipeline.delete("1");
+        pipeline.flush();
+
+        verify(persistInterface, never()).commit(any(EKBCommit.class));
+    }
+
+    @Test
+    public void testShutdown_shouldCommitPendingOperations() throws Exception {
+        pipeline.update(createContact("1"));
+        pipeline.shutdown();
+
+        verify(persistInterface).commit(any(EKBCommit.class));
+    }
+
+    @Test
+    public void testQueuedContact_shouldNotSeeLaterChanges() throws Exception {
+        Contact contact = createContact("1");
+        contact.setName("before");
+        pipeline.update(contact);
+        contact.setName("after");
+        pipeline.flush();
+
+        ArgumentCaptor<EKBCommit> commit = ArgumentCaptor.forClass(EKBCommit.class);
+        verify(persistInterface).commit(commit.capture());
+        assertThat(((Contact) commit.getValue().getUpdates().get(0)).getName(), is("before"));
+    }
+
+    @Test
+    public void testFailedCommit_shouldBeRetried() throws Exception {
+        doThrow(new IllegalStateException("EKB down")).doNothing().when(persistInterface)
+            .commit(any(EKBCommit.class));
+        pipeline.update(createContact("1"));
+        pipeline.flush();
+
+        verify(persistInterface, times(2)).commit(any(EKBCommit.class));
+        assertThat(pipeline.getUndeliveredCommits(), is(0));
+    }
+
+    @Test
+    public void testFailingEKB_shouldFailFlushAndKeepCommits() throws Exception {
+        doThrow(new IllegalStateException("EKB down")).when(persistInterface).commit(any(EKBCommit.class));
+        pipeline.update(createContact("1"));
+        try {
+            pipeline.flush();
+            throw new AssertionError("flush has to report the failed commit");
+        } catch (DomainMethodExecutionException e) {
+            assertThat(pipeline.getUndeliveredCommits(), is(1));
+        }
+        verify(persistInterface, times(EKBCommitPipeline.MAX_ATTEMPTS)).commit(any(EKBCommit.class));
+
+        doNothing().when(persistInterface).commit(any(EKBCommit.class));
+        pipeline.flush();
+        assertThat(pipeline.getUndeliveredCommits(), is(0));
+    }
+
+    @Test
+    public void testFailingEKB_shouldNotFailLaterOperations() throws Exception {
+        pipeline = new EKBCommitPipeline(service, 10, 100, 100, 1);
+        doThrow(new IllegalStateException("EKB down")).when(persistInterface).commit(any(EKBCommit.class));
+        pipeline.update(createContact("1"));
+        for (int i = 0; i < 100 && pipeline.getUndeliveredCommits() == 0; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(pipeline.getUndeliveredCommits(), is(1));
+
+        pipeline.update(createContact("2"));
+        try {
+            pipeline.flush();
+            throw new AssertionError("flush has to report the failed commit");
+        } catch (DomainMethodExecutionException e) {
+            assertThat(pipeline.getUndeliveredCommits(), is(2));
+        }
+    }
+
+    @Test
+    public void testInterruptedWorker_shouldKeepCommitting() throws Exception {
+        pipeline.update(createContact("1"));
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("gcontacts-ekb-id")) {
+                thread.interrupt();
+            }
+        }
+        pipeline.update(createContact("2"));
+        pipeline.flush();
+
+        ArgumentCaptor<EKBCommit> commits = ArgumentCaptor.forClass(EKBCommit.class);
+        verify(persistInterface, atLeastOnce()).commit(commits.capture());
+        int updates = 0;
+        for (EKBCommit commit : commits.getAllValues()) {
+            updates += commit.getUpdates().size();
+        }
+        assertThat(updates, is(2));
+    }
+}
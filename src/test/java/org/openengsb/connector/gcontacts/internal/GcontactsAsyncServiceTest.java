@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openengsb.core.api.DomainMethodExecutionException;
+import org.openengsb.core.api.context.ContextHolder;
+import org.openengsb.domain.contact.Contact;
+
+public class GcontactsAsyncServiceTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<GcontactsAsyncService> services = new ArrayList<GcontactsAsyncService>();
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        for (GcontactsAsyncService service : services) {
+            service.shutdown();
+        }
+    }
+
+    /**
+     * creates an asynchronous service whose loads block until the test releases them
+     */
+    private GcontactsAsyncService createService(String account, int maxConcurrent, int queueCapacity,
+            long submitTimeout) {
+        GcontactsServiceImpl connector = mock(GcontactsServiceImpl.class);
+        when(connector.getGoogleUser()).thenReturn(account);
+        when(connector.loadContact("blocking")).thenAnswer(new Answer<Contact>() {
+            @Override
+            public Contact answer(InvocationOnMock invocation) throws Throwable {
+                release.await();
+                return new Contact();
+            }
+        });
+        GcontactsAsyncService service =
+            new GcontactsAsyncService(connector, maxConcurrent, queueCapacity, submitTimeout);
+        services.add(service);
+        return service;
+    }
+
+    @Test
+    public void testSaturatedService_shouldRejectCalls() throws Exception {
+        GcontactsAsyncService service = createService("saturated@example.org", 1, 1, 0);
+        service.loadContact("blocking", null);
+        service.loadContact("blocking", null);
+        try {
+            service.loadContact("blocking", null);
+            fail("a third call should not be accepted while one runs and one waits");
+        } catch (DomainMethodExecutionException e) {
+            assertThat(service.getPendingCalls(), is(2));
+        }
+    }
+
+    @Test
+    public void testSaturatedService_shouldMakeCallerWaitForFreeSlot() throws Exception {
+        GcontactsAsyncService service = createService("backpressure@example.org", 1, 0, 5000);
+        Future<Contact> first = service.loadContact("blocking", null);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                release.countDown();
+            }
+        }.start();
+
+        long start = System.nanoTime();
+        Future<Contact> second = service.loadContact("blocking", null);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100, is(true));
+        assertThat(first.isDone(), is(true));
+        second.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testInstancesOfOneAccount_shouldShareTheLimit() throws Exception {
+        GcontactsAsyncService first = createService("shared@example.org", 1, 0, 0);
+        GcontactsAsyncService second = createService("shared@example.org", 1, 0, 0);
+        GcontactsAsyncService other = createService("other@example.org", 1, 0, 0);
+        first.loadContact("blocking", null);
+        try {
+            second.loadContact("blocking", null);
+            fail("the account already has its maximum number of calls");
+        } catch (DomainMethodExecutionException e) {
+            // expected
+        }
+        other.loadContact("blocking", null);
+    }
+
+    @Test
+    public void testInstancesWithOtherLimits_shouldUseThoseOfTheFirst() throws Exception {
+        GcontactsAsyncService first = createService("conflicting@example.org", 1, 0, 0);
+        GcontactsAsyncService second = createService("conflicting@example.org", 5, 0, 0);
+        first.loadContact("blocking", null);
+        try {
+            second.loadContact("blocking", null);
+            fail("the account is limited to the one call of the first instance");
+        } catch (DomainMethodExecutionException e) {
+            // expected
+        }
+        assertThat(AccountLimits.forAccount("conflicting@example.org", 5, 0).getMaxConcurrent(), is(1));
+    }
+
+    @Test
+    public void testCall_shouldRunInContextOfCaller() throws Exception {
+        GcontactsServiceImpl connector = mock(GcontactsServiceImpl.class);
+        when(connector.getGoogleUser()).thenReturn("context@example.org");
+        when(connector.loadContact("context")).thenAnswer(new Answer<Contact>() {
+            @Override
+            public Contact answer(InvocationOnMock invocation) throws Throwable {
+                Contact contact = new Contact();
+                contact.setName(ContextHolder.get().getCurrentContextId());
+                return contact;
+            }
+        });
+        GcontactsAsyncService service = new GcontactsAsyncService(connector, 1, 0, 5000);
+        services.add(service);
+        String previous = ContextHolder.get().getCurrentContextId();
+        try {
+            ContextHolder.get().setCurrentContextId("first");
+            assertThat(service.loadContact("context", null).get(5, TimeUnit.SECONDS).getName(), is("first"));
+            ContextHolder.get().setCurrentContextId("second");
+            assertThat(service.loadContact("context", null).get(5, TimeUnit.SECONDS).getName(), is("second"));
+        } finally {
+            ContextHolder.get().setCurrentContextId(previous);
+        }
+    }
+
+    @Test
+    public void testFailedCall_shouldCompleteCallbackAndFuture() throws Exception {
+        GcontactsServiceImpl connector = mock(GcontactsServiceImpl.class);
+        final DomainMethodExecutionException failure = new DomainMethodExecutionException("google is down");
+        when(connector.getGoogleUser()).thenReturn("failure@example.org");
+        when(connector.loadContact("failing")).thenThrow(failure);
+        GcontactsAsyncService service = new GcontactsAsyncService(connector, 1, 0, 0);
+        services.add(service);
+
+        final AtomicReference<Throwable> reported = new AtomicReference<Throwable>();
+        final CountDownLatch called = new CountDownLatch(1);
+        Future<Contact> result = service.loadContact("failing", new AsyncCallback<Contact>() {
+            @Override
+            public void onSuccess(Contact contact) {
+                called.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                reported.set(cause);
+                called.countDown();
+            }
+        });
+
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail("the future should report the failure");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), sameInstance((Throwable) failure));
+        }
+        assertThat(called.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(reported.get(), sameInstance((Throwable) failure));
+        // the only slot of the account is free again
+        assertThat(service.loadContact("failing", null), notNullValue());
+    }
+}
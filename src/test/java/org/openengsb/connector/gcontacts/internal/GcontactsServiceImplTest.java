@@ -0,0 +1,495 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.openengsb.connector.gcontacts.internal.misc.ContactField;
+import org.openengsb.core.api.DomainMethodExecutionException;
+import org.openengsb.core.api.ekb.EKBCommit;
+import org.openengsb.core.api.ekb.PersistInterface;
+import org.openengsb.domain.contact.Contact;
+
+import com.google.gdata.util.PreconditionFailedException;
+
+public class GcontactsServiceImplTest {
+
+    private LocalContactsServer server;
+    private PersistInterface persistInterface;
+    private GcontactsServiceImpl service;
+    private File storage;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LocalContactsServer();
+        server.start();
+        storage = File.createTempFile("gcontacts", "");
+        storage.delete();
+        persistInterface = mock(PersistInterface.class);
+        service = server.createService("id");
+        service.setPersistInterface(persistInterface);
+        service.setStorageDirectory(storage.getPath());
+        service.setCommitPipeline(0, EKBCommitPipeline.DEFAULT_MAX_OPERATIONS,
+            EKBCommitPipeline.DEFAULT_QUEUE_CAPACITY);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        service.shutdown();
+        server.stop();
+        File[] files = storage.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        storage.delete();
+    }
+
+    private static Contact createContact(String name) {
+        Contact contact = new Contact();
+        contact.setName(name);
+        contact.setComment("met at the conference");
+        return contact;
+    }
+
+    private String path(String id) {
+        return id.substring(("http://" + server.getHost()).length());
+    }
+
+    @Test
+    public void testBatchWithRejectedContact_shouldReportEveryItemAndCommitOnlyCreated() throws Exception {
+        service.setBatchSize(2);
+        server.rejectName("rejected");
+        List<Contact> contacts =
+            Arrays.asList(createContact("first"), createContact("rejected"), createContact("third"));
+
+        List<BatchItemResult> results = service.createContacts(contacts);
+
+        assertThat(results.size(), is(3));
+        assertThat(results.get(0).isSuccess(), is(true));
+        assertThat(results.get(0).getCode(), is(201));
+        assertThat(results.get(0).getContactId(), is(contacts.get(0).getId()));
+        assertThat(server.getName(results.get(0).getContactId()), is("first"));
+        assertThat(results.get(1).isSuccess(), is(false));
+        assertThat(results.get(1).getIndex(), is(1));
+        assertThat(results.get(1).getCode(), is(400));
+        assertThat(results.get(2).isSuccess(), is(true));
+        assertThat(server.getName(results.get(2).getContactId()), is("third"));
+
+        ArgumentCaptor<EKBCommit> commits = ArgumentCaptor.forClass(EKBCommit.class);
+        verify(persistInterface, times(2)).commit(commits.capture());
+        assertThat(commits.getAllValues().get(0).getInserts(), is(Arrays.<Object>asList(contacts.get(0))));
+        assertThat(commits.getAllValues().get(1).getInserts(), is(Arrays.<Object>asList(contacts.get(2))));
+    }
+
+    @Test
+    public void testFailedBatchRequest_shouldReportAllItemsWithoutCommit() throws Exception {
+        server.setFailingBatches(true);
+
+        List<BatchItemResult> results =
+            service.createContacts(Arrays.asList(createContact("first"), createContact("second")));
+
+        for (BatchItemResult result : results) {
+            assertThat(result.isSuccess(), is(false));
+            assertThat(result.getCode(), is(-1));
+        }
+        verify(persistInterface, never()).commit(any(EKBCommit.class));
+    }
+
+    @Test
+    public void testBatchWithFailingEKB_shouldStillReportCreatedContacts() throws Exception {
+        doThrow(new IllegalStateException("EKB down")).when(persistInterface).commit(any(EKBCommit.class));
+
+        List<BatchItemResult> results =
+            service.createContacts(Arrays.asList(createContact("first"), createContact("second")));
+
+        assertThat(results.get(0).isSuccess(), is(true));
+        assertThat(results.get(1).isSuccess(), is(true));
+        assertThat(server.getName(results.get(1).getContactId()), is("second"));
+    }
+
+    @Test
+    public void testBatchDeleteOfUnknownContact_shouldOnlyCommitDeleted() throws Exception {
+        String id = server.add(createContact("deleted"));
+        String unknown = server.getFeedUrl() + "/unknown";
+
+        List<BatchItemResult> results = service.deleteContacts(Arrays.asList(unknown, id));
+
+        assertThat(results.get(0).isSuccess(), is(false));
+        assertThat(results.get(0).getCode(), is(404));
+        assertThat(results.get(1).isSuccess(), is(true));
+        ArgumentCaptor<EKBCommit> commit = ArgumentCaptor.forClass(EKBCommit.class);
+        verify(persistInterface).commit(commit.capture());
+        assertThat(commit.getValue().getDeletes().size(), is(1));
+        assertThat(((Contact) commit.getValue().getDeletes().get(0)).getId(), is(id));
+    }
+
+    @Test
+    public void testIteration_shouldFollowNextLinksPageByPage() throws Exception {
+        for (int i = 0; i < 7; i++) {
+            server.add(createContact("contact " + i));
+        }
+        service.setPageSize(3);
+
+        Iterator<Contact> contacts = service.iterateAllContacts();
+        for (int i = 0; i < 3; i++) {
+            assertThat(contacts.next().getName(), is("contact " + i));
+        }
+        // the second page is only requested once the first one is exhausted
+        assertThat(server.getRequests().size(), is(1));
+        for (int i = 3; i < 7; i++) {
+            assertThat(contacts.next().getName(), is("contact " + i));
+        }
+        assertThat(contacts.hasNext(), is(false));
+
+        List<String> requests = server.getRequests();
+        assertThat(requests.size(), is(3));
+        assertThat(requests.get(1).contains("start-index=4"), is(true));
+        assertThat(requests.get(2).contains("start-index=7"), is(true));
+    }
+
+    @Test
+    public void testUnchangedContact_shouldOnlyBeRevalidated() throws Exception {
+        String id = server.add(createContact("unchanged"));
+        Contact contact = service.loadContact(id);
+        server.clearRequests();
+
+        service.updateContact(contact);
+
+        String revalidation = "GET " + path(id) + " If-None-Match: " + server.getEtag(id);
+        assertThat(server.getRequests(), is(Arrays.asList(revalidation)));
+        verify(persistInterface, never()).commit(any(EKBCommit.class));
+    }
+
+    @Test
+    public void testContactChangedBehindTheCache_shouldBeWrittenAgain() throws Exception {
+        String id = server.add(createContact("mine"));
+        Contact contact = service.loadContact(id);
+        server.rename(id, "changed by someone else");
+
+        service.updateContact(contact);
+
+        assertThat(server.getName(id), is("mine"));
+        ArgumentCaptor<EKBCommit> commit = ArgumentCaptor.forClass(EKBCommit.class);
+        verify(persistInterface).commit(commit.capture());
+        assertThat(((Contact) commit.getValue().getUpdates().get(0)).getName(), is("mine"));
+    }
+
+    @Test
+    public void testCacheStatistics_shouldBePublishedAsMetrics() throws Exception {
+        String id = server.add(createContact("cached"));
+        Contact contact = service.loadContact(id);
+        service.loadContact(id);
+
+        service.updateContact(contact);
+
+        GcontactsMetricsMXBean metrics = service.getMetrics();
+        assertThat(metrics.getCacheHits(), is(1L));
+        assertThat(metrics.getCacheRevalidations(), is(1L));
+        assertThat(metrics.getCacheNotModified(), is(1L));
+        metrics.reset();
+        assertThat(metrics.getCacheHits(), is(0L));
+    }
+
+    @Test
+    public void testUpdate_shouldBeWrittenWithCachedEtag() throws Exception {
+        String id = server.add(createContact("before"));
+        Contact contact = service.loadContact(id);
+        String etag = server.getEtag(id);
+        server.clearRequests();
+
+        contact.setName("after");
+        service.updateContact(contact);
+
+        assertThat(server.getRequests(), is(Arrays.asList("PUT " + path(id) + " If-Match: " + etag)));
+        assertThat(server.getName(id), is("after"));
+    }
+
+    @Test
+    public void testUpdateOfChangedEntry_shouldBeRepeatedOnCurrentVersion() throws Exception {
+        String id = server.add(createContact("before"));
+        Contact contact = service.loadContact(id);
+        String cached = server.getEtag(id);
+        server.rename(id, "changed by someone else");
+        String current = server.getEtag(id);
+        server.clearRequests();
+
+        contact.setName("after");
+        service.updateContact(contact);
+
+        assertThat(server.getRequests(), is(Arrays.asList("PUT " + path(id) + " If-Match: " + cached,
+            "GET " + path(id), "PUT " + path(id) + " If-Match: " + current)));
+        assertThat(server.getName(id), is("after"));
+        verify(persistInterface).commit(any(EKBCommit.class));
+    }
+
+    @Test
+    public void testSameChangeMadeElsewhere_shouldNotBeWrittenAgain() throws Exception {
+        String id = server.add(createContact("before"));
+        Contact contact = service.loadContact(id);
+        server.rename(id, "after");
+        server.clearRequests();
+
+        contact.setName("after");
+        service.updateContact(contact);
+
+        assertThat(server.getRequests().size(), is(2));
+        assertThat(server.getRequests().get(1), is("GET " + path(id)));
+        verify(persistInterface, never()).commit(any(EKBCommit.class));
+    }
+
+    @Test
+    public void testUnchangedContactWithoutConditionalWrites_shouldBeRevalidatedAndWrittenUnconditionally()
+        throws Exception {
+        service.setConditionalWrites(false);
+        String id = server.add(createContact("before"));
+        Contact contact = service.loadContact(id);
+        String cached = server.getEtag(id);
+        server.rename(id, "changed by someone else");
+        server.clearRequests();
+
+        service.updateContact(contact);
+
+        assertThat(server.getRequests(), is(Arrays.asList("GET " + path(id) + " If-None-Match: " + cached,
+            "PUT " + path(id) + " If-Match: *")));
+        assertThat(server.getName(id), is("before"));
+    }
+
+    @Test
+    public void testEntryChangingAgain_shouldGiveUp() throws Exception {
+        String id = server.add(createContact("before"));
+        Contact contact = service.loadContact(id);
+        server.failNextWrites(2);
+
+        contact.setName("after");
+        try {
+            service.updateContact(contact);
+            fail("the update should give up after the second 412");
+        } catch (DomainMethodExecutionException e) {
+            assertThat(e.getCause() instanceof PreconditionFailedException, is(true));
+        }
+        assertThat(server.getName(id), is("before"));
+        verify(persistInterface, never()).commit(any(EKBCommit.class));
+    }
+
+    @Test
+    public void testLoadContact_shouldBeCompleteAfterPartialLoad() throws Exception {
+        String id = server.add(createContact("complete"));
+        Contact partial = service.loadContact(id, EnumSet.of(ContactField.NAME));
+        assertThat(partial.getComment() == null, is(true));
+        server.clearRequests();
+
+        Contact contact = service.loadContact(id);
+        Contact cached = service.loadContact(id);
+
+        assertThat(contact.getComment(), is("met at the conference"));
+        assertThat(cached.getName(), is("complete"));
+        assertThat(cached.getComment(), is("met at the conference"));
+        // the partial entry is not cached, the complete one is read once and then served from the cache
+        assertThat(server.getRequests(), is(Arrays.asList("GET " + path(id))));
+    }
+
+    @Test
+    public void testLoadContacts_shouldKeepOrderAndReportUnknownIds() throws Exception {
+        String first = server.add(createContact("first"));
+        String second = server.add(createContact("second"));
+        String unknown = server.getFeedUrl() + "/unknown";
+        service.loadContact(first);
+        server.clearRequests();
+
+        List<ContactLoadResult> results = service.loadContacts(Arrays.asList(second, unknown, first, second));
+
+        assertThat(results.size(), is(4));
+        assertThat(results.get(0).getContact().getName(), is("second"));
+        assertThat(results.get(1).isNotFound(), is(true));
+        assertThat(results.get(1).getContactId(), is(unknown));
+        assertThat(results.get(2).getContact().getName(), is("first"));
+        assertThat(results.get(3).getContact().getName(), is("second"));
+        for (int i = 0; i < results.size(); i++) {
+            assertThat(results.get(i).getIndex(), is(i));
+        }
+        // the cached contact is served locally and the others are read with one batch request
+        assertThat(server.getRequests(), is(Arrays.asList("POST " + LocalContactsServer.FEED_PATH + "/batch")));
+    }
+
+    @Test
+    public void testContactChangedDuringSync_shouldBeReadByNextSync() throws Exception {
+        final List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 6; i++) {
+            ids.add(server.add(createContact("contact " + i)));
+        }
+        service.setPageSize(2);
+        // while the second page is read, a contact of the first and one of the last page change
+        server.afterPage(3, new Runnable() {
+            @Override
+            public void run() {
+                server.rename(ids.get(0), "changed on a page already read");
+                server.rename(ids.get(5), "changed on a page not read yet");
+            }
+        });
+
+        SyncResult full = service.synchronize();
+        assertThat(full.getInserted(), is(6));
+
+        SyncResult incremental = service.synchronize();
+        assertThat(incremental.isFullSync(), is(false));
+        assertThat(incremental.getUpdated(), is(2));
+        ArgumentCaptor<EKBCommit> commit = ArgumentCaptor.forClass(EKBCommit.class);
+        verify(persistInterface, times(2)).commit(commit.capture());
+        assertThat(((Contact) commit.getValue().getUpdates().get(0)).getName(), is("changed on a page already read"));
+    }
+
+    @Test
+    public void testScheduledSync_shouldRefreshIndex() throws Exception {
+        String id = server.add(createContact("before"));
+        service.setIndexEnabled(true);
+        assertThat(service.retrieveContacts(null, "before", null, null, null, null).size(), is(1));
+        server.rename(id, "changed elsewhere");
+
+        service.setSyncInterval(1);
+
+        List<Contact> found = Collections.emptyList();
+        for (int i = 0; i < 100 && found.isEmpty(); i++) {
+            Thread.sleep(50);
+            found = service.retrieveContacts(null, "changed elsewhere", null, null, null, null);
+        }
+        assertThat(found.size(), is(1));
+        assertThat(found.get(0).getId(), is(id));
+    }
+
+    @Test
+    public void testSyncWithExpiredWatermark_shouldCommitMirroredContactsAsUpdates() throws Exception {
+        String mirrored = server.add(createContact("mirrored"));
+        service.synchronize();
+        String created = server.add(createContact("created"));
+        server.expireDeletions();
+
+        SyncResult fallback = service.synchronize();
+
+        assertThat(fallback.isFullSync(), is(true));
+        assertThat(fallback.getInserted(), is(1));
+        assertThat(fallback.getUpdated(), is(1));
+        ArgumentCaptor<EKBCommit> commit = ArgumentCaptor.forClass(EKBCommit.class);
+        verify(persistInterface, times(2)).commit(commit.capture());
+        assertThat(((Contact) commit.getValue().getUpdates().get(0)).getId(), is(mirrored));
+        assertThat(((Contact) commit.getValue().getInserts().get(0)).getId(), is(created));
+    }
+
+    @Test
+    public void testShardedSync_shouldSkipOverlappingEntriesAndFindChangesInNextSync() throws Exception {
+        final List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 30; i++) {
+            ids.add(server.add(createContact("contact " + i)));
+        }
+        service.setPageSize(10);
+        service.setSyncParallelism(3);
+        // once the first page is read, a contact of it and one of the last page move to the end of the feed
+        server.afterPage(1, new Runnable() {
+            @Override
+            public void run() {
+                server.rename(ids.get(4), "changed on the first page");
+                server.rename(ids.get(24), "changed on the last page");
+            }
+        });
+
+        SyncResult full = service.synchronize();
+
+        assertThat(full.getInserted(), is(30));
+        ArgumentCaptor<EKBCommit> commit = ArgumentCaptor.forClass(EKBCommit.class);
+        verify(persistInterface).commit(commit.capture());
+        Set<String> inserted = new HashSet<String>();
+        for (Object contact : commit.getValue().getInserts()) {
+            inserted.add(((Contact) contact).getId());
+        }
+        assertThat(inserted, is((Set<String>) new HashSet<String>(ids)));
+        List<String> requests = server.getRequests();
+        assertThat(requests.size(), is(3));
+        // the remaining pages are read in parallel, so their requests arrive in any order
+        List<String> pages = new ArrayList<String>(requests.subList(1, 3));
+        Collections.sort(pages);
+        assertThat(pages.get(0).contains("start-index=1&max-results=20"), is(true));
+        assertThat(pages.get(1).contains("start-index=11&max-results=20"), is(true));
+
+        SyncResult incremental = service.synchronize();
+        assertThat(incremental.getUpdated(), is(2));
+    }
+
+    @Test
+    public void testShardedSyncWithManyMovedEntries_shouldReadTheFeedAgain() throws Exception {
+        final List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            ids.add(server.add(createContact("contact " + i)));
+        }
+        service.setPageSize(10);
+        service.setSyncParallelism(2);
+        // more contacts than the pages overlap move to the end of the feed once the two pages read in parallel after
+        // the first one were sent, which shifts unread entries in front of the pages requested next
+        final AtomicInteger read = new AtomicInteger();
+        final Runnable move = new Runnable() {
+            @Override
+            public void run() {
+                if (read.incrementAndGet() == 2) {
+                    for (int i = 0; i <= ShardedFeedReader.PAGE_OVERLAP + 1; i++) {
+                        server.rename(ids.get(i), "moved " + i);
+                    }
+                }
+            }
+        };
+        server.afterPage(1, new Runnable() {
+            @Override
+            public void run() {
+                server.afterPage(1, move);
+            }
+        });
+        server.afterPage(11, move);
+
+        SyncResult full = service.synchronize();
+        assertThat(full.getInserted(), is(50));
+        ArgumentCaptor<EKBCommit> commit = ArgumentCaptor.forClass(EKBCommit.class);
+        verify(persistInterface).commit(commit.capture());
+        Set<String> inserted = new HashSet<String>();
+        for (Object contact : commit.getValue().getInserts()) {
+            inserted.add(((Contact) contact).getId());
+        }
+        assertThat(inserted, is((Set<String>) new HashSet<String>(ids)));
+    }
+}
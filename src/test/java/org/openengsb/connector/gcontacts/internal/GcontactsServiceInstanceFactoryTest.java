@@ -20,17 +20,39 @@ package org.openengsb.connector.gcontacts.internal;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
 import org.junit.Test;
 import org.openengsb.core.api.Connector;
 
 public class GcontactsServiceInstanceFactoryTest {
 
+    private final List<GcontactsServiceInstanceFactory> factories = new ArrayList<GcontactsServiceInstanceFactory>();
+
+    @After
+    public void tearDown() throws Exception {
+        for (GcontactsServiceInstanceFactory factory : factories) {
+            factory.destroy();
+        }
+    }
+
+    private GcontactsServiceInstanceFactory createFactory() {
+        GcontactsServiceInstanceFactory factory = new GcontactsServiceInstanceFactory();
+        factories.add(factory);
+        return factory;
+    }
+
     @Test
     public void testUpdateServiceInstance() throws Exception {
-        GcontactsServiceInstanceFactory gsif = new GcontactsServiceInstanceFactory();
+        GcontactsServiceInstanceFactory gsif = createFactory();
         Map<String, String> attributes = new HashMap<String, String>();
         Connector service = gsif.createNewInstance("id");
         gsif.applyAttributes(service, attributes);
@@ -39,7 +61,7 @@ public class GcontactsServiceInstanceFactoryTest {
 
     @Test
     public void testUpdateValidation() throws Exception {
-        GcontactsServiceInstanceFactory gsif = new GcontactsServiceInstanceFactory();
+        GcontactsServiceInstanceFactory gsif = createFactory();
         Map<String, String> attributes = new HashMap<String, String>();
         attributes.put("google.user", "user");
         attributes.put("google.password", "pwd");
@@ -48,4 +70,70 @@ public class GcontactsServiceInstanceFactoryTest {
         assertThat(service.getGooglePassword(), is("pwd"));
         assertThat(service.getGoogleUser(), is("user"));
     }
+
+    @Test
+    public void testApplyBatchSize() throws Exception {
+        GcontactsServiceInstanceFactory gsif = createFactory();
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put("batch.size", "25");
+        GcontactsServiceImpl service = new GcontactsServiceImpl("id");
+        gsif.applyAttributes(service, attributes);
+        assertThat(service.getBatchSize(), is(25));
+    }
+
+    @Test
+    public void testSyncParallelism_shouldBeCappedByRateLimit() throws Exception {
+        GcontactsServiceInstanceFactory gsif = createFactory();
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put("sync.parallelism", "8");
+        attributes.put("rate.limit", "2.5");
+        GcontactsServiceImpl service = new GcontactsServiceImpl("id");
+        gsif.applyAttributes(service, attributes);
+        assertThat(service.getSyncParallelism(), is(8));
+        assertThat(service.getEffectiveSyncParallelism(), is(3));
+    }
+
+    @Test
+    public void testSyncInterval_shouldScheduleSyncUntilShutdown() throws Exception {
+        GcontactsServiceInstanceFactory gsif = createFactory();
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put("sync.interval", "3600");
+        GcontactsServiceImpl service = new GcontactsServiceImpl("id");
+        gsif.applyAttributes(service, attributes);
+        assertThat(service.isSyncScheduled(), is(true));
+        service.shutdown();
+        assertThat(service.isSyncScheduled(), is(false));
+    }
+
+    @Test
+    public void testCreateInstanceAgain_shouldShutDownPreviousInstance() throws Exception {
+        GcontactsServiceInstanceFactory gsif = createFactory();
+        GcontactsServiceImpl first = (GcontactsServiceImpl) gsif.createNewInstance("recreated");
+        first.setHealthCheckInterval(3600);
+        GcontactsServiceImpl second = (GcontactsServiceImpl) gsif.createNewInstance("recreated");
+        assertThat(first.getHealthMonitor().isProbing(), is(false));
+        assertThat(gsif.getInstance("recreated") == second, is(true));
+        assertThat(getMBeanServer().isRegistered(metricsName("recreated")), is(true));
+    }
+
+    @Test
+    public void testDestroy_shouldUnregisterMBeansAndStopHealthMonitors() throws Exception {
+        GcontactsServiceInstanceFactory gsif = createFactory();
+        GcontactsServiceImpl service = (GcontactsServiceImpl) gsif.createNewInstance("destroyed");
+        service.setHealthCheckInterval(3600);
+        assertThat(getMBeanServer().isRegistered(metricsName("destroyed")), is(true));
+        gsif.destroy();
+        assertThat(getMBeanServer().isRegistered(metricsName("destroyed")), is(false));
+        assertThat(service.getHealthMonitor().isProbing(), is(false));
+        assertThat(gsif.getInstance("destroyed") == null, is(true));
+    }
+
+    private static MBeanServer getMBeanServer() {
+        return ManagementFactory.getPlatformMBeanServer();
+    }
+
+    private static ObjectName metricsName(String id) throws Exception {
+        return new ObjectName("org.openengsb.connector.gcontacts:type=GcontactsConnector,instance="
+                + ObjectName.quote(id));
+    }
 }
@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gdata.client.contacts.ContactsService;
+import com.google.gdata.util.ServiceException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class GcontactsSessionTest {
+
+    private HttpServer server;
+    private AtomicInteger loginRequests;
+    private AtomicInteger rejectedRequests;
+    private String baseUrl;
+    private GcontactsSession session;
+    private volatile String acceptEncoding;
+
+    @Before
+    public void setUp() throws Exception {
+        loginRequests = new AtomicInteger();
+        rejectedRequests = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/accounts/ClientLogin", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int count = loginRequests.incrementAndGet();
+                respond(exchange, 200, "SID=sid\nLSID=lsid\nAuth=token" + count + "\n");
+            }
+        });
+        server.createContext("/m8/feeds/contacts/default/full", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                String auth = exchange.getRequestHeaders().getFirst("Authorization");
+                if (auth == null || auth.endsWith("token1")) {
+                    rejectedRequests.incrementAndGet();
+                    exchange.getResponseHeaders().set("WWW-Authenticate", "GoogleLogin realm=\"ClientLogin\"");
+                    respond(exchange, 401, "Token invalid");
+                } else {
+                    respond(exchange, 200, "");
+                }
+            }
+        });
+        server.createContext("/slow", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange, 200, "");
+            }
+        });
+        server.start();
+        String host = "localhost:" + server.getAddress().getPort();
+        baseUrl = "http://" + host;
+        session = new GcontactsSession("http", host);
+        session.setCredentials("user", "pwd");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    @Test
+    public void testConcurrentCallsShareOneLogin() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        List<Future<ContactsService>> results = new ArrayList<Future<ContactsService>>();
+        for (int i = 0; i < 50; i++) {
+            results.add(executor.submit(new Callable<ContactsService>() {
+                @Override
+                public ContactsService call() throws Exception {
+                    return session.getService();
+                }
+            }));
+        }
+        ContactsService first = results.get(0).get();
+        for (Future<ContactsService> result : results) {
+            assertThat(result.get(), sameInstance(first));
+        }
+        executor.shutdown();
+        assertThat(loginRequests.get(), is(1));
+        assertThat(session.getAuthenticationCount(), is(1));
+    }
+
+    @Test
+    public void testRejectedToken_shouldLoginAgainOnce() throws Exception {
+        final URL url = new URL(baseUrl + "/m8/feeds/contacts/default/full/1");
+        ServiceCall<Void> delete = new ServiceCall<Void>() {
+            @Override
+            public Void call(ContactsService service) throws IOException, ServiceException {
+                service.delete(url);
+                return null;
+            }
+        };
+        session.execute(delete);
+        session.execute(delete);
+        assertThat(rejectedRequests.get(), is(1));
+        assertThat(loginRequests.get(), is(2));
+    }
+
+    @Test
+    public void testExpiredToken_shouldLoginAgain() throws Exception {
+        session.getService();
+        session.setTokenLifetime(0);
+        session.getService();
+        assertThat(loginRequests.get(), is(2));
+    }
+
+    @Test
+    public void testGzip_shouldBeRequested() throws Exception {
+        final URL url = new URL(baseUrl + "/m8/feeds/contacts/default/full/1");
+        session.getService();
+        session.execute(new ServiceCall<Void>() {
+            @Override
+            public Void call(ContactsService service) throws IOException, ServiceException {
+                service.delete(url);
+                return null;
+            }
+        });
+        assertThat(acceptEncoding, is("gzip"));
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void testSlowResponse_shouldTimeOut() throws Exception {
+        final URL url = new URL(baseUrl + "/slow");
+        session.setTransport(1000, 200, true);
+        session.execute(new ServiceCall<Void>() {
+            @Override
+            public Void call(ContactsService service) throws IOException, ServiceException {
+                service.delete(url);
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openengsb.core.api.AliveState;
+import org.openengsb.core.api.DomainMethodExecutionException;
+
+import com.google.gdata.util.AuthenticationException;
+import com.google.gdata.util.ServiceException;
+
+public class HealthMonitorTest {
+
+    private GcontactsSession session;
+    private HealthMonitor monitor;
+
+    @Before
+    public void setUp() throws Exception {
+        session = mock(GcontactsSession.class);
+        monitor = new HealthMonitor(session, "http://localhost/feed");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        monitor.stop();
+    }
+
+    @Test
+    public void testNewMonitor_shouldBeDisconnected() throws Exception {
+        assertThat(monitor.getState(), is(AliveState.DISCONNECTED));
+    }
+
+    @Test
+    public void testRequestOutcomes_shouldUpdateState() throws Exception {
+        monitor.connecting();
+        assertThat(monitor.getState(), is(AliveState.CONNECTING));
+        monitor.requestSucceeded();
+        assertThat(monitor.getState(), is(AliveState.ONLINE));
+        monitor.requestFailed(new IOException("connection refused"));
+        assertThat(monitor.getState(), is(AliveState.OFFLINE));
+        monitor.requestFailed(new AuthenticationException("bad credentials"));
+        assertThat(monitor.getState(), is(AliveState.DISCONNECTED));
+    }
+
+    @Test
+    public void testClientError_shouldStayOnline() throws Exception {
+        monitor.requestSucceeded();
+        ServiceException notFound = new ServiceException("not found");
+        notFound.setHttpErrorCodeOverride(404);
+        monitor.requestFailed(notFound);
+        assertThat(monitor.getState(), is(AliveState.ONLINE));
+    }
+
+    @Test(expected = DomainMethodExecutionException.class)
+    public void testOfflineWhileProbing_shouldFailFast() throws Exception {
+        monitor.start(3600);
+        monitor.requestFailed(new IOException("connection refused"));
+        monitor.checkAvailable();
+    }
+
+    @Test
+    public void testOfflineWithoutProbe_shouldLetCallsThrough() throws Exception {
+        when(session.getUser()).thenReturn("user");
+        monitor.requestFailed(new IOException("connection refused"));
+        monitor.checkAvailable();
+    }
+}
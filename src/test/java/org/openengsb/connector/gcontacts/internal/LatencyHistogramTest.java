@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets_shouldCoverEveryValueOnce() throws Exception {
+        for (long value = 0; value < 100000; value++) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertThat(LatencyHistogram.upperBound(bucket) >= value, is(true));
+            if (bucket > 0) {
+                assertThat(LatencyHistogram.upperBound(bucket - 1) < value, is(true));
+            }
+        }
+    }
+
+    @Test
+    public void testPercentiles_shouldBeWithinBucketError() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        long median = histogram.getPercentile(0.5);
+        assertThat(median >= 500000 && median <= 625000, is(true));
+        assertThat(histogram.getPercentile(0.99) >= 990000, is(true));
+        assertThat(histogram.getMax(), is(1000000L));
+        assertThat(histogram.getCount(), is(1000L));
+    }
+
+    @Test
+    public void testEmptyHistogram_shouldReportZero() throws Exception {
+        assertThat(new LatencyHistogram().getPercentile(0.99), is(0L));
+    }
+}
@@ -0,0 +1,483 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openengsb.connector.gcontacts.internal.misc.ContactConverter;
+import org.openengsb.domain.contact.Contact;
+
+import com.google.gdata.client.contacts.ContactsService;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.ExtensionProfile;
+import com.google.gdata.data.Link;
+import com.google.gdata.data.batch.BatchOperationType;
+import com.google.gdata.data.batch.BatchStatus;
+import com.google.gdata.data.batch.BatchUtils;
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.contacts.ContactFeed;
+import com.google.gdata.data.extensions.Deleted;
+import com.google.gdata.data.extensions.FullName;
+import com.google.gdata.data.extensions.Name;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.VersionRegistry;
+import com.google.gdata.util.common.xml.XmlWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * in-process stand-in for the google contacts API. Unlike the canned FakeGDataServer of the benchmarks it keeps the
+ * entries it is given, versions them with ETags, answers conditional requests with 304 and 412, serves paged feeds
+ * ordered and filtered like google does and executes batch feeds. Every request is recorded for the assertions.
+ */
+public class LocalContactsServer {
+
+    static final String FEED_PATH = "/m8/feeds/contacts/default/full";
+
+    private static final ExtensionProfile PROFILE = new ContactsService(GcontactsSession.APPLICATION_NAME)
+        .getExtensionProfile();
+
+    private final HttpServer server;
+    private final Map<String, ContactEntry> entries = new LinkedHashMap<String, ContactEntry>();
+    private final Map<String, Integer> versions = new HashMap<String, Integer>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+    private final Set<String> rejectedNames = new HashSet<String>();
+    private final Map<Integer, Runnable> pageActions = new HashMap<Integer, Runnable>();
+    private int nextId;
+    private long lastTime;
+    private int failingWrites;
+    private boolean failingBatches;
+    private boolean deletionsExpired;
+
+    public LocalContactsServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/accounts/ClientLogin", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                read(exchange);
+                respond(exchange, 200, "text/plain", "SID=sid\nLSID=lsid\nAuth=token\n");
+            }
+        });
+        server.createContext(FEED_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                // ETags are only written for version 2 and later
+                VersionRegistry.ensureRegistry().setThreadVersion(ContactsService.Versions.V3);
+                try {
+                    dispatch(exchange);
+                } catch (RuntimeException e) {
+                    respond(exchange, 500, "text/plain", String.valueOf(e));
+                }
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public String getHost() {
+        return "localhost:" + server.getAddress().getPort();
+    }
+
+    public String getFeedUrl() {
+        return "http://" + getHost() + FEED_PATH;
+    }
+
+    /**
+     * creates a connector instance talking to this server
+     */
+    public GcontactsServiceImpl createService(String id) {
+        GcontactsServiceImpl service = new GcontactsServiceImpl(id, new GcontactsSession("http", getHost()),
+            getFeedUrl());
+        service.setGoogleUser("user");
+        service.setGooglePassword("pwd");
+        return service;
+    }
+
+    /**
+     * stores the contact as if it was created at google and returns its id
+     */
+    public synchronized String add(Contact contact) {
+        ContactEntry entry = ContactConverter.convertContactToContactEntry(contact);
+        String id = getFeedUrl() + "/" + (++nextId);
+        entry.setId(id);
+        entry.getLinks().add(new Link(Link.Rel.ENTRY_EDIT, Link.Type.ATOM, id));
+        entry.getLinks().add(new Link(Link.Rel.SELF, Link.Type.ATOM, id));
+        entry.setPublished(new DateTime(now(), 0));
+        store(id, entry);
+        return id;
+    }
+
+    /**
+     * changes the name of a stored contact, as if another client edited it
+     */
+    public synchronized void rename(String id, String name) {
+        ContactEntry entry = entries.get(id);
+        entry.setName(new Name());
+        entry.getName().setFullName(new FullName(name, null));
+        store(id, entry);
+    }
+
+    /**
+     * deletes a stored contact, as if another client deleted it. Like google it is kept as deleted for queries that
+     * ask for deletions.
+     */
+    public synchronized void remove(String id) {
+        ContactEntry entry = entries.get(id);
+        entry.setDeleted(new Deleted());
+        store(id, entry);
+    }
+
+    /**
+     * returns the name the server currently has for the contact
+     */
+    public synchronized String getName(String id) {
+        return entries.get(id).getName().getFullName().getValue();
+    }
+
+    public synchronized String getEtag(String id) {
+        return entries.get(id).getEtag();
+    }
+
+    /**
+     * returns every request to the contacts feed as method, path and query, followed by the If-Match and
+     * If-None-Match headers if they were sent
+     */
+    public List<String> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<String>(requests);
+        }
+    }
+
+    public void clearRequests() {
+        requests.clear();
+    }
+
+    /**
+     * answers the next writes of single entries with 412 regardless of their ETag
+     */
+    public synchronized void failNextWrites(int writes) {
+        failingWrites = writes;
+    }
+
+    /**
+     * answers whole batch requests with 500
+     */
+    public synchronized void setFailingBatches(boolean failingBatches) {
+        this.failingBatches = failingBatches;
+    }
+
+    /**
+     * answers queries for changes since a given time with 410, like google once it dropped the deletions since then
+     */
+    public synchronized void expireDeletions() {
+        deletionsExpired = true;
+    }
+
+    /**
+     * rejects batch inserts and updates of contacts with the given name with 400
+     */
+    public synchronized void rejectName(String name) {
+        rejectedNames.add(name);
+    }
+
+    /**
+     * runs the action once after the feed page starting at the given index was read, before it is sent
+     */
+    public synchronized void afterPage(int startIndex, Runnable action) {
+        pageActions.put(startIndex, action);
+    }
+
+    /**
+     * returns a time after every time returned before, so all changes are ordered
+     */
+    public synchronized long now() {
+        lastTime = Math.max(System.currentTimeMillis(), lastTime + 1);
+        return lastTime;
+    }
+
+    private void store(String id, ContactEntry entry) {
+        Integer version = versions.get(id);
+        version = version == null ? 1 : version + 1;
+        versions.put(id, version);
+        entry.setEtag("\"" + id.substring(id.lastIndexOf('/') + 1) + "." + version + "\"");
+        entry.setUpdated(new DateTime(now(), 0));
+        entries.put(id, entry);
+    }
+
+    private synchronized void dispatch(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        requests.add(method + " " + exchange.getRequestURI() + (ifMatch == null ? "" : " If-Match: " + ifMatch)
+                + (ifNoneMatch == null ? "" : " If-None-Match: " + ifNoneMatch));
+        String body = read(exchange);
+
+        if (path.equals(FEED_PATH + "/batch")) {
+            if (failingBatches) {
+                respond(exchange, 500, "text/plain", "Internal Server Error");
+            } else {
+                respond(exchange, 200, "application/atom+xml", generate(batch(parseFeed(body))));
+            }
+            return;
+        }
+        if (path.equals(FEED_PATH)) {
+            if ("POST".equals(method)) {
+                ContactEntry entry = parseEntry(body);
+                Contact contact = ContactConverter.convertContactEntryToContact(entry);
+                respond(exchange, 201, "application/atom+xml", generate(entries.get(add(contact))));
+            } else if (deletionsExpired
+                    && String.valueOf(exchange.getRequestURI().getRawQuery()).contains("updated-min")) {
+                respond(exchange, 410, "text/plain", "Gone");
+            } else {
+                respond(exchange, 200, "application/atom+xml", generate(feed(exchange)));
+            }
+            return;
+        }
+
+        String id = "http://" + getHost() + path;
+        ContactEntry current = entries.get(id);
+        if (current == null || current.hasDeleted()) {
+            respond(exchange, 404, "text/plain", "Contact not found.");
+        } else if ("GET".equals(method)) {
+            if (current.getEtag().equals(ifNoneMatch)) {
+                respond(exchange, 304, "text/plain", "");
+            } else {
+                respond(exchange, 200, "application/atom+xml", generate(current));
+            }
+        } else if (failingWrites > 0 || ifMatch != null && !"*".equals(ifMatch) && !ifMatch.equals(current.getEtag())) {
+            failingWrites = Math.max(0, failingWrites - 1);
+            respond(exchange, 412, "text/plain", "Etags mismatch");
+        } else if ("PUT".equals(method)) {
+            ContactEntry entry = parseEntry(body);
+            entry.setId(id);
+            entry.setPublished(current.getPublished());
+            store(id, entry);
+            respond(exchange, 200, "application/atom+xml", generate(entry));
+        } else if ("DELETE".equals(method)) {
+            remove(id);
+            respond(exchange, 200, "text/plain", "");
+        } else {
+            respond(exchange, 405, "text/plain", "Method not allowed");
+        }
+    }
+
+    private ContactFeed feed(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        int start = parameters.containsKey("start-index") ? Integer.parseInt(parameters.get("start-index")) : 1;
+        int max = parameters.containsKey("max-results") ? Integer.parseInt(parameters.get("max-results")) : 25;
+        boolean showDeleted = "true".equals(parameters.get("showdeleted"));
+        long updatedMin = parameters.containsKey("updated-min")
+            ? DateTime.parseDateTime(parameters.get("updated-min")).getValue() : Long.MIN_VALUE;
+
+        List<ContactEntry> matching = new ArrayList<ContactEntry>();
+        for (ContactEntry entry : entries.values()) {
+            if ((showDeleted || !entry.hasDeleted()) && entry.getUpdated().getValue() >= updatedMin) {
+                matching.add(entry);
+            }
+        }
+        if ("lastmodified".equals(parameters.get("orderby"))) {
+            Collections.sort(matching, new Comparator<ContactEntry>() {
+                @Override
+                public int compare(ContactEntry a, ContactEntry b) {
+                    return Long.valueOf(a.getUpdated().getValue()).compareTo(b.getUpdated().getValue());
+                }
+            });
+        }
+
+        ContactFeed feed = new ContactFeed();
+        feed.setId(getFeedUrl());
+        feed.setUpdated(new DateTime(now(), 0));
+        feed.setTotalResults(matching.size());
+        feed.setStartIndex(start);
+        feed.setItemsPerPage(max);
+        int end = Math.min(matching.size(), start - 1 + max);
+        for (int i = start - 1; i < end; i++) {
+            feed.getEntries().add(matching.get(i));
+        }
+        if (end < matching.size()) {
+            String query = exchange.getRequestURI().getRawQuery().replaceAll("(^|&)start-index=\\d+", "");
+            feed.getLinks().add(new Link(Link.Rel.NEXT, Link.Type.ATOM, getFeedUrl() + "?" + query
+                    + (query.length() == 0 ? "" : "&") + "start-index=" + (end + 1)));
+        }
+        Runnable action = pageActions.remove(start);
+        if (action != null) {
+            action.run();
+        }
+        return feed;
+    }
+
+    private ContactFeed batch(ContactFeed request) {
+        ContactFeed response = new ContactFeed();
+        response.setId(getFeedUrl() + "/batch");
+        for (ContactEntry item : request.getEntries()) {
+            BatchOperationType type = BatchUtils.getBatchOperationType(item);
+            ContactEntry current = item.getId() == null ? null : entries.get(item.getId());
+            if (current != null && current.hasDeleted()) {
+                current = null;
+            }
+            String name = item.hasName() && item.getName().hasFullName()
+                ? item.getName().getFullName().getValue() : null;
+            ContactEntry result;
+            if (type != BatchOperationType.INSERT && current == null) {
+                result = status(new ContactEntry(), item, 404, "Not Found");
+                result.setId(item.getId());
+            } else if (rejectedNames.contains(name)) {
+                result = status(new ContactEntry(), item, 400, "Bad Request");
+            } else if (type == BatchOperationType.INSERT) {
+                result = status(entries.get(add(ContactConverter.convertContactEntryToContact(item))), item, 201,
+                    "Created");
+            } else if (type == BatchOperationType.UPDATE) {
+                item.setPublished(current.getPublished());
+                store(item.getId(), item);
+                result = status(item, item, 200, "Success");
+            } else if (type == BatchOperationType.DELETE) {
+                remove(item.getId());
+                result = status(new ContactEntry(), item, 200, "Success");
+            } else {
+                result = status(current, item, 200, "Success");
+            }
+            response.getEntries().add(result);
+        }
+        return response;
+    }
+
+    /**
+     * returns a copy of the entry carrying the batch id, operation and the given status of the request item
+     */
+    private static ContactEntry status(ContactEntry entry, ContactEntry item, int code, String reason) {
+        ContactEntry result = parseEntry(generate(entry));
+        result.setEtag(entry.getEtag());
+        BatchUtils.setBatchId(result, BatchUtils.getBatchId(item));
+        BatchUtils.setBatchOperationType(result, BatchUtils.getBatchOperationType(item));
+        BatchStatus status = new BatchStatus();
+        status.setCode(code);
+        status.setReason(reason);
+        result.setExtension(status);
+        return result;
+    }
+
+    private static String generate(ContactFeed feed) {
+        try {
+            StringWriter writer = new StringWriter();
+            XmlWriter xml = new XmlWriter(writer);
+            feed.generateAtom(xml, PROFILE);
+            xml.flush();
+            return writer.toString();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String generate(ContactEntry entry) {
+        try {
+            StringWriter writer = new StringWriter();
+            XmlWriter xml = new XmlWriter(writer);
+            entry.generateAtom(xml, PROFILE);
+            xml.flush();
+            return writer.toString();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ContactEntry parseEntry(String xml) {
+        ContactEntry entry = new ContactEntry();
+        try {
+            entry.parseAtom(PROFILE, new StringReader(xml));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } catch (ServiceException e) {
+            throw new IllegalStateException(e);
+        }
+        // the ETag of a stored entry is set by the server, not taken from the request
+        entry.setEtag(null);
+        return entry;
+    }
+
+    private static ContactFeed parseFeed(String xml) {
+        ContactFeed feed = new ContactFeed();
+        try {
+            feed.parseAtom(PROFILE, new StringReader(xml));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } catch (ServiceException e) {
+            throw new IllegalStateException(e);
+        }
+        return feed;
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                parameters.put(pair.substring(0, separator), URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    private static String read(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    private static void respond(HttpExchange exchange, int code, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.google.gdata.util.ServiceException;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testParseRetryAfterSeconds() throws Exception {
+        assertThat(RetryPolicy.parseRetryAfter("120"), is(120000L));
+    }
+
+    @Test
+    public void testParseInvalidRetryAfter_shouldReturnZero() throws Exception {
+        assertThat(RetryPolicy.parseRetryAfter("soon"), is(0L));
+    }
+
+    @Test
+    public void testDelay_shouldGrowExponentiallyWithinBounds() throws Exception {
+        RetryPolicy policy = new RetryPolicy(5, 100, 1000);
+        ServiceException e = new ServiceException("unavailable");
+        for (int i = 0; i < 10; i++) {
+            long first = policy.getDelay(e, 0);
+            assertTrue(first >= 50 && first <= 101);
+            long third = policy.getDelay(e, 2);
+            assertTrue(third >= 200 && third <= 401);
+            assertTrue(policy.getDelay(e, 8) <= 1001);
+        }
+    }
+
+    @Test
+    public void testNotThrottledError_shouldNotBeRetried() throws Exception {
+        RetryPolicy policy = new RetryPolicy();
+        assertThat(policy.shouldRetry(new ServiceException("bad request"), 0), is(false));
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+    private SingleFlight<String, Integer> flight;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        flight = new SingleFlight<String, Integer>();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentCallsForSameKey_shouldShareOneExecution() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        Callable<Integer> slow = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await();
+                return 42;
+            }
+        };
+        Future<Integer> first = executor.submit(execute("a", slow));
+        started.await(5, TimeUnit.SECONDS);
+        Future<Integer> second = executor.submit(execute("a", slow));
+        while (flight.getCoalesced() == 0) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS), is(42));
+        assertThat(second.get(5, TimeUnit.SECONDS), is(42));
+        assertThat(calls.get(), is(1));
+        assertThat(flight.getExecutions(), is(1L));
+    }
+
+    @Test
+    public void testSequentialCalls_shouldEachExecute() throws Exception {
+        Callable<Integer> call = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return 1;
+            }
+        };
+        flight.execute("a", call);
+        flight.execute("a", call);
+        assertThat(flight.getExecutions(), is(2L));
+        assertThat(flight.getCoalesced(), is(0L));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailingCall_shouldRethrowException() throws Exception {
+        flight.execute("a", new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                throw new IllegalStateException("failed");
+            }
+        });
+    }
+
+    private Callable<Integer> execute(final String key, final Callable<Integer> call) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return flight.execute(key, call);
+            }
+        };
+    }
+}
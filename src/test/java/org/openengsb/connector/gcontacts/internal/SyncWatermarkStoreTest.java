@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gdata.data.DateTime;
+
+public class SyncWatermarkStoreTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("gcontacts", ".sync");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    @Test
+    public void testLoadWithoutFile_shouldReturnNull() throws Exception {
+        assertThat(new SyncWatermarkStore(file).load(), nullValue());
+    }
+
+    @Test
+    public void testStoredWatermark_shouldSurviveNewStore() throws Exception {
+        DateTime watermark = new DateTime(1325376000000L);
+        new SyncWatermarkStore(file).store(watermark);
+        assertThat(new SyncWatermarkStore(file).load().getValue(), is(watermark.getValue()));
+    }
+
+    @Test
+    public void testClear_shouldForgetWatermark() throws Exception {
+        SyncWatermarkStore store = new SyncWatermarkStore(file);
+        store.store(new DateTime(1325376000000L));
+        store.clear();
+        assertThat(store.load(), nullValue());
+    }
+}
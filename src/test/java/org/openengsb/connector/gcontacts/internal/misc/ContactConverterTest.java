@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal.misc;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+
+import org.junit.Test;
+import org.openengsb.domain.contact.Contact;
+import org.openengsb.domain.contact.InformationTypeWithValue;
+import org.openengsb.domain.contact.Location;
+
+import com.google.gdata.data.contacts.ContactEntry;
+
+public class ContactConverterTest {
+
+    private static Contact createContact() throws Exception {
+        Contact contact = new Contact();
+        contact.setName("converter test");
+        contact.setComment("a comment");
+
+        ArrayList<InformationTypeWithValue<String>> mails = new ArrayList<InformationTypeWithValue<String>>();
+        mails.add(new InformationTypeWithValue<String>("privat", "test@example.org"));
+        mails.add(new InformationTypeWithValue<String>("work", "work@example.org"));
+        contact.setMails(mails);
+
+        ArrayList<InformationTypeWithValue<Date>> dates = new ArrayList<InformationTypeWithValue<Date>>();
+        dates.add(new InformationTypeWithValue<Date>("my birthday", ContactConverter.parseBirthday("1980-02-29")));
+        dates.add(new InformationTypeWithValue<Date>("jahrestag", new Date()));
+        contact.setDates(dates);
+
+        ArrayList<InformationTypeWithValue<Location>> locations = new ArrayList<InformationTypeWithValue<Location>>();
+        Location location = new Location();
+        location.setCountry("Austria");
+        location.setState("Vienna");
+        location.setCity("Vienna");
+        location.setZip("1040");
+        location.setAddress("Taubstummengasse 11");
+        locations.add(new InformationTypeWithValue<Location>("Headquarters", location));
+        contact.setLocations(locations);
+        return contact;
+    }
+
+    @Test
+    public void testBirthdayKey_shouldBecomeBirthday() throws Exception {
+        ContactEntry entry = ContactConverter.convertContactToContactEntry(createContact());
+        assertThat(entry.getBirthday(), notNullValue());
+        assertThat(entry.getBirthday().getWhen(), is("1980-02-29"));
+        assertThat(entry.getEvents().size(), is(1));
+    }
+
+    @Test
+    public void testRoundTrip_shouldKeepFields() throws Exception {
+        Contact contact = createContact();
+        Contact converted =
+            ContactConverter.convertContactEntryToContact(ContactConverter.convertContactToContactEntry(contact));
+        assertThat(converted.getName(), is("converter test"));
+        assertThat(converted.getMails().size(), is(2));
+        assertThat(converted.getMails().get(1).getValue(), is("work@example.org"));
+        assertThat(converted.getDates().size(), is(2));
+        assertThat(converted.getLocations().get(0).getValue().getZip(), is("1040"));
+    }
+
+    @Test
+    public void testIsBirthday() throws Exception {
+        assertThat(ContactConverter.isBirthday("birthday"), is(true));
+        assertThat(ContactConverter.isBirthday("wife's birthday"), is(true));
+        assertThat(ContactConverter.isBirthday("anniversary"), is(false));
+        assertThat(ContactConverter.isBirthday(null), is(false));
+    }
+
+    @Test
+    public void testPartialConversion_shouldOnlyFillSelectedFields() throws Exception {
+        ContactEntry entry = ContactConverter.convertContactToContactEntry(createContact());
+        Contact converted = ContactConverter.convertContactEntryToContact(entry,
+            EnumSet.of(ContactField.NAME, ContactField.MAILS));
+        assertThat(converted.getName(), is("converter test"));
+        assertThat(converted.getMails().size(), is(2));
+        assertThat(converted.getComment(), nullValue());
+        assertThat(converted.getDates(), nullValue());
+        assertThat(converted.getLocations(), nullValue());
+    }
+
+    @Test
+    public void testProjection_shouldSelectFieldsOfEntries() throws Exception {
+        String fields = ContactProjection.toFeedFields(ContactProjection.parse("name, mails"));
+        assertThat(fields, is("link[@rel='next'],entry(id,updated,@gd:etag,link[@rel='edit'],gd:name,gd:email)"));
+    }
+}
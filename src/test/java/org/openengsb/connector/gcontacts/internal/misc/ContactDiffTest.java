@@ -0,0 +1,80 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal.misc;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.openengsb.domain.contact.Contact;
+import org.openengsb.domain.contact.InformationTypeWithValue;
+
+import com.google.gdata.data.contacts.ContactEntry;
+
+public class ContactDiffTest {
+
+    private static Contact createContact() throws Exception {
+        Contact contact = new Contact();
+        contact.setName("diff test");
+        contact.setComment("a comment");
+
+        ArrayList<InformationTypeWithValue<String>> mails = new ArrayList<InformationTypeWithValue<String>>();
+        mails.add(new InformationTypeWithValue<String>("privat", "test@example.org"));
+        contact.setMails(mails);
+
+        ArrayList<InformationTypeWithValue<Date>> dates = new ArrayList<InformationTypeWithValue<Date>>();
+        dates.add(new InformationTypeWithValue<Date>("birthday", ContactConverter.parseBirthday("1980-02-29")));
+        dates.add(new InformationTypeWithValue<Date>("jahrestag", new Date()));
+        contact.setDates(dates);
+        return contact;
+    }
+
+    @Test
+    public void testUnchangedContact_shouldHaveNoChanges() throws Exception {
+        ContactEntry entry = ContactConverter.convertContactToContactEntry(createContact());
+        assertThat(ContactDiff.diff(entry, createContact()).isEmpty(), is(true));
+    }
+
+    @Test
+    public void testChangedMail_shouldOnlyChangeMails() throws Exception {
+        ContactEntry entry = ContactConverter.convertContactToContactEntry(createContact());
+        Contact contact = createContact();
+        contact.getMails().set(0, new InformationTypeWithValue<String>("privat", "other@example.org"));
+        assertThat(ContactDiff.diff(entry, contact), is((Set<ContactField>) EnumSet.of(ContactField.MAILS)));
+    }
+
+    @Test
+    public void testMissingComment_shouldEqualEmptyComment() throws Exception {
+        Contact contact = createContact();
+        contact.setComment("");
+        ContactEntry entry = ContactConverter.convertContactToContactEntry(contact);
+        contact.setComment(null);
+        assertThat(ContactDiff.diff(entry, contact).isEmpty(), is(true));
+    }
+
+    @Test
+    public void testFieldsMask_shouldJoinElements() throws Exception {
+        String mask = ContactDiff.toFieldsMask(EnumSet.of(ContactField.NAME, ContactField.MAILS));
+        assertThat(mask, is("gd:name,gd:email"));
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal.misc;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Test;
+import org.openengsb.connector.gcontacts.internal.GcontactsSession;
+import org.openengsb.domain.contact.Contact;
+import org.openengsb.domain.contact.InformationTypeWithValue;
+import org.openengsb.domain.contact.Location;
+
+import com.google.gdata.client.contacts.ContactsService;
+import com.google.gdata.data.Link;
+import com.google.gdata.data.contacts.ContactEntry;
+import com.google.gdata.data.contacts.ContactFeed;
+import com.google.gdata.util.common.xml.XmlWriter;
+
+public class ContactFeedDecoderTest {
+
+    private static ContactEntry createEntry() throws Exception {
+        Contact contact = new Contact();
+        contact.setName("decoder test");
+        contact.setComment("a comment & more");
+
+        ArrayList<InformationTypeWithValue<String>> mails = new ArrayList<InformationTypeWithValue<String>>();
+        mails.add(new InformationTypeWithValue<String>("privat", "test@example.org"));
+        mails.add(new InformationTypeWithValue<String>("work", "work@example.org"));
+        contact.setMails(mails);
+
+        ArrayList<InformationTypeWithValue<String>> phones = new ArrayList<InformationTypeWithValue<String>>();
+        phones.add(new InformationTypeWithValue<String>("mobile", "+43 664 1234567"));
+        contact.setTelephones(phones);
+
+        ArrayList<InformationTypeWithValue<Date>> dates = new ArrayList<InformationTypeWithValue<Date>>();
+        dates.add(new InformationTypeWithValue<Date>("my birthday", ContactConverter.parseBirthday("1980-02-29")));
+        dates.add(new InformationTypeWithValue<Date>("jahrestag", new Date(1325376000000L)));
+        contact.setDates(dates);
+
+        ArrayList<InformationTypeWithValue<Location>> locations = new ArrayList<InformationTypeWithValue<Location>>();
+        Location location = new Location();
+        location.setCountry("Austria");
+        location.setState("Vienna");
+        location.setCity("Vienna");
+        location.setZip("1040");
+        location.setAddress("Taubstummengasse 11");
+        locations.add(new InformationTypeWithValue<Location>("Headquarters", location));
+        contact.setLocations(locations);
+
+        ContactEntry entry = ContactConverter.convertContactToContactEntry(contact);
+        entry.setId("http://www.google.com/m8/feeds/contacts/default/base/1");
+        return entry;
+    }
+
+    private static byte[] toFeed(ContactEntry entry, String nextLink) throws Exception {
+        ContactFeed feed = new ContactFeed();
+        feed.setId("http://www.google.com/m8/feeds/contacts/default/full");
+        if (nextLink != null) {
+            feed.getLinks().add(new Link(Link.Rel.NEXT, Link.Type.ATOM, nextLink));
+        }
+        feed.getEntries().add(entry);
+        StringWriter writer = new StringWriter();
+        XmlWriter xml = new XmlWriter(writer);
+        feed.generateAtom(xml, new ContactsService(GcontactsSession.APPLICATION_NAME).getExtensionProfile());
+        xml.flush();
+        return writer.toString().getBytes("UTF-8");
+    }
+
+    @Test
+    public void testDecodedContact_shouldMatchConvertedEntry() throws Exception {
+        ContactEntry entry = createEntry();
+        Contact expected = ContactConverter.convertContactEntryToContact(entry);
+        ContactFeedPage page =
+            ContactFeedDecoder.decodeFeed(new ByteArrayInputStream(toFeed(entry, null)), ContactProjection.ALL);
+
+        assertThat(page.getContacts().size(), is(1));
+        assertThat(page.getNextLink(), nullValue());
+        Contact decoded = page.getContacts().get(0);
+        assertThat(decoded.getId(), is(expected.getId()));
+        assertThat(decoded.getName(), is(expected.getName()));
+        assertThat(decoded.getComment(), is(expected.getComment()));
+        assertSameValues(decoded.getMails(), expected.getMails());
+        assertSameValues(decoded.getTelephones(), expected.getTelephones());
+        assertSameValues(decoded.getHomepages(), expected.getHomepages());
+        assertSameValues(decoded.getDates(), expected.getDates());
+        assertThat(decoded.getLocations().size(), is(1));
+        Location location = decoded.getLocations().get(0).getValue();
+        assertThat(decoded.getLocations().get(0).getKey(), is("Headquarters"));
+        assertThat(location.getAddress(), is("Taubstummengasse 11"));
+        assertThat(location.getZip(), is("1040"));
+        assertThat(location.getCity(), is("Vienna"));
+        assertThat(location.getState(), is("Vienna"));
+        assertThat(location.getCountry(), is("Austria"));
+    }
+
+    @Test
+    public void testBirthday_shouldFollowEvents() throws Exception {
+        ContactFeedPage page =
+            ContactFeedDecoder.decodeFeed(new ByteArrayInputStream(toFeed(createEntry(), null)), ContactProjection.ALL);
+        List<InformationTypeWithValue<Date>> dates = page.getContacts().get(0).getDates();
+        assertThat(dates.size(), is(2));
+        assertThat(dates.get(1).getKey(), is("birthday"));
+        assertThat(dates.get(1).getValue(), is(ContactConverter.parseBirthday("1980-02-29")));
+    }
+
+    @Test
+    public void testProjection_shouldOnlyDecodeSelectedFields() throws Exception {
+        ContactFeedPage page = ContactFeedDecoder.decodeFeed(new ByteArrayInputStream(toFeed(createEntry(), null)),
+            EnumSet.of(ContactField.NAME, ContactField.MAILS));
+        Contact decoded = page.getContacts().get(0);
+        assertThat(decoded.getName(), is("decoder test"));
+        assertThat(decoded.getMails().size(), is(2));
+        assertThat(decoded.getComment(), nullValue());
+        assertThat(decoded.getTelephones(), nullValue());
+        assertThat(decoded.getDates(), nullValue());
+        assertThat(decoded.getLocations(), nullValue());
+    }
+
+    @Test
+    public void testNextLink_shouldBeReturned() throws Exception {
+        String next = "http://www.google.com/m8/feeds/contacts/default/full?start-index=26";
+        ContactFeedPage page =
+            ContactFeedDecoder.decodeFeed(new ByteArrayInputStream(toFeed(createEntry(), next)), ContactProjection.ALL);
+        assertThat(page.getNextLink(), is(next));
+    }
+
+    private static <T> void assertSameValues(List<InformationTypeWithValue<T>> actual,
+            List<InformationTypeWithValue<T>> expected) {
+        assertThat(actual.size(), is(expected.size()));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i).getKey(), is(expected.get(i).getKey()));
+            assertThat(actual.get(i).getValue(), is(expected.get(i).getValue()));
+        }
+    }
+}
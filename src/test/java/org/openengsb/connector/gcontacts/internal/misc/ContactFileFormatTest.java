@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Austrian Association for Software Tool Integration (AASTI)
+ * under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright
+ * ownership. The AASTI licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.openengsb.connector.gcontacts.internal.misc;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Date;
+
+import org.junit.Test;
+import org.openengsb.domain.contact.Contact;
+import org.openengsb.domain.contact.InformationTypeWithValue;
+import org.openengsb.domain.contact.Location;
+
+public class ContactFileFormatTest {
+
+    private static Contact createContact() {
+        Contact contact = new Contact();
+        contact.setId("http://www.google.com/m8/feeds/contacts/test/base/1");
+        contact.setName("M\u00fcller, Hans; \"Jr\"\\");
+        contact.setComment("first line\nsecond line, long enough to be folded in a vCard because it has more than 75 "
+                + "characters");
+
+        ArrayList<InformationTypeWithValue<String>> mails = new ArrayList<InformationTypeWithValue<String>>();
+        mails.add(new InformationTypeWithValue<String>("work; main", "work@example.org"));
+        contact.setMails(mails);
+
+        ArrayList<InformationTypeWithValue<Date>> dates = new ArrayList<InformationTypeWithValue<Date>>();
+        dates.add(new InformationTypeWithValue<Date>("birthday", new Date(315532800000L)));
+        dates.add(new InformationTypeWithValue<Date>("anniversary", new Date(1325376000123L)));
+        contact.setDates(dates);
+
+        ArrayList<InformationTypeWithValue<Location>> locations = new ArrayList<InformationTypeWithValue<Location>>();
+        Location location = new Location();
+        location.setAddress("Taubstummengasse 11;2");
+        location.setCity("Vienna");
+        locations.add(new InformationTypeWithValue<Location>("Headquarters", location));
+        contact.setLocations(locations);
+        return contact;
+    }
+
+    private static void assertRoundTrip(ContactFileFormat format) throws Exception {
+        StringWriter out = new StringWriter();
+        format.write(createContact(), out);
+        format.write(new Contact(), out);
+        BufferedReader in = new BufferedReader(new StringReader(out.toString()));
+
+        Contact read = format.read(in);
+        assertThat(read.getId(), is("http://www.google.com/m8/feeds/contacts/test/base/1"));
+        assertThat(read.getName(), is("M\u00fcller, Hans; \"Jr\"\\"));
+        assertThat(read.getComment(), is(createContact().getComment()));
+        assertThat(read.getMails().get(0).getKey(), is("work; main"));
+        assertThat(read.getMails().get(0).getValue(), is("work@example.org"));
+        assertThat(read.getDates().size(), is(2));
+        assertThat(read.getDates().get(1).getValue().getTime(), is(1325376000123L));
+        assertThat(read.getLocations().get(0).getValue().getAddress(), is("Taubstummengasse 11;2"));
+        assertThat(read.getLocations().get(0).getValue().getZip(), nullValue());
+
+        assertThat(format.read(in).getName(), nullValue());
+        assertThat(format.read(in), nullValue());
+    }
+
+    @Test
+    public void testNdjson_shouldRoundTrip() throws Exception {
+        assertRoundTrip(ContactFileFormat.NDJSON);
+    }
+
+    @Test
+    public void testVCard_shouldRoundTrip() throws Exception {
+        assertRoundTrip(ContactFileFormat.VCARD);
+    }
+
+    @Test
+    public void testVCard_shouldFoldLongLines() throws Exception {
+        StringWriter out = new StringWriter();
+        ContactFileFormat.VCARD.write(createContact(), out);
+        for (String line : out.toString().split("\r\n")) {
+            assertThat(line.length() <= 75, is(true));
+        }
+    }
+
+    @Test
+    public void testForFileName_shouldChooseFormatByExtension() throws Exception {
+        assertThat(ContactFileFormat.forFileName("contacts.VCF"), is(ContactFileFormat.VCARD));
+        assertThat(ContactFileFormat.forFileName("contacts.vcard"), is(ContactFileFormat.VCARD));
+        assertThat(ContactFileFormat.forFileName("contacts.ndjson"), is(ContactFileFormat.NDJSON));
+    }
+}